@@ -0,0 +1,65 @@
+package com.itheima.ai.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.reader.ExtractedTextFormatter;
+import org.springframework.ai.reader.pdf.PagePdfDocumentReader;
+import org.springframework.ai.reader.pdf.config.PdfDocumentReaderConfig;
+import org.springframework.core.io.ByteArrayResource;
+import org.springframework.core.io.Resource;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * PDF按页提取文本，配置与PdfController.writeToVectorStore一致
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "--add-modules=jdk.incubator.vector")
+public class PdfReaderBenchmark {
+
+    // 相对于Spring-AI目录
+    @Param({"中二知识笔记.pdf"})
+    private String file;
+
+    private Resource resource;
+
+    @Setup
+    public void setup() throws IOException {
+        // 读入内存，排除磁盘IO的影响
+        byte[] bytes = Files.readAllBytes(Path.of(file));
+        resource = new ByteArrayResource(bytes) {
+            @Override
+            public String getFilename() {
+                return file;
+            }
+        };
+    }
+
+    @Benchmark
+    public List<Document> readPages() {
+        PagePdfDocumentReader reader = new PagePdfDocumentReader(resource,
+                PdfDocumentReaderConfig.builder()
+                        .withPageExtractedTextFormatter(ExtractedTextFormatter.defaults())
+                        .withPagesPerDocument(1)
+                        .build());
+        return reader.read();
+    }
+}
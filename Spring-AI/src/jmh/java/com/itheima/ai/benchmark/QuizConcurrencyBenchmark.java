@@ -0,0 +1,101 @@
+package com.itheima.ai.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.core.task.AsyncTaskExecutor;
+import org.springframework.core.task.SimpleAsyncTaskExecutor;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 并发知识问答的承载能力：games局游戏同时进行，每局依次发出rounds次耗时latencyMs的阻塞模型调用，
+ * 测量全部完成的时间。platform为Tomcat默认的200个平台线程，virtual为每个请求一个虚拟线程
+ * (spring.threads.virtual.enabled=true)，virtual需要在JDK 21及以上运行。
+ * <p>
+ * mvn -Pjmh test-compile exec:exec -Djmh.args="QuizConcurrencyBenchmark"
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 3)
+@Fork(value = 1)
+public class QuizConcurrencyBenchmark {
+
+    // 与server.tomcat.threads.max的默认值一致
+    private static final int TOMCAT_MAX_THREADS = 200;
+
+    @Param({"platform", "virtual"})
+    private String threads;
+
+    @Param({"200", "1000", "5000"})
+    private int games;
+
+    // 每局的模型调用次数：出题和评分
+    @Param({"3"})
+    private int rounds;
+
+    // 模拟的模型调用延迟
+    @Param({"200"})
+    private long latencyMs;
+
+    private AsyncTaskExecutor executor;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        if ("virtual".equals(threads)) {
+            SimpleAsyncTaskExecutor virtualExecutor = new SimpleAsyncTaskExecutor("bench-");
+            // 低于JDK 21时抛出UnsupportedOperationException
+            virtualExecutor.setVirtualThreads(true);
+            executor = virtualExecutor;
+        } else {
+            ThreadPoolTaskExecutor pool = new ThreadPoolTaskExecutor();
+            pool.setThreadNamePrefix("bench-");
+            pool.setCorePoolSize(TOMCAT_MAX_THREADS);
+            pool.setMaxPoolSize(TOMCAT_MAX_THREADS);
+            pool.initialize();
+            executor = pool;
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        if (executor instanceof ThreadPoolTaskExecutor pool) {
+            pool.shutdown();
+        }
+    }
+
+    @Benchmark
+    public long concurrentGames() throws InterruptedException {
+        CountDownLatch done = new CountDownLatch(games);
+        for (int i = 0; i < games; i++) {
+            executor.execute(() -> {
+                try {
+                    for (int r = 0; r < rounds; r++) {
+                        // 等待模型响应，期间线程被阻塞
+                        Thread.sleep(latencyMs);
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } finally {
+                    done.countDown();
+                }
+            });
+        }
+        done.await();
+        return done.getCount();
+    }
+}
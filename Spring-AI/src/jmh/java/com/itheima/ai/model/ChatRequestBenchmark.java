@@ -0,0 +1,80 @@
+package com.itheima.ai.model;
+
+import com.itheima.ai.constants.SystemConstants;
+import com.itheima.ai.tools.CourseTools;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.SystemMessage;
+import org.springframework.ai.chat.messages.UserMessage;
+import org.springframework.ai.chat.prompt.Prompt;
+import org.springframework.ai.model.tool.ToolCallingManager;
+import org.springframework.ai.openai.OpenAiChatOptions;
+import org.springframework.ai.openai.api.OpenAiApi;
+import org.springframework.ai.tool.ToolCallbacks;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * AlibabaOpenAiChatModel.createRequest构建请求的耗时，场景与客服助手一致：系统提示词 + 历史消息 + 课程工具
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "--add-modules=jdk.incubator.vector")
+public class ChatRequestBenchmark {
+
+    // 历史消息轮数
+    @Param({"0", "10", "50"})
+    private int history;
+
+    private AlibabaOpenAiChatModel chatModel;
+    private Prompt prompt;
+
+    @Setup
+    public void setup() {
+        // 只构建请求，不会发出网络调用
+        OpenAiApi openAiApi = OpenAiApi.builder().baseUrl("http://localhost").apiKey("benchmark").build();
+        chatModel = AlibabaOpenAiChatModel.builder()
+                .openAiApi(openAiApi)
+                .toolCallingManager(ToolCallingManager.builder().build())
+                .build();
+
+        List<Message> messages = new ArrayList<>();
+        messages.add(new SystemMessage(SystemConstants.SERVICE_SYSTEM_PROMPT));
+        for (int i = 0; i < history; i++) {
+            messages.add(new UserMessage("我想了解一下第" + i + "门课程的学费和上课时间"));
+            messages.add(new AssistantMessage("第" + i + "门课程的学费为3000元，每周一、三、五晚上上课。"));
+        }
+        messages.add(new UserMessage("帮我预约一门Java课程，我叫张三，电话13800000000"));
+        OpenAiChatOptions options = OpenAiChatOptions.builder()
+                .model("qwen-max-latest")
+                .toolCallbacks(ToolCallbacks.from(new CourseTools(null, null, null)))
+                .build();
+        prompt = new Prompt(messages, options);
+    }
+
+    @Benchmark
+    public OpenAiApi.ChatCompletionRequest createRequest() {
+        return chatModel.createRequest(prompt, false);
+    }
+
+    @Benchmark
+    public OpenAiApi.ChatCompletionRequest createStreamRequest() {
+        return chatModel.createRequest(prompt, true);
+    }
+}
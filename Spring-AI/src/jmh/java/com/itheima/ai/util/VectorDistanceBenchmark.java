@@ -0,0 +1,101 @@
+package com.itheima.ai.util;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * VectorDistanceUtils的单次与批量距离计算
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "--add-modules=jdk.incubator.vector")
+public class VectorDistanceBenchmark {
+
+    @Param({"1024"})
+    private int dimensions;
+
+    @Param({"1000"})
+    private int rows;
+
+    private float[] query;
+    private float[] vector;
+    private float[][] vectors;
+    private float[] matrix;
+    private float[] norms;
+
+    @Setup
+    public void setup() {
+        Random random = new Random(42);
+        query = randomVector(random);
+        vector = randomVector(random);
+        vectors = new float[rows][];
+        matrix = new float[rows * dimensions];
+        for (int row = 0; row < rows; row++) {
+            vectors[row] = randomVector(random);
+            System.arraycopy(vectors[row], 0, matrix, row * dimensions, dimensions);
+        }
+        norms = VectorDistanceUtils.norms(matrix, dimensions);
+    }
+
+    @Benchmark
+    public double cosineDistance() {
+        return VectorDistanceUtils.cosineDistance(query, vector);
+    }
+
+    @Benchmark
+    public double euclideanDistance() {
+        return VectorDistanceUtils.euclideanDistance(query, vector);
+    }
+
+    @Benchmark
+    public float dot() {
+        return VectorDistanceUtils.dot(query, vector);
+    }
+
+    /**
+     * 逐行调用cosineDistance，每次都重新计算两个范数
+     */
+    @Benchmark
+    public void pairwiseCosine(Blackhole blackhole) {
+        for (float[] row : vectors) {
+            blackhole.consume(VectorDistanceUtils.cosineDistance(query, row));
+        }
+    }
+
+    /**
+     * 连续矩阵 + 预先计算的范数
+     */
+    @Benchmark
+    public float[] batchCosineSimilarity() {
+        return VectorDistanceUtils.batchCosineSimilarity(query, matrix, norms);
+    }
+
+    @Benchmark
+    public float[] batchEuclideanDistance() {
+        return VectorDistanceUtils.batchEuclideanDistance(query, matrix);
+    }
+
+    private float[] randomVector(Random random) {
+        float[] v = new float[dimensions];
+        for (int i = 0; i < dimensions; i++) {
+            v[i] = (float) random.nextGaussian();
+        }
+        return v;
+    }
+}
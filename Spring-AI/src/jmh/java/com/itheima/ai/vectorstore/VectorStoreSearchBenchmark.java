@@ -0,0 +1,96 @@
+package com.itheima.ai.vectorstore;
+
+import com.itheima.ai.benchmark.FakeEmbeddingModel;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.vectorstore.SearchRequest;
+import org.springframework.ai.vectorstore.SimpleVectorStore;
+import org.springframework.ai.vectorstore.VectorStore;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 不同规模下SimpleVectorStore与HnswVectorStore的检索耗时
+ * <p>
+ * 文档平均分布在10个文件中，带过滤条件的检索与PdfController一致，按file_name过滤。
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"--add-modules=jdk.incubator.vector", "-Xmx4g"})
+public class VectorStoreSearchBenchmark {
+
+    private static final int FILES = 10;
+
+    @Param({"1000", "10000", "100000"})
+    private int documents;
+
+    @Param({"simple", "hnsw"})
+    private String store;
+
+    private VectorStore vectorStore;
+    private List<String> queries;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        FakeEmbeddingModel embeddingModel = new FakeEmbeddingModel();
+        vectorStore = "simple".equals(store)
+                ? SimpleVectorStore.builder(embeddingModel).build()
+                : HnswVectorStore.builder(embeddingModel).build();
+        List<Document> batch = new ArrayList<>();
+        for (int i = 0; i < documents; i++) {
+            batch.add(new Document("doc-" + i, "page " + i, Map.of("file_name", "file-" + (i % FILES) + ".pdf")));
+            if (batch.size() == 1000 || i == documents - 1) {
+                vectorStore.add(batch);
+                batch = new ArrayList<>();
+            }
+        }
+
+        Random random = new Random(42);
+        queries = new ArrayList<>();
+        for (int i = 0; i < 64; i++) {
+            queries.add("page " + random.nextInt(documents));
+        }
+    }
+
+    @Benchmark
+    public List<Document> search() {
+        return vectorStore.similaritySearch(SearchRequest.builder()
+                .query(nextQuery())
+                .topK(4)
+                .build());
+    }
+
+    @Benchmark
+    public List<Document> searchByFile() {
+        return vectorStore.similaritySearch(SearchRequest.builder()
+                .query(nextQuery())
+                .topK(2)
+                .similarityThreshold(0.6)
+                .filterExpression("file_name == 'file-3.pdf'")
+                .build());
+    }
+
+    private String nextQuery() {
+        next = (next + 1) % queries.size();
+        return queries.get(next);
+    }
+}
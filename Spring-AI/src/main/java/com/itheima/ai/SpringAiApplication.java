@@ -3,12 +3,14 @@ package com.itheima.ai;
 import org.mybatis.spring.annotation.MapperScan;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.scheduling.annotation.EnableScheduling;
 
 
 // Generated by https://start.springboot.io
 // 优质的 spring/boot/data/security/cloud 框架中文文档尽在 => https://springdoc.cn
 @MapperScan("com.itheima.ai.mapper")
 @SpringBootApplication
+@EnableScheduling
 public class SpringAiApplication {
 
     public static void main(String[] args) {
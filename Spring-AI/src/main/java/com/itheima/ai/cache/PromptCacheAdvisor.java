@@ -0,0 +1,161 @@
+package com.itheima.ai.cache;
+
+import com.itheima.ai.util.LruCache;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.chat.client.advisor.api.AdvisedRequest;
+import org.springframework.ai.chat.client.advisor.api.AdvisedResponse;
+import org.springframework.ai.chat.client.advisor.api.Advisor;
+import org.springframework.ai.chat.client.advisor.api.CallAroundAdvisor;
+import org.springframework.ai.chat.client.advisor.api.CallAroundAdvisorChain;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.ai.chat.prompt.ChatOptions;
+import org.springframework.util.CollectionUtils;
+import org.springframework.util.StringUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.HexFormat;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * 精确匹配的提示词缓存拦截器
+ * <p>
+ * 以 规范化的系统提示词和用户提示词、模型、模型参数、拦截器参数 的SHA-256为键缓存完整的模型响应，
+ * 相同的同步请求直接返回缓存的响应。排在会话记忆之前，键不包含历史消息，命中时也不写入会话记忆。
+ * 请求参数{@link #BYPASS_CACHE}为true时跳过缓存，带图片等媒体的请求不缓存。
+ */
+@Slf4j
+public class PromptCacheAdvisor implements CallAroundAdvisor, MeterBinder {
+
+    /**
+     * 请求参数，为true时本次请求不读写缓存
+     */
+    public static final String BYPASS_CACHE = "prompt_cache_bypass";
+
+    // 排在会话记忆之前，否则每次请求的历史不同，永远不会命中
+    private static final int ORDER = Advisor.DEFAULT_CHAT_MEMORY_PRECEDENCE_ORDER - 100;
+
+    private final LruCache<String, ChatResponse> cache;
+
+    /**
+     * @param maxSize 缓存的最大响应数
+     * @param ttl 响应写入后的存活时间，为null表示不过期
+     */
+    public PromptCacheAdvisor(int maxSize, Duration ttl) {
+        this.cache = new LruCache<>(maxSize, ttl);
+    }
+
+    @Override
+    public AdvisedResponse aroundCall(AdvisedRequest advisedRequest, CallAroundAdvisorChain chain) {
+        if (Boolean.TRUE.equals(advisedRequest.adviseContext().get(BYPASS_CACHE))
+                || !CollectionUtils.isEmpty(advisedRequest.media())) {
+            return chain.nextAroundCall(advisedRequest);
+        }
+        String key = cacheKey(advisedRequest);
+        ChatResponse cached = cache.get(key);
+        if (cached != null) {
+            log.debug("提示词缓存命中: key={}", key);
+            return new AdvisedResponse(cached, advisedRequest.adviseContext());
+        }
+
+        AdvisedResponse advisedResponse = chain.nextAroundCall(advisedRequest);
+        if (isCacheable(advisedResponse.response())) {
+            cache.put(key, advisedResponse.response());
+        }
+        return advisedResponse;
+    }
+
+    @Override
+    public String getName() {
+        return getClass().getSimpleName();
+    }
+
+    @Override
+    public int getOrder() {
+        return ORDER;
+    }
+
+    public LruCache<String, ChatResponse> getCache() {
+        return cache;
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("ai.prompt.cache.size", cache, LruCache::size)
+                .description("缓存的模型响应数")
+                .register(registry);
+        FunctionCounter.builder("ai.prompt.cache.requests", cache, LruCache::getHits)
+                .tag("result", "hit")
+                .register(registry);
+        FunctionCounter.builder("ai.prompt.cache.requests", cache, LruCache::getMisses)
+                .tag("result", "miss")
+                .register(registry);
+        FunctionCounter.builder("ai.prompt.cache.evictions", cache, LruCache::getEvictions)
+                .register(registry);
+    }
+
+    /**
+     * 缓存键，提示词中的连续空白视为一个空格
+     */
+    static String cacheKey(AdvisedRequest request) {
+        StringBuilder sb = new StringBuilder();
+        sb.append("system=").append(normalize(request.systemText())).append('\n')
+                .append("systemParams=").append(sorted(request.systemParams())).append('\n')
+                .append("user=").append(normalize(request.userText())).append('\n')
+                .append("userParams=").append(sorted(request.userParams())).append('\n');
+        for (Message message : request.messages()) {
+            sb.append(message.getMessageType()).append('=').append(normalize(message.getText())).append('\n');
+        }
+        ChatOptions options = request.chatOptions();
+        if (options != null) {
+            sb.append("model=").append(options.getModel())
+                    .append(",temperature=").append(options.getTemperature())
+                    .append(",topP=").append(options.getTopP())
+                    .append(",topK=").append(options.getTopK())
+                    .append(",maxTokens=").append(options.getMaxTokens())
+                    .append(",frequencyPenalty=").append(options.getFrequencyPenalty())
+                    .append(",presencePenalty=").append(options.getPresencePenalty())
+                    .append(",stop=").append(options.getStopSequences())
+                    .append('\n');
+        }
+        // 检索过滤条件等拦截器参数会影响回答
+        Map<String, Object> params = new TreeMap<>();
+        request.adviseContext().forEach((k, v) -> {
+            if (!BYPASS_CACHE.equals(k) && (v instanceof CharSequence || v instanceof Number || v instanceof Boolean)) {
+                params.put(k, v);
+            }
+        });
+        sb.append("advise=").append(params);
+        return sha256(sb.toString());
+    }
+
+    private static boolean isCacheable(ChatResponse response) {
+        return response != null && response.getResult() != null && response.getResult().getOutput() != null
+                && StringUtils.hasText(response.getResult().getOutput().getText());
+    }
+
+    private static String normalize(String text) {
+        return text == null ? "" : text.strip().replaceAll("\\s+", " ");
+    }
+
+    private static Map<String, Object> sorted(Map<String, Object> params) {
+        return params == null ? Map.of() : new TreeMap<>(params);
+    }
+
+    private static String sha256(String text) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(digest.digest(text.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,173 @@
+package com.itheima.ai.cache;
+
+import com.itheima.ai.util.LruCache;
+import com.itheima.ai.util.VectorDistanceUtils;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.util.StringUtils;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 语义回答缓存
+ * <p>
+ * 按文件分组保存问题向量和模型的回答，新问题与同一文件下已缓存问题的余弦相似度达到阈值时直接返回缓存的回答。
+ * 问题向量经{@link com.itheima.ai.model.CachingEmbeddingModel}计算，未命中时检索文档片段会复用同一个向量，不额外调用远程接口。
+ * 缓存不区分会话，只适合不依赖上下文的问答。
+ */
+@Slf4j
+public class SemanticResponseCache implements MeterBinder {
+
+    private final EmbeddingModel embeddingModel;
+    private final double similarityThreshold;
+    private final int maxEntriesPerFile;
+    private final Duration ttl;
+    private final Clock clock;
+
+    // 文件名 -> (问题 -> 缓存的回答)
+    private final LruCache<String, LruCache<String, CachedAnswer>> files;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    public SemanticResponseCache(EmbeddingModel embeddingModel, double similarityThreshold,
+                                 int maxFiles, int maxEntriesPerFile, Duration ttl) {
+        this(embeddingModel, similarityThreshold, maxFiles, maxEntriesPerFile, ttl, Clock.systemUTC());
+    }
+
+    /**
+     * @param embeddingModel 计算问题向量的模型
+     * @param similarityThreshold 命中所需的最小余弦相似度
+     * @param maxFiles 缓存回答的最大文件数，超出时淘汰最近最少使用的文件
+     * @param maxEntriesPerFile 每个文件缓存的最大回答数
+     * @param ttl 回答写入后的存活时间，为null表示不过期
+     * @param clock 时钟
+     */
+    public SemanticResponseCache(EmbeddingModel embeddingModel, double similarityThreshold,
+                                 int maxFiles, int maxEntriesPerFile, Duration ttl, Clock clock) {
+        this.embeddingModel = embeddingModel;
+        this.similarityThreshold = similarityThreshold;
+        this.maxEntriesPerFile = maxEntriesPerFile;
+        this.ttl = ttl;
+        this.clock = clock;
+        this.files = new LruCache<>(maxFiles, null, clock);
+    }
+
+    /**
+     * 查找与问题语义相近的缓存回答
+     * @return 查找结果，未命中时可用于{@link #put(Lookup, String)}保存本次的回答
+     */
+    public Lookup lookup(String fileName, String question) {
+        String key = question == null ? "" : question.strip();
+        if (!StringUtils.hasText(key)) {
+            misses.incrementAndGet();
+            return new Lookup(fileName, key, null, null);
+        }
+        float[] vector;
+        try {
+            vector = VectorDistanceUtils.normalize(embeddingModel.embed(key));
+        } catch (RuntimeException e) {
+            // 向量接口不可用时不使用缓存，问答照常进行
+            log.warn("计算问题向量失败，跳过回答缓存: fileName={}", fileName, e);
+            misses.incrementAndGet();
+            return new Lookup(fileName, key, null, null);
+        }
+
+        LruCache<String, CachedAnswer> answers = files.get(fileName);
+        String answer = answers == null ? null : findSimilar(answers, key, vector);
+        (answer == null ? misses : hits).incrementAndGet();
+        return new Lookup(fileName, key, vector, answer);
+    }
+
+    /**
+     * 保存未命中的问题对应的回答
+     */
+    public void put(Lookup lookup, String answer) {
+        if (lookup.vector() == null || lookup.hit() || !StringUtils.hasText(answer)) {
+            return;
+        }
+        LruCache<String, CachedAnswer> answers;
+        synchronized (files) {
+            answers = files.get(lookup.fileName());
+            if (answers == null) {
+                answers = new LruCache<>(maxEntriesPerFile, ttl, clock);
+                files.put(lookup.fileName(), answers);
+            }
+        }
+        answers.put(lookup.question(), new CachedAnswer(lookup.vector(), answer));
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    public int size() {
+        int[] size = {0};
+        files.forEach((fileName, answers) -> size[0] += answers.size());
+        return size[0];
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("ai.response.cache.size", this, SemanticResponseCache::size)
+                .description("缓存的回答数")
+                .register(registry);
+        FunctionCounter.builder("ai.response.cache.requests", hits, AtomicLong::get)
+                .tag("result", "hit")
+                .register(registry);
+        FunctionCounter.builder("ai.response.cache.requests", misses, AtomicLong::get)
+                .tag("result", "miss")
+                .register(registry);
+    }
+
+    private String findSimilar(LruCache<String, CachedAnswer> answers, String key, float[] vector) {
+        // 完全相同的问题不必比较向量
+        CachedAnswer exact = answers.get(key);
+        if (exact != null) {
+            return exact.answer();
+        }
+        String[] best = {null, null};
+        double[] bestSimilarity = {similarityThreshold};
+        answers.forEach((question, cached) -> {
+            double similarity = VectorDistanceUtils.dot(cached.vector(), vector);
+            if (similarity >= bestSimilarity[0]) {
+                bestSimilarity[0] = similarity;
+                best[0] = question;
+                best[1] = cached.answer();
+            }
+        });
+        if (best[0] != null) {
+            // 刷新命中条目的访问顺序
+            answers.get(best[0]);
+            log.debug("语义缓存命中: question={}, similarity={}", best[0], bestSimilarity[0]);
+        }
+        return best[1];
+    }
+
+    private record CachedAnswer(float[] vector, String answer) {
+    }
+
+    /**
+     * 一次查找的结果
+     * @param fileName 文件名
+     * @param question 去掉首尾空白的问题
+     * @param vector 归一化的问题向量，计算失败时为null
+     * @param answer 命中的回答，未命中时为null
+     */
+    public record Lookup(String fileName, String question, float[] vector, String answer) {
+
+        public boolean hit() {
+            return answer != null;
+        }
+    }
+}
@@ -0,0 +1,95 @@
+package com.itheima.ai.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.util.unit.DataSize;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 会话记忆配置
+ */
+@Data
+@ConfigurationProperties(prefix = "ai.chat-memory")
+public class ChatMemoryProperties {
+
+    /**
+     * 每个会话保留的最大消息数
+     */
+    private int maxMessages = 100;
+
+    /**
+     * 所有会话的估算内存上限，超出时淘汰最近最少使用的会话
+     */
+    private DataSize maxTotalSize = DataSize.ofMegabytes(64);
+
+    /**
+     * 会话的最长空闲时间，为0表示不过期
+     */
+    private Duration idleTimeout = Duration.ofHours(2);
+
+    /**
+     * 会话消息在磁盘上的存储目录，为空时只保存在内存中
+     */
+    private String storagePath = "chat-memory";
+
+    /**
+     * 单个段文件的大小上限
+     */
+    private DataSize segmentSize = DataSize.ofMegabytes(64);
+
+    /**
+     * 每个会话在磁盘上最多保留的消息数，为0表示不限制
+     */
+    private int maxStoredMessages = 1000;
+
+    /**
+     * 写入后是否立即刷盘
+     */
+    private boolean syncWrites = false;
+
+    /**
+     * 每次请求携带的历史消息token预算，用于未单独配置的模型
+     */
+    private int historyTokens = 3000;
+
+    /**
+     * 模型名 -> 历史消息token预算
+     */
+    private Map<String, Integer> modelHistoryTokens = new HashMap<>();
+
+    /**
+     * 会话摘要配置
+     */
+    private Summary summary = new Summary();
+
+    @Data
+    public static class Summary {
+        /**
+         * 是否开启会话摘要，需要配置存储目录
+         */
+        private boolean enabled = true;
+
+        /**
+         * 尚未摘要的较早消息超过该token数时生成摘要
+         */
+        private int triggerTokens = 2000;
+
+        /**
+         * 保留原文、不参与摘要的最近消息数
+         */
+        private int keepRecentMessages = 6;
+
+        /**
+         * 内存中保留的最大摘要数
+         */
+        private int maxSummaries = 10000;
+
+        /**
+         * 摘要线程数
+         */
+        private int threads = 1;
+    }
+}
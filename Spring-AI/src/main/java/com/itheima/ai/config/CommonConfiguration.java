@@ -1,17 +1,27 @@
 package com.itheima.ai.config;
 
+import com.itheima.ai.cache.PromptCacheAdvisor;
+import com.itheima.ai.cache.SemanticResponseCache;
 import com.itheima.ai.constants.SystemConstants;
+import com.itheima.ai.memory.BoundedChatMemory;
+import com.itheima.ai.memory.ChatMessageStore;
+import com.itheima.ai.memory.ConversationSummarizer;
+import com.itheima.ai.memory.TieredChatMemory;
+import com.itheima.ai.memory.TokenBudgetChatMemoryAdvisor;
 import com.itheima.ai.model.AlibabaOpenAiChatModel;
+import com.itheima.ai.model.CachingEmbeddingModel;
 import com.itheima.ai.tools.CourseTools;
+import com.itheima.ai.vectorstore.HnswVectorStore;
+import io.micrometer.core.instrument.MeterRegistry;
 import io.micrometer.observation.ObservationRegistry;
 import org.springframework.ai.autoconfigure.openai.OpenAiChatProperties;
 import org.springframework.ai.autoconfigure.openai.OpenAiConnectionProperties;
+import org.springframework.ai.autoconfigure.openai.OpenAiEmbeddingProperties;
 import org.springframework.ai.chat.client.ChatClient;
-import org.springframework.ai.chat.client.advisor.MessageChatMemoryAdvisor;
 import org.springframework.ai.chat.client.advisor.QuestionAnswerAdvisor;
 import org.springframework.ai.chat.client.advisor.SimpleLoggerAdvisor;
+import org.springframework.ai.chat.client.advisor.api.Advisor;
 import org.springframework.ai.chat.memory.ChatMemory;
-import org.springframework.ai.chat.memory.InMemoryChatMemory;
 import org.springframework.ai.chat.observation.ChatModelObservationConvention;
 import org.springframework.ai.chat.prompt.ChatOptions;
 import org.springframework.ai.model.SimpleApiKey;
@@ -19,11 +29,13 @@ import org.springframework.ai.model.tool.ToolCallingManager;
 import org.springframework.ai.ollama.OllamaChatModel;
 import org.springframework.ai.openai.OpenAiChatModel;
 import org.springframework.ai.openai.OpenAiEmbeddingModel;
+import org.springframework.ai.openai.OpenAiEmbeddingOptions;
 import org.springframework.ai.openai.api.OpenAiApi;
 import org.springframework.ai.vectorstore.SearchRequest;
-import org.springframework.ai.vectorstore.SimpleVectorStore;
 import org.springframework.ai.vectorstore.VectorStore;
 import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.retry.support.RetryTemplate;
@@ -32,63 +44,168 @@ import org.springframework.util.StringUtils;
 import org.springframework.web.client.ResponseErrorHandler;
 import org.springframework.web.client.RestClient;
 import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.scheduler.Scheduler;
 
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 
 @Configuration
+@EnableConfigurationProperties({VectorStoreProperties.class, EmbeddingCacheProperties.class, PdfIngestionProperties.class,
+        ChatMemoryProperties.class, ResponseCacheProperties.class, PromptCacheProperties.class,
+        QuizGameProperties.class})
 public class CommonConfiguration {
     @Bean
-    public ChatMemory chatMemory(){//创建一个内存聊天记忆
-        return new InMemoryChatMemory();
+    public ChatMemory chatMemory(ChatMemoryProperties properties, ObjectProvider<MeterRegistry> meterRegistry) throws IOException {//创建一个有容量上限的聊天记忆，配置了存储目录时历史消息同时写入磁盘
+        BoundedChatMemory hot = new BoundedChatMemory(
+                properties.getMaxMessages(),
+                properties.getMaxTotalSize().toBytes(),
+                properties.getIdleTimeout());
+        if (!StringUtils.hasText(properties.getStoragePath())) {
+            meterRegistry.ifAvailable(hot::bindTo);
+            return hot;
+        }
+        TieredChatMemory chatMemory = new TieredChatMemory(hot, new ChatMessageStore(
+                Path.of(properties.getStoragePath()),
+                properties.getSegmentSize().toBytes(),
+                properties.isSyncWrites(),
+                properties.getMaxStoredMessages()));
+        meterRegistry.ifAvailable(chatMemory::bindTo);
+        return chatMemory;
+    }
+
+    /**
+     * 带缓存的向量模型，重复的文本不再调用远程接口
+     */
+    @Bean(destroyMethod = "save")
+    public CachingEmbeddingModel cachingEmbeddingModel(OpenAiEmbeddingModel embeddingModel,
+                                                       OpenAiEmbeddingProperties embeddingProperties,
+                                                       EmbeddingCacheProperties properties){
+        OpenAiEmbeddingOptions options = embeddingProperties.getOptions();
+        return new CachingEmbeddingModel(embeddingModel,
+                options.getModel(),
+                options.getDimensions() == null ? 0 : options.getDimensions(),
+                properties.getMaxSize(),
+                properties.getTtl(),
+                StringUtils.hasText(properties.getPersistPath()) ? Path.of(properties.getPersistPath()) : null);
+    }
+
+    @Bean
+    public VectorStore vectorStore(CachingEmbeddingModel embeddingModel, VectorStoreProperties properties){
+        VectorStoreProperties.Hnsw hnsw = properties.getHnsw();
+        return HnswVectorStore.builder(embeddingModel)
+                .m(hnsw.getM())
+                .efConstruction(hnsw.getEfConstruction())
+                .efSearch(hnsw.getEfSearch())
+                .embeddingBatchSize(properties.getEmbeddingBatchSize())
+                .partitionKey(properties.getPartitionKey())
+                .storagePath(StringUtils.hasText(properties.getStoragePath()) ? Path.of(properties.getStoragePath()) : null)
+                .syncWrites(properties.isSyncWrites())
+                .maxPendingBytes(properties.getMaxPendingSize().toBytes())
+                .build();
+    }
+
+    /**
+     * PDF问答的语义回答缓存
+     */
+    @Bean
+    @ConditionalOnProperty(prefix = "ai.response-cache", name = "enabled", havingValue = "true", matchIfMissing = true)
+    public SemanticResponseCache responseCache(CachingEmbeddingModel embeddingModel, ResponseCacheProperties properties,
+                                               ObjectProvider<MeterRegistry> meterRegistry){
+        SemanticResponseCache responseCache = new SemanticResponseCache(embeddingModel,
+                properties.getSimilarityThreshold(),
+                properties.getMaxFiles(),
+                properties.getMaxEntriesPerFile(),
+                properties.getTtl());
+        meterRegistry.ifAvailable(responseCache::bindTo);
+        return responseCache;
+    }
+
+    /**
+     * 知识问答的提示词缓存，重复的同步请求不再调用模型
+     */
+    @Bean
+    @ConditionalOnProperty(prefix = "ai.prompt-cache", name = "enabled", havingValue = "true", matchIfMissing = true)
+    public PromptCacheAdvisor promptCacheAdvisor(PromptCacheProperties properties, ObjectProvider<MeterRegistry> meterRegistry){
+        PromptCacheAdvisor promptCacheAdvisor = new PromptCacheAdvisor(properties.getMaxSize(), properties.getTtl());
+        meterRegistry.ifAvailable(promptCacheAdvisor::bindTo);
+        return promptCacheAdvisor;
+    }
+
+    /**
+     * 后台会话摘要，历史消息需要持久化在磁盘上
+     */
+    @Bean(destroyMethod = "shutdown")
+    @ConditionalOnProperty(prefix = "ai.chat-memory.summary", name = "enabled", havingValue = "true", matchIfMissing = true)
+    public ConversationSummarizer conversationSummarizer(ChatMemory chatMemory, OpenAiChatModel model, ChatMemoryProperties properties){
+        if (!(chatMemory instanceof TieredChatMemory tieredChatMemory)) {
+            return null;
+        }
+        ChatMemoryProperties.Summary summary = properties.getSummary();
+        return new ConversationSummarizer(tieredChatMemory, model,
+                summary.getTriggerTokens(),
+                summary.getKeepRecentMessages(),
+                summary.getMaxSummaries(),
+                summary.getThreads());
     }
 
+    /**
+     * 会话记忆拦截器，按模型的token预算截取历史消息，所有ChatClient共用
+     */
     @Bean
-    public VectorStore vectorStore(OpenAiEmbeddingModel embeddingModel){
-        return SimpleVectorStore.builder(embeddingModel).build();
+    public TokenBudgetChatMemoryAdvisor chatMemoryAdvisor(ChatMemory chatMemory, ChatMemoryProperties properties,
+                                                          OpenAiChatProperties chatProperties,
+                                                          ObjectProvider<ConversationSummarizer> summarizer){
+        return new TokenBudgetChatMemoryAdvisor(chatMemory,
+                chatProperties.getOptions().getModel(),
+                properties.getHistoryTokens(),
+                properties.getModelHistoryTokens(),
+                summarizer.getIfAvailable());
     }
 
     @Bean
-    public ChatClient chatClient(OpenAiChatModel model, ChatMemory chatMemory){
+    public ChatClient chatClient(OpenAiChatModel model, TokenBudgetChatMemoryAdvisor chatMemoryAdvisor){
         return ChatClient
                 .builder(model)
                 .defaultOptions(ChatOptions.builder().model("qwen-omni-turbo").build())
                 .defaultSystem("你是一个热心、可爱的智能助手，你的名字叫小团团，请以小团团的语气回答问题。")
                 .defaultAdvisors(new SimpleLoggerAdvisor(),
-                        new MessageChatMemoryAdvisor(chatMemory))//拦截与AI的对话，将对话保存到内存中，并打印日志
+                        chatMemoryAdvisor)//拦截与AI的对话，将对话保存到内存中，并打印日志
                 .build();
     }
 
     @Bean
-    public ChatClient gameChatClient(OpenAiChatModel model, ChatMemory chatMemory){
+    public ChatClient gameChatClient(OpenAiChatModel model, TokenBudgetChatMemoryAdvisor chatMemoryAdvisor){
         return ChatClient
                 .builder(model)
                 .defaultSystem(SystemConstants.GAME_SYSTEM_PROMPT)
                 .defaultAdvisors(new SimpleLoggerAdvisor(),
-                        new MessageChatMemoryAdvisor(chatMemory))//拦截与AI的对话，将对话保存到内存中，并打印日志
+                        chatMemoryAdvisor)//拦截与AI的对话，将对话保存到内存中，并打印日志
                 .build();
     }
 
     @Bean
-    public ChatClient serviceChatClient(AlibabaOpenAiChatModel model, ChatMemory chatMemory, CourseTools courseTools){
+    public ChatClient serviceChatClient(AlibabaOpenAiChatModel model, TokenBudgetChatMemoryAdvisor chatMemoryAdvisor, CourseTools courseTools){
         return ChatClient
                 .builder(model)
                 .defaultSystem(SystemConstants.SERVICE_SYSTEM_PROMPT)
                 .defaultAdvisors(new SimpleLoggerAdvisor(),
-                        new MessageChatMemoryAdvisor(chatMemory))//拦截与AI的对话，将对话保存到内存中，并打印日志
+                        chatMemoryAdvisor)//拦截与AI的对话，将对话保存到内存中，并打印日志
                 .defaultTools(courseTools)
                 .build();
     }
 
     @Bean
-    public ChatClient pdfChatClient(OpenAiChatModel model, ChatMemory chatMemory,VectorStore vectorStore){
+    public ChatClient pdfChatClient(OpenAiChatModel model, TokenBudgetChatMemoryAdvisor chatMemoryAdvisor,VectorStore vectorStore){
         return ChatClient
                 .builder(model)
                 .defaultSystem("请根据上下文回答问题，遇到上下文没有的问题，不要随意编造。")
                 .defaultAdvisors(new SimpleLoggerAdvisor(),
-                        new MessageChatMemoryAdvisor(chatMemory),
+                        chatMemoryAdvisor,
                         new QuestionAnswerAdvisor(
                                 vectorStore,
                                 SearchRequest.builder()
@@ -101,25 +218,28 @@ public class CommonConfiguration {
     }
 
     @Bean
-    public ChatClient quizGameChatClient(OpenAiChatModel model, ChatMemory chatMemory, VectorStore vectorStore){
+    public ChatClient quizGameChatClient(OpenAiChatModel model, VectorStore vectorStore,
+                                         ObjectProvider<PromptCacheAdvisor> promptCacheAdvisor){
+        // 出题、评分和反馈都是互相独立的单次请求，不带会话ID，不使用会话记忆
+        List<Advisor> advisors = new ArrayList<>(List.of(new SimpleLoggerAdvisor(),
+                new QuestionAnswerAdvisor(
+                        vectorStore,
+                        SearchRequest.builder()
+                                .similarityThreshold(0.6)
+                                .topK(3)
+                                .build()
+                    )
+                ));//拦截与AI的对话，检索文档内容并打印日志
+        promptCacheAdvisor.ifAvailable(advisors::add);//相同的请求直接返回缓存的响应
         return ChatClient
                 .builder(model)
                 .defaultSystem(SystemConstants.QUIZ_GAME_SYSTEM_PROMPT)
-                .defaultAdvisors(new SimpleLoggerAdvisor(),
-                        new MessageChatMemoryAdvisor(chatMemory),
-                        new QuestionAnswerAdvisor(
-                                vectorStore,
-                                SearchRequest.builder()
-                                        .similarityThreshold(0.6)
-                                        .topK(3)
-                                        .build()
-                            )
-                        )//拦截与AI的对话，将对话保存到内存中，并打印日志
+                .defaultAdvisors(advisors)
                 .build();
     }
 
     @Bean
-    public AlibabaOpenAiChatModel alibabaOpenAiChatModel(OpenAiConnectionProperties commonProperties, OpenAiChatProperties chatProperties, ObjectProvider<RestClient.Builder> restClientBuilderProvider, ObjectProvider<WebClient.Builder> webClientBuilderProvider, ToolCallingManager toolCallingManager, RetryTemplate retryTemplate, ResponseErrorHandler responseErrorHandler, ObjectProvider<ObservationRegistry> observationRegistry, ObjectProvider<ChatModelObservationConvention> observationConvention) {
+    public AlibabaOpenAiChatModel alibabaOpenAiChatModel(OpenAiConnectionProperties commonProperties, OpenAiChatProperties chatProperties, ObjectProvider<RestClient.Builder> restClientBuilderProvider, ObjectProvider<WebClient.Builder> webClientBuilderProvider, ToolCallingManager toolCallingManager, RetryTemplate retryTemplate, ResponseErrorHandler responseErrorHandler, ObjectProvider<ObservationRegistry> observationRegistry, ObjectProvider<ChatModelObservationConvention> observationConvention, Scheduler toolExecutionScheduler) {
         String baseUrl = StringUtils.hasText(chatProperties.getBaseUrl()) ? chatProperties.getBaseUrl() : commonProperties.getBaseUrl();
         String apiKey = StringUtils.hasText(chatProperties.getApiKey()) ? chatProperties.getApiKey() : commonProperties.getApiKey();
         String projectId = StringUtils.hasText(chatProperties.getProjectId()) ? chatProperties.getProjectId() : commonProperties.getProjectId();
@@ -138,6 +258,7 @@ public class CommonConfiguration {
         AlibabaOpenAiChatModel chatModel = AlibabaOpenAiChatModel.builder().openAiApi(openAiApi).defaultOptions(chatProperties.getOptions()).toolCallingManager(toolCallingManager).retryTemplate(retryTemplate).observationRegistry((ObservationRegistry) observationRegistry.getIfUnique(() -> ObservationRegistry.NOOP)).build();
         Objects.requireNonNull(chatModel);
         observationConvention.ifAvailable(chatModel::setObservationConvention);
+        chatModel.setToolExecutionScheduler(toolExecutionScheduler);
         return chatModel;
     }
 }
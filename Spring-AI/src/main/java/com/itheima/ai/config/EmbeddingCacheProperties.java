@@ -0,0 +1,29 @@
+package com.itheima.ai.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+
+/**
+ * 向量缓存配置
+ */
+@Data
+@ConfigurationProperties(prefix = "ai.embedding-cache")
+public class EmbeddingCacheProperties {
+
+    /**
+     * 最大缓存条目数，1024维的向量每条约4KB
+     */
+    private int maxSize = 10000;
+
+    /**
+     * 条目写入后的存活时间，为0表示不过期
+     */
+    private Duration ttl = Duration.ofDays(7);
+
+    /**
+     * 缓存文件，为空时只保存在内存中
+     */
+    private String persistPath = "embedding-cache.bin";
+}
@@ -0,0 +1,44 @@
+package com.itheima.ai.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+
+/**
+ * PDF向量化配置
+ */
+@Data
+@ConfigurationProperties(prefix = "ai.pdf-ingestion")
+public class PdfIngestionProperties {
+
+    /**
+     * 每批写入向量库的文档数
+     */
+    private int batchSize = 10;
+
+    /**
+     * 同时进行向量化的批次数(所有任务共享)
+     */
+    private int concurrency = 4;
+
+    /**
+     * 同时处理的PDF数
+     */
+    private int jobThreads = 2;
+
+    /**
+     * 已结束任务的进度保留时间
+     */
+    private Duration jobRetention = Duration.ofHours(1);
+
+    /**
+     * 每个片段的最大token数
+     */
+    private int chunkTokens = 400;
+
+    /**
+     * 相邻片段的最大重叠token数
+     */
+    private int chunkOverlapTokens = 50;
+}
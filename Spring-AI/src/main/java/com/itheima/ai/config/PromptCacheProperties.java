@@ -0,0 +1,29 @@
+package com.itheima.ai.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+
+/**
+ * 知识问答中同步请求的提示词缓存配置
+ */
+@Data
+@ConfigurationProperties(prefix = "ai.prompt-cache")
+public class PromptCacheProperties {
+
+    /**
+     * 是否启用
+     */
+    private boolean enabled = true;
+
+    /**
+     * 缓存的最大响应数
+     */
+    private int maxSize = 1000;
+
+    /**
+     * 响应写入后的存活时间，为0表示不过期
+     */
+    private Duration ttl = Duration.ofMinutes(30);
+}
@@ -0,0 +1,54 @@
+package com.itheima.ai.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+
+/**
+ * 知识问答游戏配置
+ */
+@Data
+@ConfigurationProperties(prefix = "ai.quiz-game")
+public class QuizGameProperties {
+
+    /**
+     * 同时预生成问题的线程数(所有游戏共享)，即同时进行的出题请求数
+     */
+    private int pregenerateThreads = 8;
+
+    /**
+     * 排队等待预生成的问题数上限，队列满时新游戏的问题改为出题时实时生成
+     */
+    private int pregenerateQueueCapacity = 200;
+
+    /**
+     * 评分线程数(所有答题共享)，AI评分和文档内容检索在其中并行执行
+     */
+    private int scoringThreads = 16;
+
+    /**
+     * 单次答题评分的截止时间，超时的评分项按0分计
+     */
+    private Duration scoringTimeout = Duration.ofSeconds(20);
+
+    /**
+     * 同一局的两道问题向量的余弦相似度达到该值时视为重复，重新出题
+     */
+    private double questionSimilarityThreshold = 0.9;
+
+    /**
+     * 每个PDF每个难度的题库目标题数，题库足够一局但未达到该数时，开局后在后台补充
+     */
+    private int questionBankSize = 30;
+
+    /**
+     * 每次后台补充时每个难度最多生成的问题数
+     */
+    private int questionBankGrowBatch = 5;
+
+    /**
+     * 是否通过一次模型调用批量生成一局缺少的问题，关闭或批量生成失败时逐题生成
+     */
+    private boolean batchGeneration = true;
+}
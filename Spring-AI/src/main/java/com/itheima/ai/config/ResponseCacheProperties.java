@@ -0,0 +1,39 @@
+package com.itheima.ai.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+
+/**
+ * PDF问答的语义回答缓存配置
+ */
+@Data
+@ConfigurationProperties(prefix = "ai.response-cache")
+public class ResponseCacheProperties {
+
+    /**
+     * 是否启用
+     */
+    private boolean enabled = true;
+
+    /**
+     * 命中所需的最小余弦相似度
+     */
+    private double similarityThreshold = 0.95;
+
+    /**
+     * 缓存回答的最大文件数
+     */
+    private int maxFiles = 100;
+
+    /**
+     * 每个文件缓存的最大回答数，查找时逐条比较向量，不宜过大
+     */
+    private int maxEntriesPerFile = 200;
+
+    /**
+     * 回答写入后的存活时间，为0表示不过期
+     */
+    private Duration ttl = Duration.ofHours(1);
+}
@@ -0,0 +1,46 @@
+package com.itheima.ai.config;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.thread.Threading;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.Environment;
+import org.springframework.core.task.SimpleAsyncTaskExecutor;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+/**
+ * 阻塞调用的线程配置
+ * <p>
+ * 设置spring.threads.virtual.enabled=true并运行在JDK 21及以上时，Tomcat请求线程(由Spring Boot配置)、
+ * 知识问答的后台出题和流式请求中的工具调用都使用虚拟线程，等待模型和数据库时不占用平台线程。
+ * 低于JDK 21时该设置不生效，仍使用平台线程。
+ */
+@Slf4j
+@Configuration
+public class ThreadingConfiguration {
+
+    /**
+     * 流式请求中执行工具调用的线程，避免在HTTP客户端的事件循环线程上执行数据库查询
+     */
+    @Bean(destroyMethod = "dispose")
+    public Scheduler toolExecutionScheduler(Environment environment){
+        if (isVirtual(environment)) {
+            SimpleAsyncTaskExecutor executor = new SimpleAsyncTaskExecutor("tool-");
+            executor.setVirtualThreads(true);
+            return Schedulers.fromExecutor(executor);
+        }
+        if (environment.getProperty("spring.threads.virtual.enabled", Boolean.class, false)) {
+            log.warn("当前JDK不支持虚拟线程，使用平台线程: java.version={}", System.getProperty("java.version"));
+        }
+        return Schedulers.newBoundedElastic(Schedulers.DEFAULT_BOUNDED_ELASTIC_SIZE,
+                Schedulers.DEFAULT_BOUNDED_ELASTIC_QUEUESIZE, "tool");
+    }
+
+    /**
+     * 是否使用虚拟线程
+     */
+    public static boolean isVirtual(Environment environment) {
+        return Threading.VIRTUAL.isActive(environment);
+    }
+}
@@ -0,0 +1,68 @@
+package com.itheima.ai.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.util.unit.DataSize;
+
+import java.time.Duration;
+
+/**
+ * 向量库配置
+ */
+@Data
+@ConfigurationProperties(prefix = "ai.vector-store")
+public class VectorStoreProperties {
+
+    /**
+     * 单次向量化请求的文本数
+     */
+    private int embeddingBatchSize = 10;
+
+    /**
+     * 按该元数据划分索引分区，按文件过滤的检索只扫描对应分区
+     */
+    private String partitionKey = "file_name";
+
+    /**
+     * 持久化文件的路径前缀，生成.vec/.meta/.hnsw三个文件；为空时只保存在内存中
+     */
+    private String storagePath = "chat-pdf";
+
+    /**
+     * 写日志后是否立即刷盘
+     */
+    private boolean syncWrites = true;
+
+    /**
+     * 堆内未落盘的向量超过该大小时追加到向量文件
+     */
+    private DataSize maxPendingSize = DataSize.ofMegabytes(16);
+
+    /**
+     * 日志合并到主文件的间隔，合并时已删除的行多于存活的行则重写文件回收空间
+     */
+    private Duration compactionInterval = Duration.ofMinutes(5);
+
+    /**
+     * HNSW索引参数
+     */
+    private Hnsw hnsw = new Hnsw();
+
+    @Data
+    public static class Hnsw {
+        /**
+         * 每个节点每层的最大连接数，与图文件中记录的不一致时启动时按配置重建索引
+         */
+        private int m = 16;
+
+        /**
+         * 构建索引时的候选集大小
+         */
+        private int efConstruction = 200;
+
+        /**
+         * 检索时的候选集大小
+         */
+        private int efSearch = 64;
+    }
+}
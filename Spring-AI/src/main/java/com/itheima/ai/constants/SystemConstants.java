@@ -142,4 +142,15 @@ public class SystemConstants {
             
             记住要始终保持可爱甜美的语调，让学习过程充满趣味！
             """;
+
+    public static final String SUMMARY_SYSTEM_PROMPT = """
+            你负责压缩对话记录。请把给出的对话整理成一段简洁的摘要，供后续对话作为上下文使用。
+            
+            ## 要求
+            - 保留用户的身份信息、偏好、需求和已经确认的事实(如姓名、电话、预约的课程和校区)
+            - 保留尚未解决的问题和助手做出的承诺
+            - 省略寒暄、重复内容和语气词
+            - 如果给出了之前的摘要，把它与新的对话合并为一份摘要
+            - 只输出摘要内容，不超过300字
+            """;
 }
@@ -1,14 +1,19 @@
 package com.itheima.ai.controller;
 
+import com.itheima.ai.entity.vo.MessagePageVO;
 import com.itheima.ai.entity.vo.MessageVO;
+import com.itheima.ai.memory.PageableChatMemory;
 import com.itheima.ai.repository.ChatHistoryRepository;
 import lombok.RequiredArgsConstructor;
 import org.springframework.ai.chat.memory.ChatMemory;
 import org.springframework.ai.chat.messages.Message;
+import org.springframework.http.MediaType;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import reactor.core.publisher.Flux;
 
 import java.util.List;
 
@@ -21,11 +26,28 @@ public class ChatHistoryController {
 
     private final ChatMemory chatMemory;
 
+    private static final int MAX_PAGE_SIZE = 100;
+
+    /**
+     * 查询会话ID列表
+     * @param order 为recent时按最近活跃排序，否则按创建顺序
+     * @param limit 按最近活跃排序时最多返回的数量
+     */
     @GetMapping("/{type}")
-    public List<String> getChatIds(@PathVariable("type") String type){
+    public List<String> getChatIds(@PathVariable("type") String type,
+                                   @RequestParam(value = "order", required = false) String order,
+                                   @RequestParam(value = "limit", defaultValue = "100") int limit){
+        if ("recent".equals(order)) {
+            return chatHistoryRepository.getRecentChatIds(type, limit);
+        }
         return chatHistoryRepository.getChatIds(type);
     }
 
+    @GetMapping("/{type}/count")
+    public int countChats(@PathVariable("type") String type){
+        return chatHistoryRepository.count(type);
+    }
+
     @GetMapping("/{type}/{chatId}")
     public List<MessageVO> getChatHistory(@PathVariable("type") String type, @PathVariable("chatId") String chatId){
         List<Message> messages = chatMemory.get(chatId,Integer.MAX_VALUE);
@@ -34,4 +56,54 @@ public class ChatHistoryController {
         }
         return messages.stream().map(MessageVO::new).toList();
     }
+
+    /**
+     * 分页查询历史消息，从最新的一页开始
+     * @param before 只返回序号小于before的消息，为空时返回最新的一页
+     * @param limit 每页消息数
+     */
+    @GetMapping("/{type}/{chatId}/page")
+    public MessagePageVO getChatHistoryPage(@PathVariable("type") String type, @PathVariable("chatId") String chatId,
+                                            @RequestParam(value = "before", required = false) Integer before,
+                                            @RequestParam(value = "limit", defaultValue = "20") int limit){
+        limit = Math.min(Math.max(limit, 1), MAX_PAGE_SIZE);
+        int total = count(chatId);
+        int first = first(chatId);
+        int to = before == null ? total : Math.min(Math.max(before, first), total);
+        int from = Math.max(first, to - limit);
+        List<MessageVO> messages = get(chatId, from, to).stream().map(MessageVO::new).toList();
+        return new MessagePageVO(messages, from > first ? from : null, total);
+    }
+
+    /**
+     * 以NDJSON格式按时间顺序流式返回全部历史消息，每次从存储中读取一批
+     */
+    @GetMapping(value = "/{type}/{chatId}/stream", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public Flux<MessageVO> streamChatHistory(@PathVariable("type") String type, @PathVariable("chatId") String chatId){
+        int total = count(chatId);
+        int first = first(chatId);
+        int batches = (total - first + MAX_PAGE_SIZE - 1) / MAX_PAGE_SIZE;
+        return Flux.range(0, batches)
+                .concatMapIterable(i -> get(chatId, first + i * MAX_PAGE_SIZE, Math.min(total, first + (i + 1) * MAX_PAGE_SIZE)))
+                .map(MessageVO::new);
+    }
+
+    private int count(String chatId){
+        if (chatMemory instanceof PageableChatMemory pageable) {
+            return pageable.count(chatId);
+        }
+        return chatMemory.get(chatId, Integer.MAX_VALUE).size();
+    }
+
+    private int first(String chatId){
+        return chatMemory instanceof PageableChatMemory pageable ? pageable.first(chatId) : 0;
+    }
+
+    private List<Message> get(String chatId, int from, int to){
+        if (chatMemory instanceof PageableChatMemory pageable) {
+            return pageable.get(chatId, from, to);
+        }
+        List<Message> messages = chatMemory.get(chatId, Integer.MAX_VALUE);
+        return messages.subList(Math.min(from, messages.size()), Math.min(to, messages.size()));
+    }
 }
@@ -1,18 +1,20 @@
 package com.itheima.ai.controller;
  
+import com.itheima.ai.cache.SemanticResponseCache;
+import com.itheima.ai.entity.vo.PdfIngestionJob;
 import com.itheima.ai.entity.vo.Result;
 import com.itheima.ai.repository.ChatHistoryRepository;
 import com.itheima.ai.repository.FileRepository;
+import com.itheima.ai.service.PdfIngestionService;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.ai.chat.client.ChatClient;
 import org.springframework.ai.chat.client.advisor.AbstractChatMemoryAdvisor;
 import org.springframework.ai.chat.client.advisor.QuestionAnswerAdvisor;
-import org.springframework.ai.document.Document;
-import org.springframework.ai.reader.ExtractedTextFormatter;
-import org.springframework.ai.reader.pdf.PagePdfDocumentReader;
-import org.springframework.ai.reader.pdf.config.PdfDocumentReaderConfig;
-import org.springframework.ai.vectorstore.VectorStore;
+import org.springframework.ai.chat.memory.ChatMemory;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.messages.UserMessage;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.core.io.Resource;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
@@ -23,6 +25,7 @@ import reactor.core.publisher.Flux;
 import java.io.IOException;
 import java.net.URLEncoder;
 import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Objects;
  
@@ -31,14 +34,22 @@ import java.util.Objects;
 @RestController
 @RequestMapping("/ai/pdf")
 public class PdfController {
+
+    // 回放缓存回答时每段的字符数
+    private static final int REPLAY_CHUNK_CHARS = 16;
  
     private final FileRepository fileRepository;
  
-    private final VectorStore vectorStore;
-
     private final ChatClient pdfChatClient;
 
     private final ChatHistoryRepository chatHistoryRepository;
+
+    private final PdfIngestionService pdfIngestionService;
+
+    private final ChatMemory chatMemory;
+
+    private final ObjectProvider<SemanticResponseCache> responseCache;
+
     @RequestMapping(value = "/chat",produces = "text/html;charset=utf-8")
     public Flux<String> chat(String prompt, String chatId){
         //1.找到会话文件
@@ -49,13 +60,44 @@ public class PdfController {
         }
         //2.保存会话ID
         chatHistoryRepository.save("pdf",chatId);
-        //3.请求模型
+        //3.查找语义相近问题的缓存回答，命中时记入会话并按流式回放。
+        // 缓存不区分会话，只用于会话的第一个问题，有历史消息时回答可能依赖上下文
+        SemanticResponseCache cache = responseCache.getIfAvailable();
+        boolean contextFree = cache != null && chatMemory.get(chatId, 1).isEmpty();
+        SemanticResponseCache.Lookup lookup = contextFree ? cache.lookup(file.getFilename(), prompt) : null;
+        if (lookup != null && lookup.hit()) {
+            chatMemory.add(chatId, List.of(new UserMessage(prompt), new AssistantMessage(lookup.answer())));
+            return Flux.fromIterable(replayChunks(lookup.answer()));
+        }
+        //4.请求模型，完整回答后写入缓存
+        StringBuilder answer = new StringBuilder();
         return pdfChatClient.prompt()
                 .user(prompt)
                 .advisors(a -> a.param(AbstractChatMemoryAdvisor.CHAT_MEMORY_CONVERSATION_ID_KEY,chatId))//设置会话ID
                 .advisors(a -> a.param(QuestionAnswerAdvisor.FILTER_EXPRESSION,"file_name == '"+file.getFilename()+"'"))
                 .stream()
-                .content();
+                .content()
+                .doOnNext(answer::append)
+                .doOnComplete(() -> {
+                    if (lookup != null) {
+                        cache.put(lookup, answer.toString());
+                    }
+                });
+    }
+
+    private static List<String> replayChunks(String answer) {
+        List<String> chunks = new ArrayList<>(answer.length() / REPLAY_CHUNK_CHARS + 1);
+        int start = 0;
+        while (start < answer.length()) {
+            int end = Math.min(answer.length(), start + REPLAY_CHUNK_CHARS);
+            // 不拆开代理对
+            if (end < answer.length() && Character.isHighSurrogate(answer.charAt(end - 1))) {
+                end++;
+            }
+            chunks.add(answer.substring(start, end));
+            start = end;
+        }
+        return chunks;
     }
 
     /**
@@ -73,15 +115,27 @@ public class PdfController {
             if(! success) {
                 return Result.fail("保存文件失败！");
             }
-            // 3.写入向量库
-            this.writeToVectorStore(file.getResource());
-            return Result.ok();
+            // 3.提交向量化任务，上传请求不等待向量化完成
+            PdfIngestionJob job = pdfIngestionService.submit(chatId, fileRepository.getFile(chatId));
+            return Result.ok(job);
         } catch (Exception e) {
             log.error("Failed to upload PDF.", e);
             return Result.fail("上传文件失败！");
         }
     }
  
+    /**
+     * 查询向量化进度
+     */
+    @GetMapping("/jobs/{jobId}")
+    public Result<PdfIngestionJob> ingestionProgress(@PathVariable("jobId") String jobId) {
+        PdfIngestionJob job = pdfIngestionService.getJob(jobId);
+        if (job == null) {
+            return Result.fail("任务不存在！");
+        }
+        return Result.ok(job);
+    }
+
     /**
      * 文件下载
      */
@@ -100,29 +154,4 @@ public class PdfController {
                 .header("Content-Disposition", "attachment; filename=\"" + filename + "\"")
                 .body(resource);
     }
- 
-    private void writeToVectorStore(Resource resource) {
-        // 1.创建PDF的读取器
-        PagePdfDocumentReader reader = new PagePdfDocumentReader(
-                resource, // 文件源
-                PdfDocumentReaderConfig.builder()
-                        .withPageExtractedTextFormatter(ExtractedTextFormatter.defaults())
-                        .withPagesPerDocument(1) // 每1页PDF作为一个Document
-                        .build()
-        );
-        // 2.读取PDF文档，拆分为Document
-        List<Document> documents = reader.read();
-        
-        // 3.为每个文档添加文件名元数据
-        String fileName = resource.getFilename();
-        for (Document document : documents) {
-            document.getMetadata().put("file_name", fileName);
-            document.getMetadata().put("source", fileName);
-        }
-        
-        // 4.写入向量库
-        vectorStore.add(documents);
-        
-        log.info("PDF文档已加载到向量库: fileName={}, documentCount={}", fileName, documents.size());
-    }
 }
\ No newline at end of file
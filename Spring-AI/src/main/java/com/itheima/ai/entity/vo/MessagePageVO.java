@@ -0,0 +1,25 @@
+package com.itheima.ai.entity.vo;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class MessagePageVO {
+    /**
+     * 本页消息，按时间从早到晚排列
+     */
+    private List<MessageVO> messages;
+    /**
+     * 加载更早一页时传入的before，没有更早的消息时为null
+     */
+    private Integer before;
+    /**
+     * 会话的消息总数
+     */
+    private int total;
+}
@@ -0,0 +1,62 @@
+package com.itheima.ai.entity.vo;
+
+import lombok.Data;
+
+import java.time.LocalDateTime;
+
+/**
+ * PDF向量化任务进度
+ */
+@Data
+public class PdfIngestionJob {
+
+    /**
+     * 任务ID
+     */
+    private String jobId;
+
+    /**
+     * 提交任务的会话ID，同一文件的任务由多个会话共用，查询进度时为空
+     */
+    private String chatId;
+
+    /**
+     * 文件名
+     */
+    private String fileName;
+
+    /**
+     * 任务状态：PENDING, RUNNING, COMPLETED, FAILED
+     */
+    private String status;
+
+    /**
+     * 总页数
+     */
+    private Integer totalPages;
+
+    /**
+     * 已提取的页数
+     */
+    private Integer processedPages;
+
+    /**
+     * 已写入向量库的文档数
+     */
+    private Integer storedDocuments;
+
+    /**
+     * 失败原因
+     */
+    private String error;
+
+    /**
+     * 创建时间
+     */
+    private LocalDateTime createTime;
+
+    /**
+     * 结束时间
+     */
+    private LocalDateTime finishTime;
+}
@@ -0,0 +1,280 @@
+package com.itheima.ai.memory;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.util.Assert;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 有容量上限的会话记忆
+ * <p>
+ * 每个会话最多保留maxMessages条消息，超出时丢弃最早的消息；
+ * 所有会话的估算内存超出maxTotalBytes时，按最近最少使用的顺序淘汰整个会话；
+ * 超过idleTimeout未访问的会话在下次读写时被清理。
+ */
+public class BoundedChatMemory implements PageableChatMemory, MeterBinder {
+
+    // 每条消息除文本外的估算开销
+    private static final int MESSAGE_OVERHEAD_BYTES = 128;
+
+    private final int maxMessages;
+    private final long maxTotalBytes;
+    // 为null表示不按空闲时间清理
+    private final Duration idleTimeout;
+    private final Clock clock;
+
+    // accessOrder=true，最近访问的会话排在末尾
+    private final LinkedHashMap<String, Conversation> conversations = new LinkedHashMap<>(16, 0.75f, true);
+    private long totalBytes;
+    private long totalMessages;
+
+    private final AtomicLong lruEvictions = new AtomicLong();
+    private final AtomicLong idleEvictions = new AtomicLong();
+    private final AtomicLong trimmedMessages = new AtomicLong();
+
+    public BoundedChatMemory(int maxMessages, long maxTotalBytes, Duration idleTimeout) {
+        this(maxMessages, maxTotalBytes, idleTimeout, Clock.systemUTC());
+    }
+
+    /**
+     * @param maxMessages 每个会话保留的最大消息数
+     * @param maxTotalBytes 所有会话的估算内存上限
+     * @param idleTimeout 会话的最长空闲时间，为null表示不过期
+     */
+    public BoundedChatMemory(int maxMessages, long maxTotalBytes, Duration idleTimeout, Clock clock) {
+        Assert.isTrue(maxMessages > 0, "maxMessages must be positive");
+        Assert.isTrue(maxTotalBytes > 0, "maxTotalBytes must be positive");
+        this.maxMessages = maxMessages;
+        this.maxTotalBytes = maxTotalBytes;
+        this.idleTimeout = idleTimeout == null || idleTimeout.isZero() || idleTimeout.isNegative() ? null : idleTimeout;
+        this.clock = clock;
+    }
+
+    @Override
+    public synchronized void add(String conversationId, List<Message> messages) {
+        long now = clock.millis();
+        evictIdle(now);
+        Conversation conversation = conversations.computeIfAbsent(conversationId, id -> new Conversation());
+        conversation.lastAccess = now;
+        for (Message message : messages) {
+            conversation.add(message);
+        }
+        // 1.单个会话的消息数上限
+        while (conversation.messages.size() > maxMessages) {
+            conversation.removeFirst();
+            trimmedMessages.incrementAndGet();
+        }
+        // 2.全局内存上限，先淘汰其他会话，只剩当前会话时丢弃它最早的消息
+        Iterator<Map.Entry<String, Conversation>> iterator = conversations.entrySet().iterator();
+        while (totalBytes > maxTotalBytes && iterator.hasNext()) {
+            Map.Entry<String, Conversation> eldest = iterator.next();
+            if (eldest.getValue() == conversation) {
+                continue;
+            }
+            iterator.remove();
+            eldest.getValue().release();
+            lruEvictions.incrementAndGet();
+        }
+        while (totalBytes > maxTotalBytes && conversation.messages.size() > 1) {
+            conversation.removeFirst();
+            trimmedMessages.incrementAndGet();
+        }
+    }
+
+    @Override
+    public synchronized List<Message> get(String conversationId, int lastN) {
+        long now = clock.millis();
+        evictIdle(now);
+        Conversation conversation = conversations.get(conversationId);
+        if (conversation == null || lastN <= 0) {
+            return List.of();
+        }
+        conversation.lastAccess = now;
+        int skip = Math.max(0, conversation.messages.size() - lastN);
+        List<Message> result = new ArrayList<>(conversation.messages.size() - skip);
+        for (Message message : conversation.messages) {
+            if (skip > 0) {
+                skip--;
+                continue;
+            }
+            result.add(message);
+        }
+        return result;
+    }
+
+    /**
+     * 内存中只保留最近的消息，超出上限被丢弃的消息不计入序号
+     */
+    @Override
+    public synchronized int count(String conversationId) {
+        Conversation conversation = conversations.get(conversationId);
+        return conversation == null ? 0 : conversation.messages.size();
+    }
+
+    @Override
+    public synchronized List<Message> get(String conversationId, int from, int to) {
+        Conversation conversation = conversations.get(conversationId);
+        if (conversation == null) {
+            return List.of();
+        }
+        conversation.lastAccess = clock.millis();
+        from = Math.max(0, from);
+        to = Math.min(to, conversation.messages.size());
+        List<Message> result = new ArrayList<>(Math.max(0, to - from));
+        int index = 0;
+        for (Message message : conversation.messages) {
+            if (index >= to) {
+                break;
+            }
+            if (index++ >= from) {
+                result.add(message);
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public synchronized void clear(String conversationId) {
+        Conversation conversation = conversations.remove(conversationId);
+        if (conversation != null) {
+            conversation.release();
+        }
+    }
+
+    /**
+     * 会话是否在内存中，不更新访问顺序
+     */
+    public synchronized boolean contains(String conversationId) {
+        return conversations.containsKey(conversationId);
+    }
+
+    public int getMaxMessages() {
+        return maxMessages;
+    }
+
+    /**
+     * 清理空闲超时的会话
+     * @return 清理的会话数
+     */
+    public synchronized int evictIdle() {
+        return evictIdle(clock.millis());
+    }
+
+    public synchronized int getConversationCount() {
+        return conversations.size();
+    }
+
+    public synchronized long getTotalBytes() {
+        return totalBytes;
+    }
+
+    public synchronized long getTotalMessages() {
+        return totalMessages;
+    }
+
+    public long getLruEvictions() {
+        return lruEvictions.get();
+    }
+
+    public long getIdleEvictions() {
+        return idleEvictions.get();
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("ai.chat.memory.conversations", this, BoundedChatMemory::getConversationCount)
+                .description("内存中的会话数")
+                .register(registry);
+        Gauge.builder("ai.chat.memory.messages", this, BoundedChatMemory::getTotalMessages)
+                .description("内存中的消息数")
+                .register(registry);
+        Gauge.builder("ai.chat.memory.bytes", this, BoundedChatMemory::getTotalBytes)
+                .description("会话记忆的估算内存")
+                .baseUnit("bytes")
+                .register(registry);
+        FunctionCounter.builder("ai.chat.memory.evictions", lruEvictions, AtomicLong::get)
+                .tag("reason", "lru")
+                .register(registry);
+        FunctionCounter.builder("ai.chat.memory.evictions", idleEvictions, AtomicLong::get)
+                .tag("reason", "idle")
+                .register(registry);
+        FunctionCounter.builder("ai.chat.memory.trimmed.messages", trimmedMessages, AtomicLong::get)
+                .register(registry);
+    }
+
+    private int evictIdle(long now) {
+        if (idleTimeout == null) {
+            return 0;
+        }
+        // 按访问顺序排列，遇到第一个未超时的会话即可停止
+        int removed = 0;
+        Iterator<Conversation> iterator = conversations.values().iterator();
+        while (iterator.hasNext()) {
+            Conversation conversation = iterator.next();
+            if (now - conversation.lastAccess <= idleTimeout.toMillis()) {
+                break;
+            }
+            iterator.remove();
+            conversation.release();
+            removed++;
+        }
+        idleEvictions.addAndGet(removed);
+        return removed;
+    }
+
+    static long estimateBytes(Message message) {
+        long bytes = MESSAGE_OVERHEAD_BYTES;
+        if (message.getText() != null) {
+            bytes += 2L * message.getText().length();
+        }
+        if (message instanceof AssistantMessage assistantMessage) {
+            for (AssistantMessage.ToolCall toolCall : assistantMessage.getToolCalls()) {
+                bytes += 2L * (toolCall.name().length() + toolCall.arguments().length());
+            }
+        }
+        return bytes;
+    }
+
+    private final class Conversation {
+        final ArrayDeque<Message> messages = new ArrayDeque<>();
+        final ArrayDeque<Long> sizes = new ArrayDeque<>();
+        long bytes;
+        long lastAccess;
+
+        void add(Message message) {
+            long size = estimateBytes(message);
+            messages.addLast(message);
+            sizes.addLast(size);
+            bytes += size;
+            totalBytes += size;
+            totalMessages++;
+        }
+
+        void removeFirst() {
+            messages.removeFirst();
+            long size = sizes.removeFirst();
+            bytes -= size;
+            totalBytes -= size;
+            totalMessages--;
+        }
+
+        void release() {
+            totalBytes -= bytes;
+            totalMessages -= messages.size();
+            bytes = 0;
+        }
+    }
+}
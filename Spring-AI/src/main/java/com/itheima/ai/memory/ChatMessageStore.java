@@ -0,0 +1,645 @@
+package com.itheima.ai.memory;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.MessageType;
+import org.springframework.ai.chat.messages.SystemMessage;
+import org.springframework.ai.chat.messages.UserMessage;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * 基于分段追加写文件的会话消息存储
+ * <p>
+ * 消息按写入顺序追加到当前段文件，段文件超过segmentBytes后切换到新段。
+ * 每条记录为：4字节长度、4字节CRC32、记录内容，记录内容为带序号的消息、会话摘要或清空会话的标记。
+ * 内存中只保存每条消息所在的段和偏移，读取时按需从文件加载，文件读取和刷盘不占用存储的锁。
+ * 每个会话最多保留maxMessages条消息，更早的消息失效但序号不变；
+ * 最早的段中有效消息不足一半时，把其余有效消息复制到当前段后整段删除。
+ */
+@Slf4j
+public class ChatMessageStore implements Closeable {
+
+    private static final int RECORD_HEADER_BYTES = 8;
+    // 旧格式的消息记录，序号由写入顺序决定
+    private static final byte OP_MESSAGE = 1;
+    private static final byte OP_CLEAR = 2;
+    private static final byte OP_SEQUENCED_MESSAGE = 3;
+    private static final byte OP_SUMMARY = 4;
+    // 位置的高24位为段号，低40位为段内偏移
+    private static final int OFFSET_BITS = 40;
+    private static final String SEGMENT_SUFFIX = ".seg";
+
+    private final Path directory;
+    private final long segmentBytes;
+    private final boolean sync;
+    private final int maxMessages;
+
+    // 段号 -> 段，按段号排序
+    private final TreeMap<Integer, Segment> segments = new TreeMap<>();
+    // 会话ID -> 消息位置，按写入顺序排列
+    private final Map<String, Positions> conversations = new HashMap<>();
+    // 会话ID -> 最新摘要的位置
+    private final Map<String, Long> summaries = new HashMap<>();
+    private Segment active;
+
+    public ChatMessageStore(Path directory, long segmentBytes, boolean sync) throws IOException {
+        this(directory, segmentBytes, sync, 0);
+    }
+
+    /**
+     * @param directory 段文件所在目录，不存在时创建
+     * @param segmentBytes 单个段文件的大小上限
+     * @param sync 每次写入后是否立即刷盘
+     * @param maxMessages 每个会话最多保留的消息数，为0表示不限制
+     */
+    public ChatMessageStore(Path directory, long segmentBytes, boolean sync, int maxMessages) throws IOException {
+        this.directory = directory;
+        this.segmentBytes = segmentBytes;
+        this.sync = sync;
+        this.maxMessages = maxMessages;
+        Files.createDirectories(directory);
+        try (Stream<Path> files = Files.list(directory)) {
+            for (Path file : files.filter(f -> f.getFileName().toString().endsWith(SEGMENT_SUFFIX)).toList()) {
+                String name = file.getFileName().toString();
+                int id = Integer.parseInt(name.substring(0, name.length() - SEGMENT_SUFFIX.length()));
+                segments.put(id, new Segment(id, file));
+            }
+        }
+        Map<String, TreeMap<Integer, Long>> scanned = new HashMap<>();
+        for (Segment segment : segments.values()) {
+            scan(segment, scanned, summaries);
+        }
+        // 复制过的消息可能出现在序号更大的消息之后，全部读完后再按序号排列。
+        // 已丢弃的消息可能还留在未删除的段中，只保留末尾序号连续的部分
+        for (Map.Entry<String, TreeMap<Integer, Long>> entry : scanned.entrySet()) {
+            TreeMap<Integer, Long> sequences = entry.getValue();
+            int base = sequences.lastKey();
+            while (sequences.containsKey(base - 1)) {
+                base--;
+            }
+            Map<Integer, Long> dropped = sequences.headMap(base);
+            dropped.values().forEach(p -> segmentOf(p).live--);
+            dropped.clear();
+            Positions positions = new Positions();
+            positions.base = base;
+            sequences.values().forEach(positions::add);
+            conversations.put(entry.getKey(), positions);
+            trim(positions);
+        }
+        active = segments.isEmpty() ? newSegment(1) : segments.lastEntry().getValue();
+        compact();
+        log.info("会话消息存储已加载: directory={}, segments={}, conversations={}", directory, segments.size(), conversations.size());
+    }
+
+    /**
+     * 追加消息
+     */
+    public void append(String conversationId, List<Message> messages) {
+        Segment written;
+        try {
+            synchronized (this) {
+                Positions positions = conversations.computeIfAbsent(conversationId, id -> new Positions());
+                for (Message message : messages) {
+                    if (message.getMessageType() == MessageType.TOOL) {
+                        // 工具调用结果不作为历史消息保存
+                        continue;
+                    }
+                    long position = write(encodeMessage(conversationId, positions.end(), message));
+                    positions.add(position);
+                    segmentOf(position).records++;
+                    segmentOf(position).live++;
+                }
+                trim(positions);
+                compact();
+                written = active;
+            }
+            if (sync) {
+                force(written);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("写入会话消息失败: conversationId=" + conversationId, e);
+        }
+    }
+
+    /**
+     * 读取最近的lastN条消息
+     */
+    public List<Message> read(String conversationId, int lastN) {
+        int from;
+        int to;
+        synchronized (this) {
+            to = count(conversationId);
+            from = Math.max(first(conversationId), to - Math.max(0, lastN));
+        }
+        return read(conversationId, from, to);
+    }
+
+    /**
+     * 读取序号在[from, to)内的消息，序号从0开始，已不再保留的消息被忽略
+     */
+    public List<Message> read(String conversationId, int from, int to) {
+        try {
+            try {
+                return readUnlocked(conversationId, from, to);
+            } catch (ClosedChannelException e) {
+                // 读取期间所在的段被合并删除，在锁内重新读取
+                synchronized (this) {
+                    return readUnlocked(conversationId, from, to);
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("读取会话消息失败: conversationId=" + conversationId, e);
+        }
+    }
+
+    /**
+     * 在锁内取出消息位置，在锁外读取文件
+     */
+    private List<Message> readUnlocked(String conversationId, int from, int to) throws IOException {
+        Segment[] segments;
+        long[] offsets;
+        synchronized (this) {
+            Positions positions = conversations.get(conversationId);
+            if (positions == null) {
+                return List.of();
+            }
+            from = Math.max(positions.base, from);
+            to = Math.min(to, positions.end());
+            if (from >= to) {
+                return List.of();
+            }
+            segments = new Segment[to - from];
+            offsets = new long[to - from];
+            for (int i = 0; i < segments.length; i++) {
+                long position = positions.values[from - positions.base + i];
+                segments[i] = segmentOf(position);
+                offsets[i] = offsetOf(position);
+            }
+        }
+        List<Message> messages = new ArrayList<>(segments.length);
+        for (int i = 0; i < segments.length; i++) {
+            messages.add(decodeMessage(segments[i].read(offsets[i])));
+        }
+        return messages;
+    }
+
+    /**
+     * 会话的消息数，包括已不再保留的较早消息
+     */
+    public synchronized int count(String conversationId) {
+        Positions positions = conversations.get(conversationId);
+        return positions == null ? 0 : positions.end();
+    }
+
+    /**
+     * 会话中最早仍然保留的消息序号
+     */
+    public synchronized int first(String conversationId) {
+        Positions positions = conversations.get(conversationId);
+        return positions == null ? 0 : positions.base;
+    }
+
+    /**
+     * 保存会话摘要，替换之前的摘要。会话已被删除时忽略
+     */
+    public void saveSummary(String conversationId, ConversationSummarizer.ConversationSummary summary) {
+        Segment written;
+        try {
+            synchronized (this) {
+                if (!conversations.containsKey(conversationId)) {
+                    return;
+                }
+                long position = write(encodeSummary(conversationId, summary));
+                segmentOf(position).records++;
+                segmentOf(position).live++;
+                Long replaced = summaries.put(conversationId, position);
+                if (replaced != null) {
+                    segmentOf(replaced).live--;
+                }
+                compact();
+                written = active;
+            }
+            if (sync) {
+                force(written);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("写入会话摘要失败: conversationId=" + conversationId, e);
+        }
+    }
+
+    /**
+     * 读取会话摘要，没有时返回null
+     */
+    public ConversationSummarizer.ConversationSummary loadSummary(String conversationId) {
+        try {
+            try {
+                return loadSummaryUnlocked(conversationId);
+            } catch (ClosedChannelException e) {
+                // 读取期间所在的段被合并删除，在锁内重新读取
+                synchronized (this) {
+                    return loadSummaryUnlocked(conversationId);
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("读取会话摘要失败: conversationId=" + conversationId, e);
+        }
+    }
+
+    private ConversationSummarizer.ConversationSummary loadSummaryUnlocked(String conversationId) throws IOException {
+        Segment segment;
+        long offset;
+        synchronized (this) {
+            Long position = summaries.get(conversationId);
+            if (position == null) {
+                return null;
+            }
+            segment = segmentOf(position);
+            offset = offsetOf(position);
+        }
+        return decodeSummary(segment.read(offset));
+    }
+
+    /**
+     * 删除会话的全部消息和摘要
+     */
+    public void delete(String conversationId) {
+        Segment written;
+        try {
+            synchronized (this) {
+                Positions positions = conversations.remove(conversationId);
+                Long summary = summaries.remove(conversationId);
+                if (positions == null && summary == null) {
+                    return;
+                }
+                write(encodeClear(conversationId));
+                if (positions != null) {
+                    release(positions, 0, positions.size);
+                }
+                if (summary != null) {
+                    segmentOf(summary).live--;
+                }
+                compact();
+                written = active;
+            }
+            if (sync) {
+                force(written);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("删除会话消息失败: conversationId=" + conversationId, e);
+        }
+    }
+
+    public synchronized Set<String> conversationIds() {
+        return Set.copyOf(conversations.keySet());
+    }
+
+    public synchronized int getSegmentCount() {
+        return segments.size();
+    }
+
+    public synchronized long getDiskBytes() {
+        long bytes = 0;
+        for (Segment segment : segments.values()) {
+            bytes += segment.size;
+        }
+        return bytes;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        for (Segment segment : segments.values()) {
+            segment.channel.close();
+        }
+    }
+
+    private long write(byte[] payload) throws IOException {
+        if (active.size > 0 && active.size + RECORD_HEADER_BYTES + payload.length > segmentBytes) {
+            active.channel.force(false);
+            active = newSegment(active.id + 1);
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(RECORD_HEADER_BYTES + payload.length);
+        buffer.putInt(payload.length).putInt(crc(payload)).put(payload).flip();
+        long offset = active.size;
+        while (buffer.hasRemaining()) {
+            active.channel.write(buffer, active.size + buffer.position());
+        }
+        active.size += buffer.limit();
+        return ((long) active.id << OFFSET_BITS) | offset;
+    }
+
+    /**
+     * 读取段内全部记录，重建索引；末尾不完整的记录(写入中途崩溃)会被截掉
+     */
+    private void scan(Segment segment, Map<String, TreeMap<Integer, Long>> scanned,
+                      Map<String, Long> summaries) throws IOException {
+        long position = 0;
+        long size = segment.channel.size();
+        while (position + RECORD_HEADER_BYTES <= size) {
+            byte[] payload = segment.readChecked(position, size);
+            if (payload == null) {
+                break;
+            }
+            try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload))) {
+                byte op = in.readByte();
+                String conversationId = in.readUTF();
+                if (op == OP_MESSAGE || op == OP_SEQUENCED_MESSAGE) {
+                    TreeMap<Integer, Long> positions = scanned.computeIfAbsent(conversationId, id -> new TreeMap<>());
+                    int sequence = op == OP_SEQUENCED_MESSAGE ? in.readInt()
+                            : positions.isEmpty() ? 0 : positions.lastKey() + 1;
+                    Long replaced = positions.put(sequence, ((long) segment.id << OFFSET_BITS) | position);
+                    if (replaced != null) {
+                        segmentOf(replaced).live--;
+                    }
+                    segment.records++;
+                    segment.live++;
+                } else if (op == OP_SUMMARY) {
+                    Long replaced = summaries.put(conversationId, ((long) segment.id << OFFSET_BITS) | position);
+                    if (replaced != null) {
+                        segmentOf(replaced).live--;
+                    }
+                    segment.records++;
+                    segment.live++;
+                } else if (op == OP_CLEAR) {
+                    TreeMap<Integer, Long> positions = scanned.remove(conversationId);
+                    if (positions != null) {
+                        positions.values().forEach(p -> segmentOf(p).live--);
+                    }
+                    Long summary = summaries.remove(conversationId);
+                    if (summary != null) {
+                        segmentOf(summary).live--;
+                    }
+                }
+            }
+            position += RECORD_HEADER_BYTES + payload.length;
+        }
+        if (position < size) {
+            log.warn("会话消息段末尾存在不完整的记录，已截断: path={}, valid={}, size={}", segment.path, position, size);
+            segment.channel.truncate(position);
+        }
+        segment.size = position;
+    }
+
+    private void release(Positions positions, int from, int to) {
+        for (int i = from; i < to; i++) {
+            segmentOf(positions.values[i]).live--;
+        }
+    }
+
+    /**
+     * 超出保留数量时丢弃最早的消息，序号不变
+     */
+    private void trim(Positions positions) {
+        if (maxMessages > 0 && positions.size > maxMessages) {
+            int dropped = positions.size - maxMessages;
+            release(positions, 0, dropped);
+            positions.dropFirst(dropped);
+        }
+    }
+
+    /**
+     * 删除最早的段：没有有效消息时直接删除，有效消息不足一半时先复制到当前段。
+     * 只从最早的段开始删，保证清空标记不会早于它清空的消息被删除；
+     * 复制的消息带有原序号，重启时仍按序号排列
+     */
+    private void compact() throws IOException {
+        while (segments.size() > 1) {
+            Segment oldest = segments.firstEntry().getValue();
+            if (oldest == active || oldest.live * 2 > oldest.records) {
+                return;
+            }
+            if (oldest.live > 0) {
+                for (Map.Entry<String, Positions> entry : conversations.entrySet()) {
+                    Positions positions = entry.getValue();
+                    for (int i = 0; i < positions.size; i++) {
+                        if (segmentOf(positions.values[i]) != oldest) {
+                            continue;
+                        }
+                        Message message = decodeMessage(oldest.read(offsetOf(positions.values[i])));
+                        long moved = write(encodeMessage(entry.getKey(), positions.base + i, message));
+                        positions.values[i] = moved;
+                        segmentOf(moved).records++;
+                        segmentOf(moved).live++;
+                        oldest.live--;
+                    }
+                }
+                for (Map.Entry<String, Long> entry : summaries.entrySet()) {
+                    if (segmentOf(entry.getValue()) == oldest) {
+                        long moved = write(oldest.read(offsetOf(entry.getValue())));
+                        entry.setValue(moved);
+                        segmentOf(moved).records++;
+                        segmentOf(moved).live++;
+                        oldest.live--;
+                    }
+                }
+                // 复制的记录落盘后才能删除原来的段
+                active.channel.force(false);
+                log.info("会话消息段已合并: path={}", oldest.path);
+            }
+            segments.remove(oldest.id);
+            try {
+                oldest.channel.close();
+                Files.deleteIfExists(oldest.path);
+                log.info("会话消息段已删除: path={}", oldest.path);
+            } catch (IOException e) {
+                log.warn("会话消息段删除失败: path={}", oldest.path, e);
+            }
+        }
+    }
+
+    /**
+     * 刷盘在锁外进行，段在此期间被删除说明其中已没有有效消息
+     */
+    private static void force(Segment segment) throws IOException {
+        try {
+            segment.channel.force(false);
+        } catch (ClosedChannelException e) {
+            log.debug("会话消息段已删除，跳过刷盘: path={}", segment.path);
+        }
+    }
+
+    private Segment newSegment(int id) throws IOException {
+        Segment segment = new Segment(id, directory.resolve(String.format("%08d%s", id, SEGMENT_SUFFIX)));
+        segments.put(id, segment);
+        return segment;
+    }
+
+    private Segment segmentOf(long position) {
+        return segments.get((int) (position >>> OFFSET_BITS));
+    }
+
+    private static long offsetOf(long position) {
+        return position & ((1L << OFFSET_BITS) - 1);
+    }
+
+    private static byte[] encodeMessage(String conversationId, int sequence, Message message) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeByte(OP_SEQUENCED_MESSAGE);
+            out.writeUTF(conversationId);
+            out.writeInt(sequence);
+            out.writeUTF(message.getMessageType().name());
+            byte[] text = message.getText() == null ? new byte[0] : message.getText().getBytes(StandardCharsets.UTF_8);
+            out.writeInt(text.length);
+            out.write(text);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static byte[] encodeClear(String conversationId) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeByte(OP_CLEAR);
+            out.writeUTF(conversationId);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static byte[] encodeSummary(String conversationId, ConversationSummarizer.ConversationSummary summary) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeByte(OP_SUMMARY);
+            out.writeUTF(conversationId);
+            out.writeInt(summary.coveredMessages());
+            byte[] text = summary.text().getBytes(StandardCharsets.UTF_8);
+            out.writeInt(text.length);
+            out.write(text);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static ConversationSummarizer.ConversationSummary decodeSummary(byte[] payload) throws IOException {
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload))) {
+            in.readByte();
+            in.readUTF();
+            int coveredMessages = in.readInt();
+            String text = new String(in.readNBytes(in.readInt()), StandardCharsets.UTF_8);
+            return new ConversationSummarizer.ConversationSummary(text, coveredMessages);
+        }
+    }
+
+    private static Message decodeMessage(byte[] payload) throws IOException {
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload))) {
+            byte op = in.readByte();
+            in.readUTF();
+            if (op == OP_SEQUENCED_MESSAGE) {
+                in.readInt();
+            }
+            MessageType type = MessageType.valueOf(in.readUTF());
+            String text = new String(in.readNBytes(in.readInt()), StandardCharsets.UTF_8);
+            return switch (type) {
+                case USER -> new UserMessage(text);
+                case ASSISTANT -> new AssistantMessage(text);
+                case SYSTEM -> new SystemMessage(text);
+                case TOOL -> throw new IOException("工具调用结果不应写入会话消息存储");
+            };
+        }
+    }
+
+    private static int crc(byte[] bytes) {
+        CRC32 crc = new CRC32();
+        crc.update(bytes);
+        return (int) crc.getValue();
+    }
+
+    private static final class Segment {
+        final int id;
+        final Path path;
+        final FileChannel channel;
+        volatile long size;
+        // 段内写入的消息和摘要数
+        int records;
+        // 段内未被清空、丢弃或替换的记录数
+        int live;
+
+        Segment(int id, Path path) throws IOException {
+            this.id = id;
+            this.path = path;
+            this.channel = FileChannel.open(path, StandardOpenOption.CREATE,
+                    StandardOpenOption.READ, StandardOpenOption.WRITE);
+        }
+
+        byte[] read(long offset) throws IOException {
+            byte[] payload = readChecked(offset, size);
+            if (payload == null) {
+                throw new IOException("会话消息记录已损坏: path=" + path + ", offset=" + offset);
+            }
+            return payload;
+        }
+
+        /**
+         * 读取并校验一条记录，记录不完整或校验失败时返回null
+         */
+        byte[] readChecked(long offset, long limit) throws IOException {
+            ByteBuffer header = ByteBuffer.allocate(RECORD_HEADER_BYTES);
+            readFully(header, offset);
+            header.flip();
+            int length = header.getInt();
+            int checksum = header.getInt();
+            if (length < 0 || offset + RECORD_HEADER_BYTES + length > limit) {
+                return null;
+            }
+            ByteBuffer payload = ByteBuffer.allocate(length);
+            readFully(payload, offset + RECORD_HEADER_BYTES);
+            return crc(payload.array()) == checksum ? payload.array() : null;
+        }
+
+        private void readFully(ByteBuffer buffer, long position) throws IOException {
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer, position + buffer.position()) < 0) {
+                    throw new IOException("unexpected end of file: " + path);
+                }
+            }
+        }
+    }
+
+    private static final class Positions {
+        long[] values = new long[8];
+        int size;
+        // values[0]对应的消息序号
+        int base;
+
+        void add(long position) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = position;
+        }
+
+        int end() {
+            return base + size;
+        }
+
+        void dropFirst(int n) {
+            System.arraycopy(values, n, values, 0, size - n);
+            size -= n;
+            base += n;
+            if (values.length > 16 && size < values.length / 4) {
+                values = Arrays.copyOf(values, values.length / 2);
+            }
+        }
+    }
+}
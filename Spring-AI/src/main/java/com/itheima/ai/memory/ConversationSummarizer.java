@@ -0,0 +1,182 @@
+package com.itheima.ai.memory;
+
+import com.itheima.ai.constants.SystemConstants;
+import com.itheima.ai.util.LruCache;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.MessageType;
+import org.springframework.ai.chat.messages.SystemMessage;
+import org.springframework.ai.chat.messages.UserMessage;
+import org.springframework.ai.chat.model.ChatModel;
+import org.springframework.ai.chat.prompt.Prompt;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.util.StringUtils;
+
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 会话摘要
+ * <p>
+ * 每轮对话保存后在后台线程检查会话：尚未摘要的较早消息超过triggerTokens时，
+ * 把它们连同之前的摘要一起压缩成新的摘要，最近的keepRecentMessages条消息不参与摘要。
+ * 摘要与其覆盖的消息数一起写入{@link TieredChatMemory}的磁盘存储，重启后仍然有效，内存中只缓存最近使用的摘要；
+ * 读取历史时摘要以系统消息的形式代替被覆盖的消息。会话被清空时摘要一并删除。
+ */
+@Slf4j
+public class ConversationSummarizer {
+
+    private final TieredChatMemory chatMemory;
+    private final ChatModel chatModel;
+    private final int triggerTokens;
+    private final int keepRecentMessages;
+
+    private final LruCache<String, ConversationSummary> summaries;
+    // 正在摘要或排队中的会话，避免同一会话重复提交
+    private final Set<String> pending = ConcurrentHashMap.newKeySet();
+    private final ThreadPoolTaskExecutor executor;
+
+    /**
+     * @param chatMemory 会话记忆
+     * @param chatModel 生成摘要使用的模型
+     * @param triggerTokens 尚未摘要的较早消息超过该token数时生成摘要
+     * @param keepRecentMessages 保留原文、不参与摘要的最近消息数
+     * @param maxSummaries 内存中缓存的最大摘要数
+     * @param threads 摘要线程数
+     */
+    public ConversationSummarizer(TieredChatMemory chatMemory, ChatModel chatModel, int triggerTokens,
+                                  int keepRecentMessages, int maxSummaries, int threads) {
+        this.chatMemory = chatMemory;
+        this.chatModel = chatModel;
+        this.triggerTokens = triggerTokens;
+        this.keepRecentMessages = keepRecentMessages;
+        this.summaries = new LruCache<>(maxSummaries, null);
+        this.executor = new ThreadPoolTaskExecutor();
+        this.executor.setThreadNamePrefix("chat-summary-");
+        this.executor.setCorePoolSize(threads);
+        this.executor.setMaxPoolSize(threads);
+        this.executor.setQueueCapacity(1000);
+        this.executor.initialize();
+        chatMemory.addClearListener(this::clear);
+    }
+
+    /**
+     * 会话当前的摘要，没有时返回null
+     */
+    public ConversationSummary getSummary(String conversationId) {
+        ConversationSummary summary = summaries.get(conversationId);
+        if (summary == null) {
+            summary = chatMemory.getStore().loadSummary(conversationId);
+            if (summary != null) {
+                summaries.put(conversationId, summary);
+            }
+        }
+        return summary;
+    }
+
+    /**
+     * 会话有新消息时调用，在后台线程检查是否需要摘要，不阻塞调用方
+     */
+    public void onMessagesAdded(String conversationId) {
+        if (!pending.add(conversationId)) {
+            return;
+        }
+        try {
+            executor.execute(() -> {
+                try {
+                    summarize(conversationId);
+                } catch (RuntimeException e) {
+                    log.warn("会话摘要失败: conversationId={}", conversationId, e);
+                } finally {
+                    pending.remove(conversationId);
+                }
+            });
+        } catch (TaskRejectedException e) {
+            // 队列已满时放弃本次摘要，下一轮对话会再次检查
+            pending.remove(conversationId);
+        }
+    }
+
+    /**
+     * 会话被清空时删除缓存的摘要，磁盘上的摘要随会话一起删除
+     */
+    public void clear(String conversationId) {
+        summaries.remove(conversationId);
+    }
+
+    public void shutdown() {
+        executor.shutdown();
+    }
+
+    /**
+     * 检查并生成摘要
+     * @return 是否生成了新摘要
+     */
+    boolean summarize(String conversationId) {
+        ConversationSummary previous = getSummary(conversationId);
+        int from = previous == null ? 0 : previous.coveredMessages();
+        int count = chatMemory.count(conversationId);
+        if (count < from) {
+            // 会话被清空后重新开始
+            summaries.remove(conversationId);
+            previous = null;
+            from = 0;
+        }
+        int end = count - keepRecentMessages;
+        if (end <= from) {
+            return false;
+        }
+        List<Message> messages = chatMemory.get(conversationId, from, count);
+        // 摘要到一轮对话结束为止，保留的最近消息从用户消息开始
+        int cut = end - from;
+        while (cut < messages.size() && messages.get(cut).getMessageType() != MessageType.USER) {
+            cut++;
+        }
+        List<Message> older = messages.subList(0, cut);
+        int tokens = older.stream().mapToInt(TokenBudgetChatMemoryAdvisor::countTokens).sum();
+        if (tokens < triggerTokens) {
+            return false;
+        }
+
+        String text = chatModel.call(new Prompt(List.of(
+                        new SystemMessage(SystemConstants.SUMMARY_SYSTEM_PROMPT),
+                        new UserMessage(transcript(previous, older)))))
+                .getResult().getOutput().getText();
+        if (!StringUtils.hasText(text)) {
+            return false;
+        }
+        ConversationSummary summary = new ConversationSummary(text.strip(), from + cut);
+        chatMemory.getStore().saveSummary(conversationId, summary);
+        summaries.put(conversationId, summary);
+        log.debug("会话摘要已更新: conversationId={}, coveredMessages={}, summarizedTokens={}",
+                conversationId, from + cut, tokens);
+        return true;
+    }
+
+    private static String transcript(ConversationSummary previous, List<Message> messages) {
+        StringBuilder sb = new StringBuilder();
+        if (previous != null) {
+            sb.append("之前的摘要：\n").append(previous.text()).append("\n\n");
+        }
+        sb.append("对话记录：\n");
+        for (Message message : messages) {
+            sb.append(message.getMessageType() == MessageType.USER ? "用户：" : "助手：")
+                    .append(message.getText())
+                    .append('\n');
+        }
+        return sb.toString();
+    }
+
+    /**
+     * @param text 摘要内容
+     * @param coveredMessages 摘要覆盖的消息数，即会话中序号小于该值的消息
+     */
+    public record ConversationSummary(String text, int coveredMessages) {
+
+        public Message toMessage() {
+            return new SystemMessage("以下是之前对话的摘要：\n" + text);
+        }
+    }
+}
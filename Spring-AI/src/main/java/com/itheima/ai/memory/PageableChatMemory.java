@@ -0,0 +1,31 @@
+package com.itheima.ai.memory;
+
+import org.springframework.ai.chat.memory.ChatMemory;
+import org.springframework.ai.chat.messages.Message;
+
+import java.util.List;
+
+/**
+ * 支持按位置读取的会话记忆，用于历史消息分页
+ * <p>
+ * 位置为消息在会话中的序号，从0开始，最早的消息序号最小。
+ */
+public interface PageableChatMemory extends ChatMemory {
+
+    /**
+     * 会话的消息数
+     */
+    int count(String conversationId);
+
+    /**
+     * 最早仍然保留的消息序号，更早的消息已被丢弃
+     */
+    default int first(String conversationId) {
+        return 0;
+    }
+
+    /**
+     * 读取序号在[from, to)内的消息，超出范围的部分被忽略
+     */
+    List<Message> get(String conversationId, int from, int to);
+}
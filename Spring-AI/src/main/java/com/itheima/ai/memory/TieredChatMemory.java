@@ -0,0 +1,141 @@
+package com.itheima.ai.memory;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.ai.chat.messages.Message;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * 两级会话记忆
+ * <p>
+ * 所有消息先追加到磁盘上的{@link ChatMessageStore}，最近使用的会话同时保存在内存中的{@link BoundedChatMemory}。
+ * 内存中没有的会话在访问时从磁盘加载最近的消息；请求的消息数超出内存中保留的数量时直接读磁盘。
+ * 重启后历史消息仍然可以读取。同一会话的读写按会话ID分段加锁，不同会话之间互不阻塞。
+ */
+public class TieredChatMemory implements PageableChatMemory, MeterBinder, Closeable {
+
+    private final BoundedChatMemory hot;
+    private final ChatMessageStore store;
+
+    private static final int LOCK_STRIPES = 64;
+
+    private final AtomicLong coldLoads = new AtomicLong();
+    private final Object[] locks = new Object[LOCK_STRIPES];
+    private final List<Consumer<String>> clearListeners = new CopyOnWriteArrayList<>();
+
+    public TieredChatMemory(BoundedChatMemory hot, ChatMessageStore store) {
+        this.hot = hot;
+        this.store = store;
+        for (int i = 0; i < locks.length; i++) {
+            locks[i] = new Object();
+        }
+    }
+
+    @Override
+    public void add(String conversationId, List<Message> messages) {
+        synchronized (lockFor(conversationId)) {
+            store.append(conversationId, messages);
+            // 只有内存中已有的会话才直接追加，否则内存中只会有部分消息，留到下次读取时从磁盘加载
+            hot.evictIdle();
+            if (hot.contains(conversationId)) {
+                hot.add(conversationId, messages);
+            }
+        }
+    }
+
+    @Override
+    public List<Message> get(String conversationId, int lastN) {
+        synchronized (lockFor(conversationId)) {
+            List<Message> messages = hot.get(conversationId, lastN);
+            if (messages.size() >= lastN) {
+                return messages;
+            }
+            int stored = store.count(conversationId) - store.first(conversationId);
+            if (stored <= messages.size()) {
+                return messages;
+            }
+            // 内存中没有或不够，从磁盘读取
+            coldLoads.incrementAndGet();
+            List<Message> loaded = store.read(conversationId, lastN);
+            if (!hot.contains(conversationId)) {
+                int warm = Math.min(hot.getMaxMessages(), loaded.size());
+                hot.add(conversationId, loaded.subList(loaded.size() - warm, loaded.size()));
+            }
+            return loaded;
+        }
+    }
+
+    @Override
+    public int count(String conversationId) {
+        return store.count(conversationId);
+    }
+
+    @Override
+    public int first(String conversationId) {
+        return store.first(conversationId);
+    }
+
+    /**
+     * 分页读取的多是较早的消息，直接读磁盘，不加载到内存
+     */
+    @Override
+    public List<Message> get(String conversationId, int from, int to) {
+        return store.read(conversationId, from, to);
+    }
+
+    @Override
+    public void clear(String conversationId) {
+        synchronized (lockFor(conversationId)) {
+            hot.clear(conversationId);
+            store.delete(conversationId);
+        }
+        clearListeners.forEach(listener -> listener.accept(conversationId));
+    }
+
+    /**
+     * 注册会话被清空时的回调，参数为会话ID
+     */
+    public void addClearListener(Consumer<String> listener) {
+        clearListeners.add(listener);
+    }
+
+    public BoundedChatMemory getHot() {
+        return hot;
+    }
+
+    public ChatMessageStore getStore() {
+        return store;
+    }
+
+    private Object lockFor(String conversationId) {
+        return locks[Math.floorMod(conversationId.hashCode(), locks.length)];
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        hot.bindTo(registry);
+        Gauge.builder("ai.chat.memory.store.segments", store, ChatMessageStore::getSegmentCount)
+                .description("磁盘上的会话消息段数")
+                .register(registry);
+        Gauge.builder("ai.chat.memory.store.bytes", store, ChatMessageStore::getDiskBytes)
+                .description("磁盘上的会话消息大小")
+                .baseUnit("bytes")
+                .register(registry);
+        FunctionCounter.builder("ai.chat.memory.cold.loads", coldLoads, AtomicLong::get)
+                .description("从磁盘加载会话的次数")
+                .register(registry);
+    }
+
+    @Override
+    public void close() throws IOException {
+        store.close();
+    }
+}
@@ -0,0 +1,147 @@
+package com.itheima.ai.memory;
+
+import com.itheima.ai.reader.TokenChunker;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.chat.client.advisor.AbstractChatMemoryAdvisor;
+import org.springframework.ai.chat.client.advisor.api.AdvisedRequest;
+import org.springframework.ai.chat.client.advisor.api.AdvisedResponse;
+import org.springframework.ai.chat.client.advisor.api.CallAroundAdvisorChain;
+import org.springframework.ai.chat.client.advisor.api.StreamAroundAdvisorChain;
+import org.springframework.ai.chat.memory.ChatMemory;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.MessageType;
+import org.springframework.ai.chat.messages.UserMessage;
+import org.springframework.ai.chat.model.MessageAggregator;
+import reactor.core.publisher.Flux;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 按token预算截取历史消息的会话记忆拦截器
+ * <p>
+ * 与MessageChatMemoryAdvisor相同地读取和保存会话记忆，但只从最新的消息往前保留不超过预算的部分，
+ * 预算按本次请求使用的模型确定。被截掉的历史以完整的一问一答为单位，保留的历史总是从用户消息开始。
+ * 配置了{@link ConversationSummarizer}时，已被摘要覆盖的消息以一条摘要系统消息代替，每轮对话后触发后台摘要。
+ */
+@Slf4j
+public class TokenBudgetChatMemoryAdvisor extends AbstractChatMemoryAdvisor<ChatMemory> {
+
+    // 每条消息除文本外的格式开销(角色、分隔符)
+    private static final int MESSAGE_OVERHEAD_TOKENS = 4;
+
+    private final String defaultModel;
+    private final int defaultBudget;
+    private final Map<String, Integer> modelBudgets;
+    // 为null表示不做摘要
+    private final ConversationSummarizer summarizer;
+
+    /**
+     * @param chatMemory 会话记忆
+     * @param defaultModel 请求未指定模型时使用的模型名
+     * @param defaultBudget 未单独配置的模型使用的历史消息token预算
+     * @param modelBudgets 模型名 -> 历史消息token预算
+     * @param summarizer 会话摘要，为null表示不做摘要
+     */
+    public TokenBudgetChatMemoryAdvisor(ChatMemory chatMemory, String defaultModel, int defaultBudget,
+                                        Map<String, Integer> modelBudgets, ConversationSummarizer summarizer) {
+        super(chatMemory);
+        this.defaultModel = defaultModel;
+        this.defaultBudget = defaultBudget;
+        this.modelBudgets = Map.copyOf(modelBudgets);
+        this.summarizer = summarizer;
+    }
+
+    @Override
+    public AdvisedResponse aroundCall(AdvisedRequest advisedRequest, CallAroundAdvisorChain chain) {
+        AdvisedResponse advisedResponse = chain.nextAroundCall(before(advisedRequest));
+        observeAfter(advisedResponse);
+        return advisedResponse;
+    }
+
+    @Override
+    public Flux<AdvisedResponse> aroundStream(AdvisedRequest advisedRequest, StreamAroundAdvisorChain chain) {
+        Flux<AdvisedResponse> advisedResponses = doNextWithProtectFromBlockingBefore(advisedRequest, chain, this::before);
+        return new MessageAggregator().aggregateAdvisedResponse(advisedResponses, this::observeAfter);
+    }
+
+    /**
+     * 本次请求使用的模型的历史消息预算
+     */
+    int budgetFor(AdvisedRequest advisedRequest) {
+        String model = advisedRequest.chatOptions() != null && advisedRequest.chatOptions().getModel() != null
+                ? advisedRequest.chatOptions().getModel() : defaultModel;
+        return model == null ? defaultBudget : modelBudgets.getOrDefault(model, defaultBudget);
+    }
+
+    private AdvisedRequest before(AdvisedRequest advisedRequest) {
+        String conversationId = doGetConversationId(advisedRequest.adviseContext());
+        int retrieveSize = doGetChatMemoryRetrieveSize(advisedRequest.adviseContext());
+
+        // 1.读取历史，已被摘要覆盖的消息以摘要代替
+        int budget = budgetFor(advisedRequest);
+        Message summaryMessage = null;
+        ConversationSummarizer.ConversationSummary summary = summarizer == null ? null : summarizer.getSummary(conversationId);
+        if (summary != null && getChatMemoryStore() instanceof PageableChatMemory pageable) {
+            int unsummarized = pageable.count(conversationId) - summary.coveredMessages();
+            retrieveSize = Math.max(0, Math.min(retrieveSize, unsummarized));
+            summaryMessage = summary.toMessage();
+            budget = Math.max(0, budget - countTokens(summaryMessage));
+        }
+        List<Message> memoryMessages = retrieveSize == 0 ? List.of() : getChatMemoryStore().get(conversationId, retrieveSize);
+
+        // 2.按预算截取
+        List<Message> fitted = fit(memoryMessages, budget);
+        if (fitted.size() < memoryMessages.size()) {
+            log.debug("历史消息超出token预算，已截掉较早的消息: conversationId={}, total={}, kept={}",
+                    conversationId, memoryMessages.size(), fitted.size());
+        }
+        List<Message> advisedMessages = new ArrayList<>(advisedRequest.messages());
+        if (summaryMessage != null) {
+            advisedMessages.add(summaryMessage);
+        }
+        advisedMessages.addAll(fitted);
+        advisedRequest = AdvisedRequest.from(advisedRequest).messages(advisedMessages).build();
+
+        // 3.保存本次的用户消息
+        getChatMemoryStore().add(conversationId, new UserMessage(advisedRequest.userText(), advisedRequest.media()));
+        return advisedRequest;
+    }
+
+    private void observeAfter(AdvisedResponse advisedResponse) {
+        List<Message> assistantMessages = advisedResponse.response().getResults().stream()
+                .map(generation -> (Message) generation.getOutput())
+                .toList();
+        String conversationId = doGetConversationId(advisedResponse.adviseContext());
+        getChatMemoryStore().add(conversationId, assistantMessages);
+        // 没有传会话ID的请求都落在默认会话中，互不相关，不做摘要
+        if (summarizer != null && !DEFAULT_CHAT_MEMORY_CONVERSATION_ID.equals(conversationId)) {
+            summarizer.onMessagesAdded(conversationId);
+        }
+    }
+
+    /**
+     * 从最新的消息往前保留不超过预算的部分，保留部分从用户消息开始
+     */
+    static List<Message> fit(List<Message> messages, int budget) {
+        int tokens = 0;
+        int start = messages.size();
+        for (int i = messages.size() - 1; i >= 0; i--) {
+            tokens += countTokens(messages.get(i));
+            if (tokens > budget) {
+                break;
+            }
+            start = i;
+        }
+        // 不从回答中间开始，跳过开头不完整的一轮
+        while (start < messages.size() && messages.get(start).getMessageType() != MessageType.USER) {
+            start++;
+        }
+        return start == 0 ? messages : messages.subList(start, messages.size());
+    }
+
+    static int countTokens(Message message) {
+        return MESSAGE_OVERHEAD_TOKENS + (message.getText() == null ? 0 : TokenChunker.countTokens(message.getText()));
+    }
+}
@@ -40,6 +40,8 @@ import org.springframework.retry.support.RetryTemplate;
 import org.springframework.util.*;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
 
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
@@ -80,6 +82,12 @@ public class AlibabaOpenAiChatModel extends AbstractToolCallSupport implements C
      */
     private ChatModelObservationConvention observationConvention = DEFAULT_OBSERVATION_CONVENTION;
 
+    /**
+     * Scheduler used to run blocking tool calls of streaming requests, so that they do
+     * not block the HTTP client's event loop.
+     */
+    private Scheduler toolExecutionScheduler = Schedulers.boundedElastic();
+
     /**
      * Creates an instance of the AlibabaOpenAiChatModel.
      * @param openAiApi The OpenAiApi instance to be used for interacting with the OpenAI
@@ -374,17 +382,21 @@ public class AlibabaOpenAiChatModel extends AbstractToolCallSupport implements C
             Flux<ChatResponse> flux = chatResponse.flatMap(response -> {
 
                         if (ToolCallingChatOptions.isInternalToolExecutionEnabled(prompt.getOptions()) && response.hasToolCalls()) {
-                            var toolExecutionResult = this.toolCallingManager.executeToolCalls(prompt, response);
-                            if (toolExecutionResult.returnDirect()) {
-                                // Return tool execution result directly to the client.
-                                return Flux.just(ChatResponse.builder().from(response)
-                                        .generations(ToolExecutionResult.buildGenerations(toolExecutionResult))
-                                        .build());
-                            } else {
-                                // Send the tool execution result back to the model.
-                                return this.internalStream(new Prompt(toolExecutionResult.conversationHistory(), prompt.getOptions()),
-                                        response);
-                            }
+                            // Tools may block (e.g. database queries), run them off the event loop.
+                            return Mono.fromCallable(() -> this.toolCallingManager.executeToolCalls(prompt, response))
+                                    .subscribeOn(this.toolExecutionScheduler)
+                                    .flatMapMany(toolExecutionResult -> {
+                                        if (toolExecutionResult.returnDirect()) {
+                                            // Return tool execution result directly to the client.
+                                            return Flux.just(ChatResponse.builder().from(response)
+                                                    .generations(ToolExecutionResult.buildGenerations(toolExecutionResult))
+                                                    .build());
+                                        } else {
+                                            // Send the tool execution result back to the model.
+                                            return this.internalStream(new Prompt(toolExecutionResult.conversationHistory(), prompt.getOptions()),
+                                                    response);
+                                        }
+                                    });
                         }
                         else {
                             return Flux.just(response);
@@ -696,6 +708,15 @@ public class AlibabaOpenAiChatModel extends AbstractToolCallSupport implements C
         this.observationConvention = observationConvention;
     }
 
+    /**
+     * Use the provided scheduler to run tool calls of streaming requests.
+     * @param toolExecutionScheduler the scheduler, e.g. one backed by virtual threads
+     */
+    public void setToolExecutionScheduler(Scheduler toolExecutionScheduler) {
+        Assert.notNull(toolExecutionScheduler, "toolExecutionScheduler cannot be null");
+        this.toolExecutionScheduler = toolExecutionScheduler;
+    }
+
     public static Builder builder() {
         return new Builder();
     }
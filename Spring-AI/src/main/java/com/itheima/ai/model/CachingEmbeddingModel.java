@@ -0,0 +1,201 @@
+package com.itheima.ai.model;
+
+import com.itheima.ai.util.LruCache;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.document.MetadataMode;
+import org.springframework.ai.embedding.Embedding;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.ai.embedding.EmbeddingOptions;
+import org.springframework.ai.embedding.EmbeddingRequest;
+import org.springframework.ai.embedding.EmbeddingResponse;
+import org.springframework.ai.embedding.EmbeddingResponseMetadata;
+import org.springframework.util.Assert;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.List;
+
+/**
+ * 带缓存的向量模型装饰器
+ * <p>
+ * 缓存键为 模型名:维度:文本的SHA-256，命中的文本不再调用远程接口，只把未命中的文本合并为一次请求。
+ * 配置了persistPath时，启动时从磁盘加载缓存，{@link #save()}时写回。
+ */
+@Slf4j
+public class CachingEmbeddingModel implements EmbeddingModel {
+
+    private static final int FILE_MAGIC = 0x454D4243; // "EMBC"
+
+    private final EmbeddingModel delegate;
+    private final String model;
+    private final int dimensions;
+    private final LruCache<String, float[]> cache;
+    private final Path persistPath;
+
+    /**
+     * @param delegate 实际的向量模型
+     * @param model 默认模型名，请求未指定模型时用于缓存键
+     * @param dimensions 默认向量维度，请求未指定维度时用于缓存键
+     * @param maxSize 缓存的最大条目数
+     * @param ttl 条目写入后的存活时间，为null表示不过期
+     * @param persistPath 缓存文件，为null表示不持久化
+     */
+    public CachingEmbeddingModel(EmbeddingModel delegate, String model, int dimensions,
+                                 int maxSize, Duration ttl, Path persistPath) {
+        Assert.notNull(delegate, "delegate cannot be null");
+        Assert.hasText(model, "model cannot be empty");
+        this.delegate = delegate;
+        this.model = model;
+        this.dimensions = dimensions;
+        this.cache = new LruCache<>(maxSize, ttl);
+        this.persistPath = persistPath;
+        if (persistPath != null) {
+            load();
+        }
+    }
+
+    @Override
+    public EmbeddingResponse call(EmbeddingRequest request) {
+        List<String> texts = request.getInstructions();
+        String prefix = keyPrefix(request.getOptions());
+        List<String> keys = new ArrayList<>(texts.size());
+        float[][] vectors = new float[texts.size()][];
+        List<String> missingTexts = new ArrayList<>();
+        List<Integer> missingIndexes = new ArrayList<>();
+        for (int i = 0; i < texts.size(); i++) {
+            String key = prefix + sha256(texts.get(i));
+            keys.add(key);
+            vectors[i] = cache.get(key);
+            if (vectors[i] == null) {
+                missingTexts.add(texts.get(i));
+                missingIndexes.add(i);
+            }
+        }
+
+        // 只为未命中的文本调用远程接口
+        EmbeddingResponseMetadata metadata = new EmbeddingResponseMetadata();
+        if (!missingTexts.isEmpty()) {
+            EmbeddingResponse response = delegate.call(new EmbeddingRequest(missingTexts, request.getOptions()));
+            List<Embedding> results = response.getResults();
+            for (int i = 0; i < results.size(); i++) {
+                int index = missingIndexes.get(results.get(i).getIndex());
+                vectors[index] = results.get(i).getOutput();
+                cache.put(keys.get(index), vectors[index]);
+            }
+            metadata = response.getMetadata();
+        }
+        log.debug("向量缓存: total={}, hits={}, misses={}", texts.size(), texts.size() - missingTexts.size(), missingTexts.size());
+
+        List<Embedding> embeddings = new ArrayList<>(texts.size());
+        for (int i = 0; i < vectors.length; i++) {
+            embeddings.add(new Embedding(vectors[i], i));
+        }
+        return new EmbeddingResponse(embeddings, metadata);
+    }
+
+    @Override
+    public float[] embed(Document document) {
+        return embed(document.getFormattedContent(MetadataMode.EMBED));
+    }
+
+    @Override
+    public int dimensions() {
+        return dimensions;
+    }
+
+    public LruCache<String, float[]> getCache() {
+        return cache;
+    }
+
+    /**
+     * 把缓存写入磁盘，先写临时文件再替换
+     */
+    public void save() {
+        if (persistPath == null) {
+            return;
+        }
+        Path temp = persistPath.resolveSibling(persistPath.getFileName() + ".tmp");
+        int[] count = new int[1];
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+            out.writeInt(FILE_MAGIC);
+            cache.forEach((key, vector, createdAt) -> {
+                try {
+                    out.writeBoolean(true);
+                    out.writeUTF(key);
+                    out.writeLong(createdAt);
+                    out.writeInt(vector.length);
+                    for (float v : vector) {
+                        out.writeFloat(v);
+                    }
+                    count[0]++;
+                } catch (IOException e) {
+                    throw new RuntimeException(e);
+                }
+            });
+            out.writeBoolean(false);
+        } catch (IOException | RuntimeException e) {
+            log.error("向量缓存保存失败: path={}", persistPath, e);
+            return;
+        }
+        try {
+            Files.move(temp, persistPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            log.info("向量缓存已保存: path={}, size={}", persistPath, count[0]);
+        } catch (IOException e) {
+            log.error("向量缓存保存失败: path={}", persistPath, e);
+        }
+    }
+
+    private void load() {
+        if (!Files.exists(persistPath)) {
+            return;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(persistPath)))) {
+            if (in.readInt() != FILE_MAGIC) {
+                log.warn("向量缓存文件格式不正确，已忽略: path={}", persistPath);
+                return;
+            }
+            // 文件中按从旧到新的访问顺序保存，依次写入即可恢复LRU顺序
+            while (in.readBoolean()) {
+                String key = in.readUTF();
+                long createdAt = in.readLong();
+                float[] vector = new float[in.readInt()];
+                for (int i = 0; i < vector.length; i++) {
+                    vector[i] = in.readFloat();
+                }
+                cache.put(key, vector, createdAt);
+            }
+            log.info("向量缓存已加载: path={}, size={}", persistPath, cache.size());
+        } catch (IOException e) {
+            // 缓存文件损坏不影响启动，已读入的条目仍然有效
+            log.warn("向量缓存加载失败: path={}", persistPath, e);
+        }
+    }
+
+    private String keyPrefix(EmbeddingOptions options) {
+        String requestModel = options != null && options.getModel() != null ? options.getModel() : model;
+        Integer requestDimensions = options != null && options.getDimensions() != null ? options.getDimensions() : dimensions;
+        return requestModel + ":" + requestDimensions + ":";
+    }
+
+    private static String sha256(String text) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(digest.digest(text.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
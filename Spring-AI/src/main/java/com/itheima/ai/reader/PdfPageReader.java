@@ -0,0 +1,89 @@
+package com.itheima.ai.reader;
+
+import org.apache.pdfbox.Loader;
+import org.apache.pdfbox.io.RandomAccessReadBuffer;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.common.PDRectangle;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.reader.ExtractedTextFormatter;
+import org.springframework.ai.reader.pdf.PagePdfDocumentReader;
+import org.springframework.ai.reader.pdf.layout.PDFLayoutTextStripperByArea;
+import org.springframework.core.io.Resource;
+import org.springframework.util.StringUtils;
+
+import java.awt.Rectangle;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * 逐页读取PDF
+ * <p>
+ * 文本提取方式与{@link PagePdfDocumentReader}每页一个Document时一致，
+ * 但按需提取单页，调用方可以边读边处理，不必等整份PDF读完。
+ * 本类不是线程安全的。
+ */
+public class PdfPageReader implements Closeable {
+
+    private static final String PAGE_REGION = "pdfPageRegion";
+
+    private final PDDocument document;
+    private final String fileName;
+    private final ExtractedTextFormatter formatter;
+
+    public PdfPageReader(Resource resource, ExtractedTextFormatter formatter) throws IOException {
+        // 本地文件直接随机读取，避免整份读入内存
+        if (resource.isFile()) {
+            this.document = Loader.loadPDF(resource.getFile());
+        } else {
+            try (InputStream in = resource.getInputStream()) {
+                this.document = Loader.loadPDF(new RandomAccessReadBuffer(in));
+            }
+        }
+        this.fileName = resource.getFilename();
+        this.formatter = formatter;
+    }
+
+    public int getPageCount() {
+        return document.getNumberOfPages();
+    }
+
+    /**
+     * 读取一页
+     * @param pageNumber 页码，从1开始
+     * @return 页面文本，空白页返回null
+     */
+    public Document readPage(int pageNumber) throws IOException {
+        PDPage page = document.getPage(pageNumber - 1);
+        PDRectangle mediaBox = page.getMediaBox();
+        PDFLayoutTextStripperByArea stripper = new PDFLayoutTextStripperByArea();
+        stripper.addRegion(PAGE_REGION, new Rectangle((int) mediaBox.getLowerLeftX(), (int) mediaBox.getLowerLeftY(),
+                (int) mediaBox.getWidth(), (int) mediaBox.getHeight()));
+        stripper.extractRegions(page);
+        String text = stripper.getTextForRegion(PAGE_REGION);
+        if (!StringUtils.hasText(text)) {
+            return null;
+        }
+        Map<String, Object> metadata = new HashMap<>();
+        metadata.put(PagePdfDocumentReader.METADATA_START_PAGE_NUMBER, pageNumber);
+        metadata.put(PagePdfDocumentReader.METADATA_FILE_NAME, fileName);
+        return new Document(pageId(fileName, pageNumber), formatter.format(text, pageNumber), metadata);
+    }
+
+    /**
+     * 由文件名和页码生成固定的文档ID，同一文件重复写入向量库时覆盖而不是追加
+     */
+    public static String pageId(String fileName, int pageNumber) {
+        return UUID.nameUUIDFromBytes((fileName + "#" + pageNumber).getBytes(StandardCharsets.UTF_8)).toString();
+    }
+
+    @Override
+    public void close() throws IOException {
+        document.close();
+    }
+}
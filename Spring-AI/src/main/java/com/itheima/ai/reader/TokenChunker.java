@@ -0,0 +1,279 @@
+package com.itheima.ai.reader;
+
+import com.knuddels.jtokkit.Encodings;
+import com.knuddels.jtokkit.api.Encoding;
+import com.knuddels.jtokkit.api.EncodingType;
+import com.knuddels.jtokkit.api.IntArrayList;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.reader.pdf.PagePdfDocumentReader;
+import org.springframework.util.Assert;
+import org.springframework.util.StringUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.regex.Pattern;
+
+/**
+ * 按token数切分文档
+ * <p>
+ * 优先在段落边界切分，段落过长时依次退到行、句子，最后按token硬切；
+ * 相邻片段之间保留不超过overlapTokens的重叠。片段可以跨页，内容很少的页会与后续页合并。
+ * 本类线程安全，切分状态保存在{@link Session}中。
+ */
+public class TokenChunker {
+
+    public static final String METADATA_CHUNK_INDEX = "chunk_index";
+    public static final String METADATA_END_PAGE_NUMBER = "end_page_number";
+
+    private static final Encoding ENCODING = Encodings.newLazyEncodingRegistry().getEncoding(EncodingType.CL100K_BASE);
+
+    // 依次尝试的切分位置：段落、行、句子
+    private static final Pattern[] SEPARATORS = {
+            Pattern.compile("\\n\\s*\\n"),
+            Pattern.compile("\\n"),
+            Pattern.compile("(?<=[。！？；.!?;])\\s*")
+    };
+
+    private final int chunkTokens;
+    private final int overlapTokens;
+
+    /**
+     * @param chunkTokens 每个片段的最大token数
+     * @param overlapTokens 相邻片段的最大重叠token数，需小于chunkTokens
+     */
+    public TokenChunker(int chunkTokens, int overlapTokens) {
+        Assert.isTrue(chunkTokens > 0, "chunkTokens must be positive");
+        Assert.isTrue(overlapTokens >= 0 && overlapTokens < chunkTokens, "overlapTokens must be in [0, chunkTokens)");
+        this.chunkTokens = chunkTokens;
+        this.overlapTokens = overlapTokens;
+    }
+
+    /**
+     * 开始切分一个文件
+     * @param fileName 文件名，用于生成固定的片段ID
+     */
+    public Session newSession(String fileName) {
+        return new Session(fileName);
+    }
+
+    /**
+     * 切分一组文档，同一文件的所有页应在同一次调用中传入
+     */
+    public List<Document> split(String fileName, List<Document> pages) {
+        Session session = newSession(fileName);
+        List<Document> chunks = new ArrayList<>();
+        for (Document page : pages) {
+            chunks.addAll(session.accept(page));
+        }
+        chunks.addAll(session.finish());
+        return chunks;
+    }
+
+    public static int countTokens(String text) {
+        return ENCODING.countTokens(text);
+    }
+
+    /**
+     * 由文件名和片段序号生成固定的片段ID，同一文件重复写入向量库时覆盖而不是追加
+     */
+    public static String chunkId(String fileName, int chunkIndex) {
+        return UUID.nameUUIDFromBytes((fileName + "#chunk-" + chunkIndex).getBytes(StandardCharsets.UTF_8)).toString();
+    }
+
+    /**
+     * 一个文件的切分状态，按页依次调用{@link #accept}，最后调用{@link #finish}。本类不是线程安全的。
+     */
+    public class Session {
+
+        private final String fileName;
+        // 尚未输出的文本单元，开头的overlapUnits个是上一片段的重叠部分
+        private final LinkedList<Unit> pending = new LinkedList<>();
+        private int pendingTokens;
+        private int overlapUnits;
+        private int chunkIndex;
+
+        private Session(String fileName) {
+            this.fileName = fileName;
+        }
+
+        /**
+         * 加入一页
+         * @return 已凑满的片段
+         */
+        public List<Document> accept(Document page) {
+            Object pageNumber = page.getMetadata().get(PagePdfDocumentReader.METADATA_START_PAGE_NUMBER);
+            for (String text : splitUnits(page.getText(), 0)) {
+                Unit unit = new Unit(text, countTokens(text), pageNumber, page.getMetadata());
+                pending.add(unit);
+                pendingTokens += unit.tokens;
+            }
+            List<Document> chunks = new ArrayList<>();
+            while (pendingTokens > chunkTokens && pending.size() > overlapUnits) {
+                chunks.add(emit());
+            }
+            return chunks;
+        }
+
+        /**
+         * 输出剩余内容
+         */
+        public List<Document> finish() {
+            List<Document> chunks = new ArrayList<>();
+            while (pending.size() > overlapUnits) {
+                chunks.add(emit());
+            }
+            pending.clear();
+            pendingTokens = 0;
+            overlapUnits = 0;
+            return chunks;
+        }
+
+        private Document emit() {
+            // 1.重叠部分加上第一个新单元会超出上限时，从前面丢弃重叠单元，保证每个片段至少包含一个新单元
+            Unit firstNew = pending.get(overlapUnits);
+            while (overlapUnits > 0 && pendingTokens(overlapUnits) + firstNew.tokens > chunkTokens) {
+                pendingTokens -= pending.removeFirst().tokens;
+                overlapUnits--;
+            }
+            // 2.取不超过上限的单元组成片段
+            List<Unit> taken = new ArrayList<>();
+            int tokens = 0;
+            for (Unit unit : pending) {
+                if (!taken.isEmpty() && tokens + unit.tokens > chunkTokens) {
+                    break;
+                }
+                taken.add(unit);
+                tokens += unit.tokens;
+            }
+            for (int i = 0; i < taken.size(); i++) {
+                pendingTokens -= pending.removeFirst().tokens;
+            }
+            // 3.片段末尾的若干单元留作下一片段的重叠
+            overlapUnits = 0;
+            int overlap = 0;
+            for (int i = taken.size() - 1; i > 0; i--) {
+                Unit unit = taken.get(i);
+                if (overlap + unit.tokens > overlapTokens) {
+                    break;
+                }
+                pending.addFirst(unit);
+                pendingTokens += unit.tokens;
+                overlap += unit.tokens;
+                overlapUnits++;
+            }
+            return toDocument(taken);
+        }
+
+        private int pendingTokens(int units) {
+            int tokens = 0;
+            for (int i = 0; i < units; i++) {
+                tokens += pending.get(i).tokens;
+            }
+            return tokens;
+        }
+
+        private Document toDocument(List<Unit> units) {
+            Unit first = units.get(0);
+            Unit last = units.get(units.size() - 1);
+            StringBuilder text = new StringBuilder();
+            for (Unit unit : units) {
+                if (!text.isEmpty()) {
+                    text.append("\n\n");
+                }
+                text.append(unit.text);
+            }
+            Map<String, Object> metadata = new HashMap<>(first.metadata);
+            metadata.put(PagePdfDocumentReader.METADATA_START_PAGE_NUMBER, first.pageNumber);
+            if (last.pageNumber != null && !last.pageNumber.equals(first.pageNumber)) {
+                metadata.put(METADATA_END_PAGE_NUMBER, last.pageNumber);
+            }
+            metadata.put(METADATA_CHUNK_INDEX, chunkIndex);
+            return new Document(chunkId(fileName, chunkIndex++), text.toString(), metadata);
+        }
+    }
+
+    /**
+     * 把文本切成段落，过长的段落再切成不超过chunkTokens的单元
+     */
+    private List<String> splitUnits(String text, int level) {
+        List<String> units = new ArrayList<>();
+        if (!StringUtils.hasText(text)) {
+            return units;
+        }
+        String trimmed = text.strip();
+        // 段落总是单独成为一个单元，更细的切分只用于过长的段落
+        if (level > 0 && countTokens(trimmed) <= chunkTokens) {
+            units.add(trimmed);
+            return units;
+        }
+        if (level == SEPARATORS.length) {
+            units.addAll(splitByTokens(trimmed));
+            return units;
+        }
+        List<String> parts = new ArrayList<>();
+        for (String part : SEPARATORS[level].split(trimmed)) {
+            if (StringUtils.hasText(part)) {
+                parts.add(part);
+            }
+        }
+        if (parts.size() <= 1) {
+            return splitUnits(trimmed, level + 1);
+        }
+        for (String part : parts) {
+            units.addAll(splitUnits(part, level + 1));
+        }
+        return units;
+    }
+
+    /**
+     * 按token数硬切。cl100k会把一个汉字拆到多个token中，切点只取在UTF-8字符边界上，避免片段中出现U+FFFD
+     */
+    private List<String> splitByTokens(String text) {
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        IntArrayList tokens = ENCODING.encode(text);
+        // 每个token结束处的字节偏移
+        int[] tokenEnds = new int[tokens.size()];
+        int offset = 0;
+        IntArrayList single = new IntArrayList(1);
+        for (int i = 0; i < tokens.size(); i++) {
+            single.clear();
+            single.add(tokens.get(i));
+            offset += ENCODING.decodeBytes(single).length;
+            tokenEnds[i] = offset;
+        }
+        List<String> parts = new ArrayList<>();
+        int start = 0;
+        int startByte = 0;
+        while (start < tokens.size()) {
+            int end = Math.min(start + chunkTokens, tokens.size());
+            // 退回到字符边界；一个token内没有字符边界时向后多取
+            while (end > start + 1 && !isCharBoundary(bytes, tokenEnds[end - 1])) {
+                end--;
+            }
+            while (end < tokens.size() && !isCharBoundary(bytes, tokenEnds[end - 1])) {
+                end++;
+            }
+            int endByte = tokenEnds[end - 1];
+            String part = new String(bytes, startByte, endByte - startByte, StandardCharsets.UTF_8).strip();
+            if (!part.isEmpty()) {
+                parts.add(part);
+            }
+            start = end;
+            startByte = endByte;
+        }
+        return parts;
+    }
+
+    private static boolean isCharBoundary(byte[] bytes, int offset) {
+        // UTF-8的后续字节形如10xxxxxx
+        return offset >= bytes.length || (bytes[offset] & 0xC0) != 0x80;
+    }
+
+    private record Unit(String text, int tokens, Object pageNumber, Map<String, Object> metadata) {
+    }
+}
@@ -5,7 +5,7 @@ import java.util.List;
 
 public interface ChatHistoryRepository {
     /**
-     * 保存会话记录
+     * 保存会话记录，已存在的会话只更新最近活跃时间
      * @param type 业务类型 如：chat.service、pdf
      * @param chatId 会话ID
      */
@@ -14,7 +14,21 @@ public interface ChatHistoryRepository {
     /**
      * 获取会话ID列表
      * @param type 业务类型 如：chat.service、pdf
-     * @return 会话ID列表
+     * @return 会话ID列表，按创建顺序排列
      */
     List<String> getChatIds(String type);
+
+    /**
+     * 获取最近活跃的会话ID
+     * @param type 业务类型 如：chat.service、pdf
+     * @param limit 最多返回的数量
+     * @return 会话ID列表，最近活跃的排在前面
+     */
+    List<String> getRecentChatIds(String type, int limit);
+
+    /**
+     * 获取会话数
+     * @param type 业务类型 如：chat.service、pdf
+     */
+    int count(String type);
 }
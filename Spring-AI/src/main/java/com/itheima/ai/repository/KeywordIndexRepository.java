@@ -0,0 +1,25 @@
+package com.itheima.ai.repository;
+
+import com.itheima.ai.util.KeywordIndex;
+
+public interface KeywordIndexRepository {
+    /**
+     * 保存文件的关键词索引，已存在时覆盖
+     * @param fileName PDF文件名，与向量库中的file_name一致
+     * @param index 关键词索引
+     */
+    void save(String fileName, KeywordIndex index);
+
+    /**
+     * 获取文件的关键词索引
+     * @param fileName PDF文件名
+     * @return 关键词索引，不存在时返回null
+     */
+    KeywordIndex get(String fileName);
+
+    /**
+     * 文件是否已有关键词索引
+     * @param fileName PDF文件名
+     */
+    boolean contains(String fileName);
+}
@@ -0,0 +1,255 @@
+package com.itheima.ai.repository;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 会话记录，保存在本地文件中
+ * <p>
+ * 每行记录为：业务类型、会话ID、最近活跃时间(毫秒)，以制表符分隔。
+ * 新会话追加到文件末尾，活跃时间的变化只在内存中更新，定时和关闭时整体重写文件。
+ */
+@Slf4j
+@Component
+public class LocalChatHistoryRepository implements ChatHistoryRepository {
+
+    private static final String HISTORY_FILE = "chat-history.tsv";
+
+    private final Path file;
+
+    // 业务类型 -> 会话索引
+    private final Map<String, ChatIndex> chatHistory = new ConcurrentHashMap<>();
+
+    // 是否有尚未写入文件的活跃时间变化
+    private final AtomicBoolean dirty = new AtomicBoolean();
+
+    public LocalChatHistoryRepository() {
+        this(Path.of(HISTORY_FILE));
+    }
+
+    LocalChatHistoryRepository(Path file) {
+        this.file = file;
+    }
+
+    @Override
+    public void save(String type, String chatId) {
+        long now = System.currentTimeMillis();
+        ChatIndex index = chatHistory.computeIfAbsent(type, k -> new ChatIndex());
+        if (index.touch(chatId, now)) {
+            append(type, chatId, now);
+        } else {
+            dirty.set(true);
+        }
+    }
+
+    @Override
+    public List<String> getChatIds(String type) {
+        ChatIndex index = chatHistory.get(type);
+        return index == null ? List.of() : index.chatIds();
+    }
+
+    @Override
+    public List<String> getRecentChatIds(String type, int limit) {
+        ChatIndex index = chatHistory.get(type);
+        return index == null ? List.of() : index.recent(limit);
+    }
+
+    @Override
+    public int count(String type) {
+        ChatIndex index = chatHistory.get(type);
+        return index == null ? 0 : index.size();
+    }
+
+    @PostConstruct
+    void init() {
+        if (!Files.exists(file)) {
+            return;
+        }
+        // 业务类型 -> (会话ID -> 最近活跃时间)，按首次出现的顺序
+        Map<String, LinkedHashMap<String, Long>> loaded = new HashMap<>();
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] fields = line.split("\t");
+                if (fields.length != 3) {
+                    // 写入中途崩溃留下的不完整行
+                    continue;
+                }
+                loaded.computeIfAbsent(fields[0], k -> new LinkedHashMap<>())
+                        .merge(fields[1], Long.parseLong(fields[2]), Math::max);
+            }
+        } catch (IOException | NumberFormatException e) {
+            throw new RuntimeException("加载会话记录失败", e);
+        }
+        loaded.forEach((type, chats) -> chatHistory.put(type, ChatIndex.load(chats)));
+        log.info("会话记录已加载: types={}, chats={}", loaded.size(),
+                loaded.values().stream().mapToInt(Map::size).sum());
+    }
+
+    /**
+     * 把活跃时间的变化写入文件，同时去掉重复的记录
+     */
+    @Scheduled(fixedDelay = 300_000)
+    @PreDestroy
+    public void compact() {
+        if (!dirty.getAndSet(false)) {
+            return;
+        }
+        synchronized (this) {
+            Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+            try {
+                try (BufferedWriter writer = Files.newBufferedWriter(temp, StandardCharsets.UTF_8)) {
+                    for (Map.Entry<String, ChatIndex> entry : chatHistory.entrySet()) {
+                        for (Map.Entry<String, Long> chat : entry.getValue().snapshot().entrySet()) {
+                            writer.write(line(entry.getKey(), chat.getKey(), chat.getValue()));
+                        }
+                    }
+                }
+                Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (IOException e) {
+                dirty.set(true);
+                log.error("保存会话记录失败", e);
+            }
+        }
+    }
+
+    private synchronized void append(String type, String chatId, long time) {
+        try (BufferedWriter writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+            writer.write(line(type, chatId, time));
+        } catch (IOException e) {
+            // 追加失败时等下次合并整体重写
+            dirty.set(true);
+            log.error("保存会话记录失败: type={}, chatId={}", type, chatId, e);
+        }
+    }
+
+    private static String line(String type, String chatId, long time) {
+        return type + "\t" + chatId + "\t" + time + "\n";
+    }
+
+    /**
+     * 一个业务类型下的会话，按创建顺序和最近活跃顺序两种方式索引
+     */
+    private static final class ChatIndex {
+        // 按创建顺序排列
+        private final List<String> chatIds = new ArrayList<>();
+        // 会话ID -> 活跃链表节点，链表头为最近活跃的会话
+        private final Map<String, Node> nodes = new HashMap<>();
+        private Node head;
+
+        static ChatIndex load(LinkedHashMap<String, Long> chats) {
+            ChatIndex index = new ChatIndex();
+            index.chatIds.addAll(chats.keySet());
+            // 从最久未活跃的开始插入链表头，最后插入的最近活跃
+            chats.entrySet().stream()
+                    .sorted(Map.Entry.comparingByValue(Comparator.naturalOrder()))
+                    .forEach(e -> {
+                        Node node = new Node(e.getKey(), e.getValue());
+                        index.nodes.put(node.chatId, node);
+                        index.linkFirst(node);
+                    });
+            return index;
+        }
+
+        /**
+         * 更新会话的活跃时间
+         * @return 是否为新会话
+         */
+        synchronized boolean touch(String chatId, long time) {
+            Node node = nodes.get(chatId);
+            boolean created = node == null;
+            if (created) {
+                node = new Node(chatId, time);
+                nodes.put(chatId, node);
+                chatIds.add(chatId);
+            } else {
+                node.lastActive = time;
+                unlink(node);
+            }
+            linkFirst(node);
+            return created;
+        }
+
+        synchronized List<String> chatIds() {
+            return List.copyOf(chatIds);
+        }
+
+        synchronized List<String> recent(int limit) {
+            List<String> result = new ArrayList<>(Math.min(Math.max(limit, 0), nodes.size()));
+            for (Node node = head; node != null && result.size() < limit; node = node.next) {
+                result.add(node.chatId);
+            }
+            return result;
+        }
+
+        synchronized int size() {
+            return chatIds.size();
+        }
+
+        /**
+         * 按创建顺序返回会话ID和活跃时间
+         */
+        synchronized LinkedHashMap<String, Long> snapshot() {
+            LinkedHashMap<String, Long> snapshot = new LinkedHashMap<>();
+            for (String chatId : chatIds) {
+                snapshot.put(chatId, nodes.get(chatId).lastActive);
+            }
+            return snapshot;
+        }
+
+        private void linkFirst(Node node) {
+            node.prev = null;
+            node.next = head;
+            if (head != null) {
+                head.prev = node;
+            }
+            head = node;
+        }
+
+        private void unlink(Node node) {
+            if (node.prev != null) {
+                node.prev.next = node.next;
+            } else {
+                head = node.next;
+            }
+            if (node.next != null) {
+                node.next.prev = node.prev;
+            }
+            node.prev = null;
+            node.next = null;
+        }
+    }
+
+    private static final class Node {
+        final String chatId;
+        long lastActive;
+        Node prev;
+        Node next;
+
+        Node(String chatId, long lastActive) {
+            this.chatId = chatId;
+            this.lastActive = lastActive;
+        }
+    }
+}
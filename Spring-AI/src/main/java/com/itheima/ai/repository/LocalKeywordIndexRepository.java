@@ -0,0 +1,102 @@
+package com.itheima.ai.repository;
+
+import com.itheima.ai.util.KeywordIndex;
+import com.itheima.ai.util.LruCache;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * 关键词索引，保存在本地目录中
+ * <p>
+ * 每个文件一个索引文件，文件名由PDF文件名生成，每行记录为：词、出现次数，以制表符分隔。
+ * 最近使用的索引缓存在内存中。
+ */
+@Slf4j
+@Component
+public class LocalKeywordIndexRepository implements KeywordIndexRepository {
+
+    private static final String INDEX_DIR = "keyword-index";
+
+    // 内存中缓存的最大索引数
+    private static final int MAX_CACHED_INDEXES = 50;
+
+    private final Path dir;
+
+    private final LruCache<String, KeywordIndex> cache = new LruCache<>(MAX_CACHED_INDEXES, null);
+
+    public LocalKeywordIndexRepository() {
+        this(Path.of(INDEX_DIR));
+    }
+
+    LocalKeywordIndexRepository(Path dir) {
+        this.dir = dir;
+    }
+
+    @Override
+    public void save(String fileName, KeywordIndex index) {
+        Path file = indexFile(fileName);
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        try {
+            Files.createDirectories(dir);
+            try (BufferedWriter writer = Files.newBufferedWriter(temp, StandardCharsets.UTF_8)) {
+                for (Map.Entry<String, Integer> entry : index.getFrequencies().entrySet()) {
+                    writer.write(entry.getKey() + "\t" + entry.getValue() + "\n");
+                }
+            }
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            throw new RuntimeException("保存关键词索引失败: " + fileName, e);
+        }
+        cache.put(fileName, index);
+        log.info("关键词索引已保存: fileName={}, terms={}", fileName, index.size());
+    }
+
+    @Override
+    public KeywordIndex get(String fileName) {
+        KeywordIndex index = cache.get(fileName);
+        if (index != null) {
+            return index;
+        }
+        Path file = indexFile(fileName);
+        if (!Files.exists(file)) {
+            return null;
+        }
+        Map<String, Integer> frequencies = new HashMap<>();
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                int tab = line.indexOf('\t');
+                if (tab > 0) {
+                    frequencies.put(line.substring(0, tab), Integer.parseInt(line.substring(tab + 1)));
+                }
+            }
+        } catch (IOException | NumberFormatException e) {
+            log.error("加载关键词索引失败: fileName={}", fileName, e);
+            return null;
+        }
+        index = new KeywordIndex(frequencies);
+        cache.put(fileName, index);
+        return index;
+    }
+
+    @Override
+    public boolean contains(String fileName) {
+        return cache.get(fileName) != null || Files.exists(indexFile(fileName));
+    }
+
+    private Path indexFile(String fileName) {
+        // 文件名可能包含路径分隔符等字符，使用其UUID作为索引文件名
+        return dir.resolve(UUID.nameUUIDFromBytes(fileName.getBytes(StandardCharsets.UTF_8)) + ".tsv");
+    }
+}
@@ -1,82 +1,273 @@
 package com.itheima.ai.repository;
  
+import com.itheima.ai.vectorstore.HnswVectorStore;
 import jakarta.annotation.PostConstruct;
 import jakarta.annotation.PreDestroy;
-import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.ai.vectorstore.SimpleVectorStore;
 import org.springframework.ai.vectorstore.VectorStore;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.core.io.FileSystemResource;
 import org.springframework.core.io.Resource;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Component;
 import org.springframework.web.multipart.MultipartFile;
  
 import java.io.*;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.DigestInputStream;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.time.LocalDateTime;
+import java.util.HashSet;
+import java.util.HexFormat;
 import java.util.Objects;
 import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
  
 @Slf4j
 @Component
-@RequiredArgsConstructor
 public class LocalPdfFileRepository implements FileRepository {
  
+    private static final String CHAT_FILES = "chat-pdf.properties";
+    private static final String HASH_FILES = "chat-pdf-hashes.properties";
+
+    // 文件系统路径使用的编码，POSIX locale下为ASCII
+    private static final Charset PATH_CHARSET = pathCharset();
+
     private final VectorStore vectorStore;
+
+    // 映射文件和PDF文件所在的目录
+    private final Path dir;
  
     // 会话id 与 文件名的对应关系，方便查询会话历史时重新加载文件
     private final Properties chatFiles = new Properties();
+
+    // 文件内容的SHA-256 与 文件名的对应关系，相同内容的上传共用一个文件
+    private final Properties hashFiles = new Properties();
+
+    // 上次合并后追加到映射文件的记录数
+    private final AtomicInteger appendedChatFiles = new AtomicInteger();
+
+    @Autowired
+    public LocalPdfFileRepository(VectorStore vectorStore) {
+        this(vectorStore, Path.of(""));
+    }
+
+    LocalPdfFileRepository(VectorStore vectorStore, Path dir) {
+        this.vectorStore = vectorStore;
+        this.dir = dir;
+    }
  
     @Override
     public boolean save(String chatId, Resource resource) {
  
-        // 2.保存到本地磁盘
-        String filename = resource.getFilename();
-        File target = new File(Objects.requireNonNull(filename));
-        if (!target.exists()) {
+        // 1.边复制边计算内容的SHA-256
+        String filename = Objects.requireNonNull(resource.getFilename());
+        Path temp;
+        String hash;
+        try {
+            temp = Files.createTempFile(dir.toAbsolutePath(), "upload-", ".tmp");
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            try (InputStream in = new DigestInputStream(resource.getInputStream(), digest)) {
+                Files.copy(in, temp, StandardCopyOption.REPLACE_EXISTING);
+            }
+            hash = HexFormat.of().formatHex(digest.digest());
+        } catch (IOException | NoSuchAlgorithmException e) {
+            log.error("Failed to save PDF resource.", e);
+            return false;
+        }
+        // 2.相同内容只保存一份，不同会话共用同一个文件及其向量
+        String canonical;
+        try {
+            canonical = storeByHash(hash, filename, temp);
+        } catch (IOException e) {
+            log.error("Failed to save PDF resource.", e);
+            return false;
+        } finally {
             try {
-                Files.copy(resource.getInputStream(), target.toPath());
+                Files.deleteIfExists(temp);
             } catch (IOException e) {
-                log.error("Failed to save PDF resource.", e);
-                return false;
+                log.warn("Failed to delete temp file: {}", temp);
             }
         }
-        // 3.保存映射关系
-        chatFiles.put(chatId, filename);
+        // 3.保存映射关系，并追加到映射文件，避免崩溃后丢失
+        chatFiles.put(chatId, canonical);
+        appendChatFile(chatId, canonical);
         return true;
     }
+
+    /**
+     * 按内容哈希保存文件
+     * @return 实际保存的文件名：内容已存在时为已有文件名；与已有文件重名但内容不同时加上哈希前缀
+     */
+    private synchronized String storeByHash(String hash, String filename, Path temp) throws IOException {
+        String existing = hashFiles.getProperty(hash);
+        // 已有文件名可能是之前在其他编码下保存的，用File判断，不会抛出InvalidPathException
+        if (existing != null && new File(dir.toFile(), existing).exists()) {
+            log.info("PDF内容已存在，复用已有文件: filename={}, existing={}", filename, existing);
+            return existing;
+        }
+        String name = storableName(hash, filename);
+        String canonical = Files.exists(dir.resolve(name)) ? hash.substring(0, 8) + "_" + name : name;
+        Files.move(temp, dir.resolve(canonical), StandardCopyOption.REPLACE_EXISTING);
+        hashFiles.setProperty(hash, canonical);
+        appendProperty(dir.resolve(HASH_FILES), hash, canonical);
+        return canonical;
+    }
  
+    /**
+     * 文件名含有文件系统编码无法表示的字符时，Path.of会抛出InvalidPathException，
+     * 这些字符替换为下划线，并加上哈希前缀避免不同文件名替换后重名
+     */
+    static String storableName(String hash, String filename) {
+        CharsetEncoder encoder = PATH_CHARSET.newEncoder();
+        if (encoder.canEncode(filename)) {
+            return filename;
+        }
+        StringBuilder name = new StringBuilder(hash.substring(0, 8)).append('_');
+        filename.codePoints().forEach(codePoint -> {
+            String c = Character.toString(codePoint);
+            name.append(encoder.canEncode(c) ? c : "_");
+        });
+        return name.toString();
+    }
+
+    private static Charset pathCharset() {
+        try {
+            return Charset.forName(System.getProperty("sun.jnu.encoding"));
+        } catch (RuntimeException e) {
+            return Charset.defaultCharset();
+        }
+    }
+
     @Override
     public Resource getFile(String chatId) {
-        return new FileSystemResource(chatFiles.getProperty(chatId));
+        return new FileSystemResource(dir.resolve(chatFiles.getProperty(chatId)));
     }
  
     @PostConstruct
-    private void init() {
-        FileSystemResource pdfResource = new FileSystemResource("chat-pdf.properties");
-        if (pdfResource.exists()) {
-            try {
-                chatFiles.load(new BufferedReader(new InputStreamReader(pdfResource.getInputStream(), StandardCharsets.UTF_8)));
+    void init() {
+        loadProperties(dir.resolve(CHAT_FILES), chatFiles);
+        loadProperties(dir.resolve(HASH_FILES), hashFiles);
+        indexExistingFiles();
+        // 旧版本以JSON保存向量，首次启动时导入到二进制向量文件
+        HnswVectorStore hnswVectorStore = (HnswVectorStore) vectorStore;
+        FileSystemResource vectorResource = new FileSystemResource(dir.resolve("chat-pdf.json"));
+        if (vectorResource.exists() && hnswVectorStore.size() == 0) {
+            hnswVectorStore.importJson(vectorResource);
+            hnswVectorStore.save();
+        }
+    }
+ 
+    private synchronized void appendChatFile(String chatId, String filename) {
+        try {
+            appendProperty(dir.resolve(CHAT_FILES), chatId, filename);
+            appendedChatFiles.incrementAndGet();
+        } catch (IOException e) {
+            log.error("Failed to append chat file mapping.", e);
+        }
+    }
+
+    /**
+     * 把单条映射追加到properties文件末尾，加载时后出现的同名键会覆盖之前的值
+     */
+    private static void appendProperty(Path file, String key, String value) throws IOException {
+        Properties entry = new Properties();
+        entry.setProperty(key, value);
+        StringWriter writer = new StringWriter();
+        entry.store(writer, null);
+        // 去掉store生成的时间注释行
+        String line = writer.toString().lines()
+                .filter(l -> !l.startsWith("#"))
+                .collect(Collectors.joining(System.lineSeparator(), "", System.lineSeparator()));
+        Files.writeString(file, line, StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+    }
+
+    /**
+     * 定期合并：向量库日志写入主文件，映射文件去掉重复的追加记录
+     */
+    @Scheduled(fixedDelayString = "${ai.vector-store.compaction-interval:5m}",
+            initialDelayString = "${ai.vector-store.compaction-interval:5m}")
+    public void compact() {
+        HnswVectorStore hnswVectorStore = (HnswVectorStore) vectorStore;
+        if (hnswVectorStore.hasUncompactedChanges()) {
+            hnswVectorStore.save();
+        }
+        if (appendedChatFiles.get() > 0) {
+            storeChatFiles();
+        }
+    }
+
+    private static void loadProperties(Path file, Properties properties) {
+        FileSystemResource resource = new FileSystemResource(file);
+        if (resource.exists()) {
+            try (Reader reader = new BufferedReader(new InputStreamReader(resource.getInputStream(), StandardCharsets.UTF_8))) {
+                properties.load(reader);
             } catch (IOException e) {
                 throw new RuntimeException(e);
             }
         }
-        FileSystemResource vectorResource = new FileSystemResource("chat-pdf.json");
-        if (vectorResource.exists()) {
-            SimpleVectorStore simpleVectorStore = (SimpleVectorStore) vectorStore;
-            simpleVectorStore.load(vectorResource);
+    }
+
+    /**
+     * 为引入哈希索引之前上传的文件补充索引
+     */
+    private void indexExistingFiles() {
+        Set<String> indexed = new HashSet<>(hashFiles.stringPropertyNames().stream().map(hashFiles::getProperty).toList());
+        for (String filename : new HashSet<>(chatFiles.stringPropertyNames().stream().map(chatFiles::getProperty).toList())) {
+            // 用File而不是Path，文件名含有当前系统编码无法表示的字符时不会抛出InvalidPathException
+            File file = new File(dir.toFile(), filename);
+            if (indexed.contains(filename) || !file.exists()) {
+                continue;
+            }
+            try (InputStream in = new FileInputStream(file)) {
+                MessageDigest digest = MessageDigest.getInstance("SHA-256");
+                in.transferTo(new DigestOutputStream(OutputStream.nullOutputStream(), digest));
+                String hash = HexFormat.of().formatHex(digest.digest());
+                // 相同内容已有对应的文件时不追加，否则重新加载时会覆盖已有的对应关系
+                if (hashFiles.putIfAbsent(hash, filename) == null) {
+                    appendProperty(dir.resolve(HASH_FILES), hash, filename);
+                }
+            } catch (IOException | NoSuchAlgorithmException e) {
+                log.warn("Failed to index PDF file: {}", filename, e);
+            }
         }
     }
- 
-    @PreDestroy
-    private void persistent() {
+
+    /**
+     * 重写映射文件：先以UTF-8写入临时文件并刷到磁盘，再原子替换，写到一半崩溃时原文件不受影响
+     */
+    private synchronized void storeChatFiles() {
+        Path file = dir.resolve(CHAT_FILES);
+        Path temp = dir.resolve(CHAT_FILES + ".tmp");
         try {
-            chatFiles.store(new FileWriter("chat-pdf.properties"), LocalDateTime.now().toString());
-            SimpleVectorStore simpleVectorStore = (SimpleVectorStore) vectorStore;
-            simpleVectorStore.save(new File("chat-pdf.json"));
+            try (FileOutputStream out = new FileOutputStream(temp.toFile());
+                 Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8))) {
+                chatFiles.store(writer, LocalDateTime.now().toString());
+                writer.flush();
+                out.getFD().sync();
+            }
+            Files.move(temp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            appendedChatFiles.set(0);
         } catch (IOException e) {
             throw new RuntimeException(e);
         }
     }
+
+    @PreDestroy
+    private void persistent() {
+        storeChatFiles();
+        HnswVectorStore hnswVectorStore = (HnswVectorStore) vectorStore;
+        hnswVectorStore.save();
+    }
 }
\ No newline at end of file
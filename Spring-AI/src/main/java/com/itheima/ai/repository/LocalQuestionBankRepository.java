@@ -0,0 +1,103 @@
+package com.itheima.ai.repository;
+
+import com.itheima.ai.util.LruCache;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * 知识问答题库，保存在本地目录中
+ * <p>
+ * 每个文件一个题库文件，文件名由PDF文件名生成，每行记录为：难度、问题，以制表符分隔，新问题追加到末尾。
+ * 最近使用的题库缓存在内存中。
+ */
+@Slf4j
+@Component
+public class LocalQuestionBankRepository implements QuestionBankRepository {
+
+    private static final String BANK_DIR = "question-bank";
+
+    // 内存中缓存的最大题库数
+    private static final int MAX_CACHED_BANKS = 50;
+
+    private final Path dir;
+
+    // 文件名 -> (难度 -> 问题)
+    private final LruCache<String, Map<String, List<String>>> cache = new LruCache<>(MAX_CACHED_BANKS, null);
+
+    public LocalQuestionBankRepository() {
+        this(Path.of(BANK_DIR));
+    }
+
+    LocalQuestionBankRepository(Path dir) {
+        this.dir = dir;
+    }
+
+    @Override
+    public synchronized List<String> get(String fileName, String difficulty) {
+        return List.copyOf(load(fileName).getOrDefault(difficulty, List.of()));
+    }
+
+    @Override
+    public synchronized boolean add(String fileName, String difficulty, String question) {
+        // 问题中的换行和制表符会破坏记录格式
+        String normalized = question == null ? "" : question.strip().replaceAll("\\s+", " ");
+        if (normalized.isEmpty()) {
+            return false;
+        }
+        List<String> questions = load(fileName).computeIfAbsent(difficulty, d -> new ArrayList<>());
+        if (questions.contains(normalized)) {
+            return false;
+        }
+        try {
+            Files.createDirectories(dir);
+            Files.writeString(bankFile(fileName), difficulty + "\t" + normalized + "\n", StandardCharsets.UTF_8,
+                    StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        } catch (IOException e) {
+            throw new RuntimeException("保存题库失败: " + fileName, e);
+        }
+        questions.add(normalized);
+        log.debug("题库新增问题: fileName={}, difficulty={}, size={}", fileName, difficulty, questions.size());
+        return true;
+    }
+
+    private Map<String, List<String>> load(String fileName) {
+        Map<String, List<String>> bank = cache.get(fileName);
+        if (bank != null) {
+            return bank;
+        }
+        bank = new HashMap<>();
+        Path file = bankFile(fileName);
+        if (Files.exists(file)) {
+            try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    int tab = line.indexOf('\t');
+                    if (tab > 0) {
+                        bank.computeIfAbsent(line.substring(0, tab), d -> new ArrayList<>()).add(line.substring(tab + 1));
+                    }
+                }
+            } catch (IOException e) {
+                log.error("加载题库失败: fileName={}", fileName, e);
+            }
+        }
+        cache.put(fileName, bank);
+        return bank;
+    }
+
+    private Path bankFile(String fileName) {
+        // 文件名可能包含路径分隔符等字符，使用其UUID作为题库文件名
+        return dir.resolve(UUID.nameUUIDFromBytes(fileName.getBytes(StandardCharsets.UTF_8)) + ".tsv");
+    }
+}
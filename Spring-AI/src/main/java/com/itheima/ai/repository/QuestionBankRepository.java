@@ -0,0 +1,22 @@
+package com.itheima.ai.repository;
+
+import java.util.List;
+
+public interface QuestionBankRepository {
+    /**
+     * 获取文件某个难度的题库
+     * @param fileName PDF文件名，与向量库中的file_name一致
+     * @param difficulty 难度
+     * @return 按加入顺序排列的问题，没有时返回空列表
+     */
+    List<String> get(String fileName, String difficulty);
+
+    /**
+     * 向文件的题库中加入一道问题
+     * @param fileName PDF文件名
+     * @param difficulty 难度
+     * @param question 问题
+     * @return 是否已加入，已存在相同问题时返回false
+     */
+    boolean add(String fileName, String difficulty, String question);
+}
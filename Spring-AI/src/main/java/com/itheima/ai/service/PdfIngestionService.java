@@ -0,0 +1,25 @@
+package com.itheima.ai.service;
+
+import com.itheima.ai.entity.vo.PdfIngestionJob;
+import org.springframework.core.io.Resource;
+
+/**
+ * PDF向量化服务
+ */
+public interface PdfIngestionService {
+
+    /**
+     * 提交向量化任务，立即返回
+     * @param chatId 会话ID
+     * @param resource 已保存到本地的PDF文件
+     * @return 任务进度
+     */
+    PdfIngestionJob submit(String chatId, Resource resource);
+
+    /**
+     * 查询任务进度
+     * @param jobId 任务ID
+     * @return 任务进度，不存在或已过期时返回null
+     */
+    PdfIngestionJob getJob(String jobId);
+}
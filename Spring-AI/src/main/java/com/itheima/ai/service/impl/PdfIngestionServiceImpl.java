@@ -0,0 +1,276 @@
+package com.itheima.ai.service.impl;
+
+import com.itheima.ai.config.PdfIngestionProperties;
+import com.itheima.ai.entity.vo.PdfIngestionJob;
+import com.itheima.ai.reader.PdfPageReader;
+import com.itheima.ai.reader.TokenChunker;
+import com.itheima.ai.repository.KeywordIndexRepository;
+import com.itheima.ai.service.PdfIngestionService;
+import com.itheima.ai.util.KeywordIndex;
+import com.itheima.ai.vectorstore.HnswVectorStore;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.reader.ExtractedTextFormatter;
+import org.springframework.ai.vectorstore.VectorStore;
+import org.springframework.ai.vectorstore.filter.FilterExpressionBuilder;
+import org.springframework.core.io.Resource;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * PDF向量化服务实现
+ * <p>
+ * 任务线程逐页提取文本并按token切分，片段凑满一批后交给向量化线程池写入向量库；
+ * 同时进行中的批次数由信号量限制，提取速度超过向量化速度时任务线程会等待。
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class PdfIngestionServiceImpl implements PdfIngestionService {
+
+    private final VectorStore vectorStore;
+    private final PdfIngestionProperties properties;
+    private final KeywordIndexRepository keywordIndexRepository;
+
+    // 任务ID -> 任务
+    private final Map<String, Job> jobs = new ConcurrentHashMap<>();
+    // 文件名 -> 最近一次任务，相同内容的上传共用一个文件名
+    private final Map<String, Job> fileJobs = new ConcurrentHashMap<>();
+
+    private TokenChunker chunker;
+    private ThreadPoolTaskExecutor jobExecutor;
+    private ThreadPoolTaskExecutor embeddingExecutor;
+    private Semaphore embeddingPermits;
+
+    @PostConstruct
+    void init() {
+        chunker = new TokenChunker(properties.getChunkTokens(), properties.getChunkOverlapTokens());
+        jobExecutor = newExecutor("pdf-ingest-", properties.getJobThreads());
+        embeddingExecutor = newExecutor("pdf-embed-", properties.getConcurrency());
+        embeddingPermits = new Semaphore(properties.getConcurrency());
+    }
+
+    @PreDestroy
+    void shutdown() {
+        jobExecutor.shutdown();
+        embeddingExecutor.shutdown();
+    }
+
+    @Override
+    public synchronized PdfIngestionJob submit(String chatId, Resource resource) {
+        String fileName = resource.getFilename();
+        // 1.同一文件正在处理或已处理完，直接返回已有任务。任务可能由其他会话提交，只返回本次调用方的会话ID
+        Job existing = fileJobs.get(fileName);
+        if (existing != null && !"FAILED".equals(existing.status)) {
+            log.info("PDF已在向量化或已完成，复用任务: fileName={}, jobId={}", fileName, existing.id);
+            return existing.toVO(chatId);
+        }
+        Job job = new Job(UUID.randomUUID().toString(), fileName);
+        jobs.put(job.id, job);
+        fileJobs.put(fileName, job);
+        // 2.向量库中已有该文件(重启前写入)，无需再次向量化
+        if (vectorStore instanceof HnswVectorStore hnswVectorStore && hnswVectorStore.containsPartition(fileName)) {
+            log.info("PDF向量已存在，跳过向量化: fileName={}", fileName);
+            job.status = "COMPLETED";
+            job.finishTime = LocalDateTime.now();
+            // 补建之前没有的关键词索引
+            if (!keywordIndexRepository.contains(fileName)) {
+                jobExecutor.execute(() -> buildKeywordIndex(fileName, resource));
+            }
+            return job.toVO(chatId);
+        }
+        jobExecutor.execute(() -> run(job, resource));
+        return job.toVO(chatId);
+    }
+
+    @Override
+    public PdfIngestionJob getJob(String jobId) {
+        Job job = jobs.get(jobId);
+        // 任务按文件共用，查询进度时不返回会话ID
+        return job == null ? null : job.toVO(null);
+    }
+
+    /**
+     * 清理过期的任务进度
+     */
+    @Scheduled(fixedDelay = 60_000)
+    public void evictFinishedJobs() {
+        LocalDateTime deadline = LocalDateTime.now().minus(properties.getJobRetention());
+        jobs.values().removeIf(job -> job.finishTime != null && job.finishTime.isBefore(deadline));
+        fileJobs.values().removeIf(job -> job.finishTime != null && job.finishTime.isBefore(deadline));
+    }
+
+    private void run(Job job, Resource resource) {
+        job.status = "RUNNING";
+        List<CompletableFuture<Void>> batches = new ArrayList<>();
+        try (PdfPageReader reader = new PdfPageReader(resource, ExtractedTextFormatter.defaults())) {
+            int pageCount = reader.getPageCount();
+            job.totalPages = pageCount;
+            TokenChunker.Session chunks = chunker.newSession(job.fileName);
+            KeywordIndex.Builder keywords = new KeywordIndex.Builder();
+            List<Document> batch = new ArrayList<>(properties.getBatchSize());
+            for (int page = 1; page <= pageCount && job.error == null; page++) {
+                // 1.提取一页并切分
+                Document document = reader.readPage(page);
+                job.processedPages.incrementAndGet();
+                if (document != null) {
+                    keywords.add(document.getText());
+                    document.getMetadata().put("file_name", job.fileName);
+                    document.getMetadata().put("source", job.fileName);
+                    batch.addAll(chunks.accept(document));
+                }
+                if (page == pageCount) {
+                    batch.addAll(chunks.finish());
+                }
+                // 2.凑满一批或读到最后一页时提交向量化
+                while (batch.size() >= properties.getBatchSize()) {
+                    List<Document> full = new ArrayList<>(batch.subList(0, properties.getBatchSize()));
+                    batch.subList(0, properties.getBatchSize()).clear();
+                    batches.add(submitBatch(job, full));
+                }
+                if (page == pageCount && !batch.isEmpty()) {
+                    batches.add(submitBatch(job, batch));
+                    batch = new ArrayList<>(properties.getBatchSize());
+                }
+            }
+            // 3.等待所有批次写入完成
+            CompletableFuture.allOf(batches.toArray(CompletableFuture[]::new)).join();
+            // 4.保存关键词索引，供知识问答评分使用
+            keywordIndexRepository.save(job.fileName, keywords.build());
+            job.status = "COMPLETED";
+            log.info("PDF文档已加载到向量库: fileName={}, pages={}, documentCount={}",
+                    job.fileName, pageCount, job.storedDocuments.get());
+        } catch (Exception e) {
+            log.error("PDF向量化失败: fileName={}", job.fileName, e);
+            job.fail(e);
+            discardStoredDocuments(job, batches);
+            // 删除完成后才标记失败，否则重新上传会在删除前看到分区已存在，把新任务直接标记为完成
+            job.status = "FAILED";
+        } finally {
+            job.finishTime = LocalDateTime.now();
+        }
+    }
+
+    /**
+     * 向量化失败时删除已写入的片段，否则重新上传时分区已存在，文件会被当作已处理完而不再向量化。
+     * 先等待已提交的批次结束，尚未开始的批次看到任务失败后直接跳过
+     */
+    private void discardStoredDocuments(Job job, List<CompletableFuture<Void>> batches) {
+        try {
+            CompletableFuture.allOf(batches.toArray(CompletableFuture[]::new)).join();
+        } catch (RuntimeException e) {
+            // 失败的批次已记录在任务中
+        }
+        try {
+            vectorStore.delete(new FilterExpressionBuilder().eq("file_name", job.fileName).build());
+            job.storedDocuments.set(0);
+            log.info("已删除向量化失败的PDF片段: fileName={}", job.fileName);
+        } catch (RuntimeException e) {
+            log.error("删除向量化失败的PDF片段失败: fileName={}", job.fileName, e);
+        }
+    }
+
+    /**
+     * 只提取文本构建关键词索引
+     */
+    private void buildKeywordIndex(String fileName, Resource resource) {
+        try (PdfPageReader reader = new PdfPageReader(resource, ExtractedTextFormatter.defaults())) {
+            KeywordIndex.Builder keywords = new KeywordIndex.Builder();
+            for (int page = 1; page <= reader.getPageCount(); page++) {
+                Document document = reader.readPage(page);
+                if (document != null) {
+                    keywords.add(document.getText());
+                }
+            }
+            keywordIndexRepository.save(fileName, keywords.build());
+        } catch (Exception e) {
+            log.error("构建关键词索引失败: fileName={}", fileName, e);
+        }
+    }
+
+    private CompletableFuture<Void> submitBatch(Job job, List<Document> batch) throws InterruptedException {
+        embeddingPermits.acquire();
+        try {
+            return CompletableFuture.runAsync(() -> {
+                try {
+                    if (job.error == null) {
+                        vectorStore.add(batch);
+                        job.storedDocuments.addAndGet(batch.size());
+                    }
+                } catch (RuntimeException e) {
+                    job.fail(e);
+                    throw e;
+                } finally {
+                    embeddingPermits.release();
+                }
+            }, embeddingExecutor);
+        } catch (RuntimeException e) {
+            embeddingPermits.release();
+            throw e;
+        }
+    }
+
+    private static ThreadPoolTaskExecutor newExecutor(String threadNamePrefix, int threads) {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setThreadNamePrefix(threadNamePrefix);
+        executor.setCorePoolSize(threads);
+        executor.setMaxPoolSize(threads);
+        executor.initialize();
+        return executor;
+    }
+
+    private static final class Job {
+        final String id;
+        final String fileName;
+        final LocalDateTime createTime = LocalDateTime.now();
+        final AtomicInteger processedPages = new AtomicInteger();
+        final AtomicInteger storedDocuments = new AtomicInteger();
+        volatile String status = "PENDING";
+        volatile int totalPages;
+        volatile String error;
+        volatile LocalDateTime finishTime;
+
+        Job(String id, String fileName) {
+            this.id = id;
+            this.fileName = fileName;
+        }
+
+        /**
+         * 记录失败原因，后续批次看到后跳过；状态在删除已写入的片段后再改为FAILED
+         */
+        synchronized void fail(Throwable e) {
+            if (error == null) {
+                error = e.getMessage() == null ? e.getClass().getSimpleName() : e.getMessage();
+            }
+        }
+
+        PdfIngestionJob toVO(String chatId) {
+            PdfIngestionJob vo = new PdfIngestionJob();
+            vo.setJobId(id);
+            vo.setChatId(chatId);
+            vo.setFileName(fileName);
+            vo.setStatus(status);
+            vo.setTotalPages(totalPages);
+            vo.setProcessedPages(processedPages.get());
+            vo.setStoredDocuments(storedDocuments.get());
+            vo.setError(error);
+            vo.setCreateTime(createTime);
+            vo.setFinishTime(finishTime);
+            return vo;
+        }
+    }
+}
@@ -1,24 +1,51 @@
 package com.itheima.ai.service.impl;
 
+import com.fasterxml.jackson.annotation.JsonPropertyDescription;
+import com.itheima.ai.cache.PromptCacheAdvisor;
+import com.itheima.ai.config.QuizGameProperties;
+import com.itheima.ai.config.ThreadingConfiguration;
 import com.itheima.ai.entity.vo.QuizGameState;
 import com.itheima.ai.entity.vo.QuizAnswerRequest;
 import com.itheima.ai.repository.FileRepository;
+import com.itheima.ai.repository.KeywordIndexRepository;
+import com.itheima.ai.repository.QuestionBankRepository;
 import com.itheima.ai.service.QuizGameService;
+import com.itheima.ai.util.KeywordIndex;
+import com.itheima.ai.util.VectorDistanceUtils;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.jvm.ExecutorServiceMetrics;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.beans.factory.annotation.Qualifier;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.ai.chat.client.ChatClient;
 import org.springframework.ai.chat.client.advisor.QuestionAnswerAdvisor;
+import org.springframework.ai.converter.BeanOutputConverter;
 import org.springframework.ai.document.Document;
 import org.springframework.ai.embedding.EmbeddingModel;
 import org.springframework.ai.vectorstore.SearchRequest;
 import org.springframework.ai.vectorstore.VectorStore;
+import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.core.env.Environment;
 import org.springframework.core.io.Resource;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 import org.springframework.stereotype.Service;
 
+import java.time.Duration;
 import java.time.LocalDateTime;
 import java.time.temporal.ChronoUnit;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
 /**
  * 知识问答游戏服务实现
@@ -31,30 +58,87 @@ public class QuizGameServiceImpl implements QuizGameService {
     private final VectorStore vectorStore;
     private final ChatClient quizGameChatClient;
     private final EmbeddingModel embeddingModel;
+    private final KeywordIndexRepository keywordIndexRepository;
+    private final QuestionBankRepository questionBankRepository;
+    // 后台预生成问题的线程池，所有游戏共享，队列有上限；开启虚拟线程时工作线程为虚拟线程
+    private final ThreadPoolTaskExecutor pregenerateExecutor;
+    private final AtomicLong rejectedPregenerations = new AtomicLong();
+    private final AtomicLong cancelledPregenerations = new AtomicLong();
+    // 答题评分的线程池，AI评分和文档内容检索并行执行
+    private final ThreadPoolTaskExecutor scoringExecutor;
+    private final Duration scoringTimeout;
+    private final AtomicLong scoringTimeouts = new AtomicLong();
+    private final double questionSimilarityThreshold;
+    private final int questionBankSize;
+    private final int questionBankGrowBatch;
+    private final boolean batchGeneration;
+    // 正在后台补充的题库，值为 文件名+难度
+    private final Set<String> growingQuestionBanks = ConcurrentHashMap.newKeySet();
     
     public QuizGameServiceImpl(FileRepository fileRepository, 
                               VectorStore vectorStore,
                               @Qualifier("quizGameChatClient") ChatClient quizGameChatClient,
-                              @Qualifier("openAiEmbeddingModel") EmbeddingModel embeddingModel) {
+                              @Qualifier("cachingEmbeddingModel") EmbeddingModel embeddingModel,
+                              KeywordIndexRepository keywordIndexRepository,
+                              QuestionBankRepository questionBankRepository,
+                              QuizGameProperties properties,
+                              Environment environment,
+                              ObjectProvider<MeterRegistry> meterRegistry) {
         this.fileRepository = fileRepository;
         this.vectorStore = vectorStore;
         this.quizGameChatClient = quizGameChatClient;
         this.embeddingModel = embeddingModel;
+        this.keywordIndexRepository = keywordIndexRepository;
+        this.questionBankRepository = questionBankRepository;
+        this.pregenerateExecutor = new ThreadPoolTaskExecutor();
+        this.pregenerateExecutor.setThreadNamePrefix("quiz-pregenerate-");
+        this.pregenerateExecutor.setCorePoolSize(properties.getPregenerateThreads());
+        this.pregenerateExecutor.setMaxPoolSize(properties.getPregenerateThreads());
+        this.pregenerateExecutor.setQueueCapacity(properties.getPregenerateQueueCapacity());
+        this.pregenerateExecutor.setVirtualThreads(ThreadingConfiguration.isVirtual(environment));
+        // 队列满时拒绝，由提交方改为实时生成
+        this.pregenerateExecutor.setRejectedExecutionHandler(new ThreadPoolExecutor.AbortPolicy());
+        this.pregenerateExecutor.initialize();
+        this.scoringExecutor = new ThreadPoolTaskExecutor();
+        this.scoringExecutor.setThreadNamePrefix("quiz-score-");
+        this.scoringExecutor.setCorePoolSize(properties.getScoringThreads());
+        this.scoringExecutor.setMaxPoolSize(properties.getScoringThreads());
+        this.scoringExecutor.setQueueCapacity(properties.getScoringThreads() * 10);
+        this.scoringExecutor.setVirtualThreads(ThreadingConfiguration.isVirtual(environment));
+        // 队列满时在请求线程中执行，评分变慢但不失败
+        this.scoringExecutor.setRejectedExecutionHandler(new ThreadPoolExecutor.CallerRunsPolicy());
+        this.scoringExecutor.initialize();
+        this.scoringTimeout = properties.getScoringTimeout();
+        this.questionSimilarityThreshold = properties.getQuestionSimilarityThreshold();
+        this.questionBankSize = properties.getQuestionBankSize();
+        this.questionBankGrowBatch = properties.getQuestionBankGrowBatch();
+        this.batchGeneration = properties.isBatchGeneration();
+        meterRegistry.ifAvailable(this::bindMetrics);
+    }
+    
+    @PreDestroy
+    private void shutdown() {
+        pregenerateExecutor.shutdown();
+        scoringExecutor.shutdown();
     }
     
     // 游戏状态存储 (实际项目中应该用Redis或数据库)
     private final Map<String, QuizGameState> gameStates = new ConcurrentHashMap<>();
     
     // 存储每个游戏已生成的问题，防止重复
-    private final Map<String, Set<String>> gameQuestions = new ConcurrentHashMap<>();
+    private final Map<String, QuestionSet> gameQuestions = new ConcurrentHashMap<>();
     
-    // 存储每个游戏的预生成问题列表
-    private final Map<String, List<String>> preGeneratedQuestions = new ConcurrentHashMap<>();
+    // 游戏ID -> 预生成的问题
+    private final Map<String, Pregeneration> pregenerations = new ConcurrentHashMap<>();
     
     // 游戏配置
     private static final int TOTAL_ROUNDS = 10;
     private static final long QUESTION_TIMEOUT_SECONDS = 180; // 3分钟
     private static final int MAX_SCORE_PER_QUESTION = 10;
+    // 检索相关文档内容使用的关键词
+    private static final String[] CONTEXT_SEARCH_TERMS = {"知识", "学习", "内容", "教育", "课程"};
+    // 与getDifficultyByRound的返回值一致
+    private static final String[] DIFFICULTIES = {"简单", "中等", "困难"};
     
     @Override
     public QuizGameState startGame(String pdfChatId) {
@@ -77,7 +161,7 @@ public class QuizGameServiceImpl implements QuizGameService {
         gameStates.put(gameId, gameState);
         
         // 4. 初始化问题集合
-        gameQuestions.put(gameId, new HashSet<>());
+        gameQuestions.put(gameId, newQuestionSet());
         
         // 5. 预生成所有问题（在后台异步进行）
         generateAllQuestionsAsync(gameId, file.getFilename());
@@ -159,7 +243,7 @@ public class QuizGameServiceImpl implements QuizGameService {
             gameState.setStatus("FINISHED");
             // 清理游戏问题缓存
             gameQuestions.remove(request.getGameId());
-            preGeneratedQuestions.remove(request.getGameId());
+            cancelPregeneration(request.getGameId());
             log.info("游戏结束: gameId={}, 总分={}", request.getGameId(), gameState.getTotalScore());
         } else {
             // 设置为等待下一题状态
@@ -224,7 +308,7 @@ public class QuizGameServiceImpl implements QuizGameService {
         
         // 清理游戏问题缓存
         gameQuestions.remove(gameId);
-        preGeneratedQuestions.remove(gameId);
+        cancelPregeneration(gameId);
         
         log.info("手动结束游戏: gameId={}, 总分={}", gameId, gameState.getTotalScore());
         return gameState;
@@ -234,11 +318,7 @@ public class QuizGameServiceImpl implements QuizGameService {
      * 生成不重复的问题
      */
     private String generateUniqueQuestion(String pdfFileName, int round, String gameId) {
-        Set<String> usedQuestions = gameQuestions.get(gameId);
-        if (usedQuestions == null) {
-            usedQuestions = new HashSet<>();
-            gameQuestions.put(gameId, usedQuestions);
-        }
+        QuestionSet usedQuestions = gameQuestions.computeIfAbsent(gameId, id -> newQuestionSet());
         
         String question;
         int attempts = 0;
@@ -248,29 +328,31 @@ public class QuizGameServiceImpl implements QuizGameService {
             question = generateQuestion(pdfFileName, round, attempts);
             attempts++;
             
-            // 语义去重检查
-            if (!isQuestionSimilar(question, usedQuestions)) {
+            // 语义去重检查，不重复时记录
+            if (usedQuestions.addIfDistinct(question)) {
                 break;
             }
             
             // 如果尝试次数过多，使用带轮次信息的默认问题
             if (attempts >= maxAttempts) {
                 question = getUniqueDefaultQuestion(round, usedQuestions);
+                usedQuestions.add(question);
                 break;
             }
         } while (attempts < maxAttempts);
         
-        // 记录已使用的问题
-        usedQuestions.add(question);
-        
         log.info("生成唯一问题: round={}, attempts={}, question={}", round, attempts, question);
         return question;
     }
     
+    private QuestionSet newQuestionSet() {
+        return new QuestionSet(embeddingModel, questionSimilarityThreshold);
+    }
+    
     /**
-     * 检查问题是否语义相似（简化版）
+     * 按关键词重叠度检查问题是否相似，向量接口不可用时使用
      */
-    private boolean isQuestionSimilar(String newQuestion, Set<String> usedQuestions) {
+    private static boolean isKeywordSimilar(String newQuestion, Collection<String> usedQuestions) {
         if (usedQuestions.isEmpty()) {
             return false;
         }
@@ -304,7 +386,7 @@ public class QuizGameServiceImpl implements QuizGameService {
     /**
      * 提取问题关键词
      */
-    private String[] extractKeywords(String question) {
+    private static String[] extractKeywords(String question) {
         // 简化的关键词提取，去除常见词汇
         String[] commonWords = {"什么", "是", "的", "如何", "怎样", "为什么", "哪些", "请", "简述", "解释", "说明", "？", "。", "，"};
         
@@ -317,66 +399,345 @@ public class QuizGameServiceImpl implements QuizGameService {
     }
     
     /**
-     * 异步预生成所有问题
+     * 第一轮直接从题库抽取，第一道问题不需要查重，不调用模型；其余问题在后台预生成，不阻塞开始游戏的请求
      */
     private void generateAllQuestionsAsync(String gameId, String pdfFileName) {
-        // 使用新线程异步生成，避免阻塞主线程
-        new Thread(() -> {
+        Pregeneration pregeneration = new Pregeneration(newQuestionSet());
+        pregenerations.put(gameId, pregeneration);
+        int sampled = sampleFromQuestionBank(pdfFileName, pregeneration, 1, 1);
+        try {
+            pregeneration.task = pregenerateExecutor.submit(() -> pregenerateAll(gameId, pdfFileName, pregeneration));
+        } catch (TaskRejectedException e) {
+            rejectedPregenerations.addAndGet(TOTAL_ROUNDS - sampled);
+            log.warn("预生成队列已满，问题改为实时生成: gameId={}", gameId);
+        }
+    }
+    
+    /**
+     * 先从题库中抽取(抽题时计算问题向量去重)，题库不足的轮次通过一次模型调用批量生成，
+     * 未开启批量生成或批量生成不足时每轮一个任务并行生成
+     */
+    private void pregenerateAll(String gameId, String pdfFileName, Pregeneration pregeneration) {
+        int sampled = sampleFromQuestionBank(pdfFileName, pregeneration, playedRounds(gameId) + 1, TOTAL_ROUNDS);
+        log.info("开始预生成问题: gameId={}, pdfFileName={}, fromBank={}", gameId, pdfFileName, sampled);
+        if (pregeneration.cancelled) {
+            return;
+        }
+        
+        boolean missing = false;
+        for (int round = playedRounds(gameId) + 1; round <= TOTAL_ROUNDS; round++) {
+            missing |= pregeneration.questions.get(round - 1) == null;
+        }
+        if (!missing) {
+            // 题库足够一局时，后台继续补充到目标题数；不够时本局生成的问题会存入题库
+            growQuestionBank(pdfFileName);
+        } else if (batchGeneration) {
+            pregenerateBatch(gameId, pdfFileName, pregeneration);
+        } else {
+            submitRoundPregenerations(gameId, pdfFileName, pregeneration);
+        }
+    }
+    
+    /**
+     * 已经出过的轮数，这些轮次不再预生成
+     */
+    private int playedRounds(String gameId) {
+        QuizGameState gameState = gameStates.get(gameId);
+        return gameState == null ? 0 : gameState.getCurrentRound();
+    }
+    
+    /**
+     * 为还没有问题的轮次各提交一个预生成任务
+     */
+    private void submitRoundPregenerations(String gameId, String pdfFileName, Pregeneration pregeneration) {
+        int played = playedRounds(gameId);
+        for (int round = played + 1; round <= TOTAL_ROUNDS && !pregeneration.cancelled; round++) {
+            if (pregeneration.questions.get(round - 1) != null) {
+                continue;
+            }
+            int r = round;
             try {
-                List<String> questions = new ArrayList<>();
-                Set<String> usedQuestions = new HashSet<>();
-                
-                log.info("开始预生成问题: gameId={}, pdfFileName={}", gameId, pdfFileName);
-                
-                for (int round = 1; round <= TOTAL_ROUNDS; round++) {
-                    String question = generateUniqueQuestionSync(pdfFileName, round, usedQuestions);
-                    questions.add(question);
-                    usedQuestions.add(question);
-                    
-                    log.info("预生成第{}题: {}", round, question);
+                pregeneration.futures[r - 1] = pregenerateExecutor.submit(() -> pregenerate(gameId, pdfFileName, pregeneration, r));
+            } catch (TaskRejectedException e) {
+                // 队列已满，剩余轮次在出题时实时生成
+                for (int i = r; i <= TOTAL_ROUNDS; i++) {
+                    if (pregeneration.questions.get(i - 1) == null) {
+                        rejectedPregenerations.incrementAndGet();
+                    }
+                }
+                log.warn("预生成队列已满，剩余问题改为实时生成: gameId={}, fromRound={}", gameId, r);
+                break;
+            }
+        }
+    }
+    
+    /**
+     * 一次模型调用生成所有缺题轮次的问题，按难度分配到各轮，生成不足的轮次改为逐题生成
+     */
+    private void pregenerateBatch(String gameId, String pdfFileName, Pregeneration pregeneration) {
+        // 各难度缺的轮次
+        Map<String, List<Integer>> missingRounds = new LinkedHashMap<>();
+        for (int round = playedRounds(gameId) + 1; round <= TOTAL_ROUNDS; round++) {
+            if (pregeneration.questions.get(round - 1) == null) {
+                missingRounds.computeIfAbsent(getDifficultyByRound(round), d -> new ArrayList<>()).add(round);
+            }
+        }
+        
+        List<GeneratedQuestion> generated = List.of();
+        try {
+            generated = generateQuestionBatch(pdfFileName, missingRounds);
+        } catch (Exception e) {
+            if (pregeneration.cancelled) {
+                log.debug("批量预生成已取消: gameId={}", gameId);
+                return;
+            }
+            log.warn("批量生成问题失败，改为逐题生成: gameId={}", gameId, e);
+        }
+        if (pregeneration.cancelled) {
+            return;
+        }
+        
+        int assigned = 0;
+        for (GeneratedQuestion candidate : generated) {
+            List<Integer> rounds = candidate == null ? null : missingRounds.get(candidate.difficulty());
+            if (rounds == null || rounds.isEmpty() || candidate.question() == null || candidate.question().isBlank()) {
+                continue;
+            }
+            String question = candidate.question().strip();
+            if (pregeneration.usedQuestions.addIfDistinct(question)) {
+                int round = rounds.remove(0);
+                pregeneration.questions.set(round - 1, question);
+                addToQuestionBank(pdfFileName, candidate.difficulty(), question);
+                assigned++;
+                log.info("预生成第{}题: gameId={}, question={}", round, gameId, question);
+            }
+        }
+        log.info("批量预生成问题: gameId={}, generated={}, assigned={}", gameId, generated.size(), assigned);
+        
+        if (!pregeneration.cancelled && missingRounds.values().stream().anyMatch(rounds -> !rounds.isEmpty())) {
+            submitRoundPregenerations(gameId, pdfFileName, pregeneration);
+        }
+    }
+    
+    /**
+     * 通过一次模型调用生成多道问题，以JSON列表输出并标注难度
+     * @param missingRounds 难度 -> 该难度缺的轮次
+     */
+    private List<GeneratedQuestion> generateQuestionBatch(String pdfFileName, Map<String, List<Integer>> missingRounds) {
+        BeanOutputConverter<List<GeneratedQuestion>> converter =
+                new BeanOutputConverter<>(new ParameterizedTypeReference<List<GeneratedQuestion>>() {});
+        StringBuilder counts = new StringBuilder();
+        int total = 0;
+        for (Map.Entry<String, List<Integer>> entry : missingRounds.entrySet()) {
+            counts.append(counts.isEmpty() ? "" : "、").append(entry.getKey()).append(entry.getValue().size()).append("道");
+            total += entry.getValue().size();
+        }
+        String contextInfo = getRelevantContext(pdfFileName);
+        
+        String prompt = String.format(
+            "你是一个专业AI考官，请基于PDF文档内容一次出%d道问题，其中%s。\n" +
+            "要求：1.具体明确 2.直接提问 3.包含具体知识点 4.每题不超过40字 5.各题考查不同的知识点，互不重复\n" +
+            "difficulty只能是：简单、中等、困难\n" +
+            "文档内容：%s",
+            total, counts,
+            contextInfo != null && !contextInfo.trim().isEmpty() ? contextInfo.substring(0, Math.min(1000, contextInfo.length())) : "根据文档内容"
+        );
+        
+        // 输出格式说明由entity作为模板参数追加，JSON Schema中的花括号不参与模板渲染
+        List<GeneratedQuestion> questions = quizGameChatClient.prompt()
+                .user(prompt)
+                .advisors(a -> a.param(QuestionAnswerAdvisor.FILTER_EXPRESSION, "file_name == '" + pdfFileName + "'"))
+                .advisors(a -> a.param(PromptCacheAdvisor.BYPASS_CACHE, true))
+                .call()
+                .entity(converter);
+        return questions == null ? List.of() : questions;
+    }
+    
+    /**
+     * 从题库中按每轮的难度为fromRound到toRound轮随机抽取互不相似的问题，已有问题的轮次不再抽取
+     * @return 范围内已有问题的轮数
+     */
+    private int sampleFromQuestionBank(String pdfFileName, Pregeneration pregeneration, int fromRound, int toRound) {
+        Map<String, List<String>> candidates = new HashMap<>();
+        int sampled = 0;
+        for (int round = fromRound; round <= toRound && !pregeneration.cancelled; round++) {
+            if (pregeneration.questions.get(round - 1) != null) {
+                sampled++;
+                continue;
+            }
+            List<String> bank = candidates.computeIfAbsent(getDifficultyByRound(round), difficulty -> {
+                List<String> questions = new ArrayList<>(questionBankRepository.get(pdfFileName, difficulty));
+                Collections.shuffle(questions);
+                return questions;
+            });
+            while (!bank.isEmpty()) {
+                String question = bank.remove(bank.size() - 1);
+                if (pregeneration.usedQuestions.addIfDistinct(question)) {
+                    pregeneration.questions.set(round - 1, question);
+                    sampled++;
+                    break;
                 }
-                
-                // 保存预生成的问题
-                preGeneratedQuestions.put(gameId, questions);
-                
-                log.info("预生成问题完成: gameId={}, total={}", gameId, questions.size());
-                
-            } catch (Exception e) {
-                log.error("预生成问题失败: gameId={}", gameId, e);
             }
-        }).start();
+        }
+        return sampled;
+    }
+    
+    /**
+     * 题库未达到目标题数时，在后台为各难度补充问题
+     */
+    private void growQuestionBank(String pdfFileName) {
+        for (String difficulty : DIFFICULTIES) {
+            int missing = questionBankSize - questionBankRepository.get(pdfFileName, difficulty).size();
+            String key = pdfFileName + "\t" + difficulty;
+            if (missing <= 0 || !growingQuestionBanks.add(key)) {
+                continue;
+            }
+            try {
+                pregenerateExecutor.execute(() -> {
+                    try {
+                        fillQuestionBank(pdfFileName, difficulty, Math.min(missing, questionBankGrowBatch));
+                    } finally {
+                        growingQuestionBanks.remove(key);
+                    }
+                });
+            } catch (TaskRejectedException e) {
+                // 补充题库不急，队列满时留给下一局
+                growingQuestionBanks.remove(key);
+                log.debug("预生成队列已满，暂不补充题库: pdfFileName={}, difficulty={}", pdfFileName, difficulty);
+            }
+        }
+    }
+    
+    /**
+     * 生成一个难度的问题存入题库，与题库中已有的问题去重
+     */
+    private void fillQuestionBank(String pdfFileName, String difficulty, int count) {
+        QuestionSet bank = newQuestionSet();
+        questionBankRepository.get(pdfFileName, difficulty).forEach(bank::add);
+        int added = 0;
+        for (int attempts = 0; added < count && attempts < count * 2 && !Thread.currentThread().isInterrupted(); attempts++) {
+            String question = generateSimpleQuestion(pdfFileName, difficulty, attempts);
+            if (question == null) {
+                // 模型不可用，下一局再补充
+                break;
+            }
+            if (bank.addIfDistinct(question) && addToQuestionBank(pdfFileName, difficulty, question)) {
+                added++;
+            }
+        }
+        log.info("题库已补充: pdfFileName={}, difficulty={}, added={}", pdfFileName, difficulty, added);
+    }
+    
+    private boolean addToQuestionBank(String pdfFileName, String difficulty, String question) {
+        try {
+            return questionBankRepository.add(pdfFileName, difficulty, question);
+        } catch (RuntimeException e) {
+            log.warn("问题存入题库失败: pdfFileName={}, difficulty={}", pdfFileName, difficulty, e);
+            return false;
+        }
+    }
+    
+    /**
+     * 预生成一轮的问题
+     */
+    private void pregenerate(String gameId, String pdfFileName, Pregeneration pregeneration, int round) {
+        try {
+            String question = generateUniqueQuestionSync(pdfFileName, round, pregeneration);
+            if (question != null && !pregeneration.isCancelled(round)) {
+                pregeneration.questions.set(round - 1, question);
+                log.info("预生成第{}题: gameId={}, question={}", round, gameId, question);
+            }
+        } catch (Exception e) {
+            if (pregeneration.isCancelled(round)) {
+                log.debug("预生成已取消: gameId={}, round={}", gameId, round);
+            } else {
+                log.error("预生成问题失败: gameId={}, round={}", gameId, round, e);
+            }
+        }
     }
     
     /**
-     * 同步生成唯一问题（用于预生成）
+     * 游戏结束时取消尚未完成的预生成。
+     * 不中断正在执行的任务：中断会关闭任务中用到的可中断FileChannel，执行中的任务看到取消标记后自行结束
      */
-    private String generateUniqueQuestionSync(String pdfFileName, int round, Set<String> usedQuestions) {
+    private void cancelPregeneration(String gameId) {
+        Pregeneration pregeneration = pregenerations.remove(gameId);
+        if (pregeneration == null) {
+            return;
+        }
+        pregeneration.cancelled = true;
+        int cancelled = 0;
+        if (pregeneration.task != null && pregeneration.task.cancel(false)) {
+            cancelled++;
+        }
+        for (Future<?> future : pregeneration.futures) {
+            if (future != null && future.cancel(false)) {
+                cancelled++;
+            }
+        }
+        if (cancelled > 0) {
+            cancelledPregenerations.addAndGet(cancelled);
+            // 从队列中移除已取消的任务，腾出容量
+            pregenerateExecutor.getThreadPoolExecutor().purge();
+            log.info("取消预生成: gameId={}, cancelled={}", gameId, cancelled);
+        }
+    }
+    
+    private void bindMetrics(MeterRegistry registry) {
+        new ExecutorServiceMetrics(pregenerateExecutor.getThreadPoolExecutor(), "quiz.pregenerate", List.of()).bindTo(registry);
+        new ExecutorServiceMetrics(scoringExecutor.getThreadPoolExecutor(), "quiz.scoring", List.of()).bindTo(registry);
+        FunctionCounter.builder("ai.quiz.scoring.timeouts", scoringTimeouts, AtomicLong::get)
+                .description("超过截止时间、按0分计的评分项数")
+                .register(registry);
+        FunctionCounter.builder("ai.quiz.pregenerate.rejected", rejectedPregenerations, AtomicLong::get)
+                .description("队列已满、改为实时生成的问题数")
+                .register(registry);
+        FunctionCounter.builder("ai.quiz.pregenerate.cancelled", cancelledPregenerations, AtomicLong::get)
+                .description("游戏结束时取消的预生成问题数")
+                .register(registry);
+    }
+    
+    /**
+     * 同步生成唯一问题（用于预生成），各轮并行生成，查重和记录在问题集合的同一把锁内完成。
+     * 模型生成的问题同时存入题库
+     * @return 生成的问题，被取消时返回null
+     */
+    private String generateUniqueQuestionSync(String pdfFileName, int round, Pregeneration pregeneration) {
+        QuestionSet usedQuestions = pregeneration.usedQuestions;
         String question;
         int attempts = 0;
         final int maxAttempts = 5;
         
-        do {
-            question = generateSimpleQuestion(pdfFileName, round, attempts);
+        String difficulty = getDifficultyByRound(round);
+        
+        while (!pregeneration.isCancelled(round)) {
+            String generated = generateSimpleQuestion(pdfFileName, difficulty, attempts);
+            question = generated != null ? generated : getSimpleDefaultQuestion(round);
             attempts++;
             
-            if (!isQuestionSimilar(question, usedQuestions)) {
-                break;
+            if (usedQuestions.addIfDistinct(question)) {
+                if (generated != null) {
+                    addToQuestionBank(pdfFileName, difficulty, question);
+                }
+                return question;
             }
             
             if (attempts >= maxAttempts) {
-                question = getUniqueDefaultQuestion(round, usedQuestions);
-                break;
+                synchronized (usedQuestions) {
+                    question = getUniqueDefaultQuestion(round, usedQuestions);
+                    usedQuestions.add(question);
+                }
+                return question;
             }
-        } while (attempts < maxAttempts);
-        
-        return question;
+        }
+        return null;
     }
     
     /**
-     * 简化的问题生成（用于预生成）
+     * 简化的问题生成（用于预生成和题库）
+     * @return 生成的问题，模型调用失败时返回null
      */
-    private String generateSimpleQuestion(String pdfFileName, int round, int attempts) {
-        String difficulty = getDifficultyByRound(round);
+    private String generateSimpleQuestion(String pdfFileName, String difficulty, int attempts) {
         String contextInfo = getRelevantContext(pdfFileName);
         
         String prompt = String.format(
@@ -393,13 +754,15 @@ public class QuizGameServiceImpl implements QuizGameService {
             String question = quizGameChatClient.prompt()
                     .user(prompt)
                     .advisors(a -> a.param(QuestionAnswerAdvisor.FILTER_EXPRESSION, "file_name == '" + pdfFileName + "'"))
+                    // 每次都要一道新问题，相同的提示词不能复用缓存的回答
+                    .advisors(a -> a.param(PromptCacheAdvisor.BYPASS_CACHE, true))
                     .call()
                     .content();
             
             return question.trim();
         } catch (Exception e) {
-            log.warn("生成问题失败: round={}, attempts={}", round, attempts, e);
-            return getSimpleDefaultQuestion(round);
+            log.warn("生成问题失败: difficulty={}, attempts={}", difficulty, attempts, e);
+            return null;
         }
     }
     
@@ -428,18 +791,31 @@ public class QuizGameServiceImpl implements QuizGameService {
      * 获取预生成的问题
      */
     private String getPreGeneratedQuestion(String gameId, int round) {
-        List<String> questions = preGeneratedQuestions.get(gameId);
-        if (questions != null && questions.size() >= round && round > 0) {
-            String question = questions.get(round - 1);
+        Pregeneration pregeneration = pregenerations.get(gameId);
+        if (pregeneration == null || round <= 0 || round > TOTAL_ROUNDS) {
+            log.warn("预生成问题不可用: gameId={}, round={}", gameId, round);
+            return null;
+        }
+        String question = pregeneration.questions.get(round - 1);
+        if (question != null) {
+            // 记入本局已用问题，实时生成的问题不与之重复
+            QuestionSet usedQuestions = gameQuestions.get(gameId);
+            if (usedQuestions != null) {
+                usedQuestions.add(question);
+            }
             log.info("使用预生成问题: gameId={}, round={}, question={}", gameId, round, question);
             return question;
         }
         
-        log.warn("预生成问题不可用: gameId={}, round={}, available={}", 
-                gameId, round, questions != null ? questions.size() : 0);
+        // 本轮尚未生成完，取消后台任务，避免与实时生成重复请求模型；执行中的任务在本次模型调用后结束
+        Future<?> future = pregeneration.futures[round - 1];
+        if (future != null && future.cancel(false)) {
+            cancelledPregenerations.incrementAndGet();
+        }
+        log.warn("预生成问题尚未完成: gameId={}, round={}", gameId, round);
         return null;
     }
-    private String getUniqueDefaultQuestion(int round, Set<String> usedQuestions) {
+    private String getUniqueDefaultQuestion(int round, QuestionSet usedQuestions) {
         String[] defaultQuestions = {
             "什么是面向对象编程中的封装原则？",
             "Java中String和StringBuilder的区别是什么？",
@@ -526,6 +902,8 @@ public class QuizGameServiceImpl implements QuizGameService {
             String question = quizGameChatClient.prompt()
                     .user(prompt)
                     .advisors(a -> a.param(QuestionAnswerAdvisor.FILTER_EXPRESSION, "file_name == '" + pdfFileName + "'"))
+                    // 每次都要一道新问题，相同的提示词不能复用缓存的回答
+                    .advisors(a -> a.param(PromptCacheAdvisor.BYPASS_CACHE, true))
                     .call()
                     .content();
             
@@ -574,22 +952,47 @@ public class QuizGameServiceImpl implements QuizGameService {
             return new ScoreResult(0, "答案无意义或与问题不相关，请认真回答。");
         }
         
-        // 1. AI语义理解评分 (70%)
-        int aiScore = getStrictAIScore(question, userAnswer, pdfFileName);
+        // 1. AI语义理解评分 (70%) 与关键词匹配评分 (30%) 并行，关键词索引不存在时由检索到的文档内容临时构建，
+        //    耗时取决于最慢的一项，所有评分项共用一个截止时间
+        long start = System.nanoTime();
+        // 通过submit提交，超时取消时能中断正在执行的评分线程；CompletableFuture的cancel不会中断
+        Future<Integer> aiScoreFuture = scoringExecutor.submit(() -> getStrictAIScore(question, userAnswer, pdfFileName));
+        CompletableFuture<Integer> keywordScoreFuture = getKeywordIndexAsync(pdfFileName)
+                .thenApply(index -> getEnhancedKeywordScore(question, userAnswer, index));
         
-        // 2. 关键词匹配评分 (30%)
-        int keywordScore = getEnhancedKeywordScore(question, userAnswer, pdfFileName);
+        int aiScore = awaitScore(aiScoreFuture, "AI评分", start);
+        int keywordScore = awaitScore(keywordScoreFuture, "关键词评分", start);
         
         int totalScore = Math.min(MAX_SCORE_PER_QUESTION, aiScore + keywordScore);
         
         String feedback = generateDetailedFeedback(question, userAnswer, totalScore, pdfFileName);
         
-        log.info("评分结果: question={}, userAnswer={}, aiScore={}, keywordScore={}, totalScore={}", 
-                question, userAnswer, aiScore, keywordScore, totalScore);
+        log.info("评分结果: question={}, userAnswer={}, aiScore={}, keywordScore={}, totalScore={}, elapsedMs={}", 
+                question, userAnswer, aiScore, keywordScore, totalScore, (System.nanoTime() - start) / 1_000_000);
         
         return new ScoreResult(totalScore, feedback);
     }
     
+    /**
+     * 在截止时间前等待评分项，超时或失败时按0分计。
+     * 超时时取消评分项：线程池submit的任务会被中断，CompletableFuture只是不再等待
+     */
+    private int awaitScore(Future<Integer> future, String stage, long start) {
+        long remaining = scoringTimeout.toNanos() - (System.nanoTime() - start);
+        try {
+            return future.get(Math.max(0, remaining), TimeUnit.NANOSECONDS);
+        } catch (TimeoutException e) {
+            scoringTimeouts.incrementAndGet();
+            future.cancel(true);
+            log.warn("{}超时，按0分计: timeout={}", stage, scoringTimeout);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            log.warn("{}失败，按0分计", stage, e.getCause());
+        }
+        return 0;
+    }
+    
     /**
      * 检查是否为无意义答案
      */
@@ -666,41 +1069,42 @@ public class QuizGameServiceImpl implements QuizGameService {
     }
     
     /**
-     * 增强的关键词评分
+     * 文件的关键词索引，上传时未建立索引的文件临时由检索到的文档内容构建
      */
-    private int getEnhancedKeywordScore(String question, String userAnswer, String pdfFileName) {
-        // 获取相关文档内容
-        String context = getRelevantContext(pdfFileName);
-        if (context == null || context.trim().isEmpty()) {
+    private CompletableFuture<KeywordIndex> getKeywordIndexAsync(String pdfFileName) {
+        KeywordIndex index = keywordIndexRepository.get(pdfFileName);
+        if (index != null) {
+            return CompletableFuture.completedFuture(index);
+        }
+        return getRelevantContextAsync(pdfFileName)
+                .thenApply(context -> context == null ? null : KeywordIndex.of(context));
+    }
+    
+    /**
+     * 增强的关键词评分：答案中的词出现在问题或文档中的比例
+     */
+    private int getEnhancedKeywordScore(String question, String userAnswer, KeywordIndex index) {
+        if (index == null || index.size() == 0) {
             return 0;
         }
         
-        // 提取问题和文档的关键词
-        String[] questionKeywords = extractKeywords(question);
-        String[] contextKeywords = extractKeywords(context);
-        String[] answerKeywords = extractKeywords(userAnswer);
+        Set<String> questionTerms = KeywordIndex.terms(question);
+        Set<String> answerTerms = KeywordIndex.terms(userAnswer);
+        if (answerTerms.isEmpty()) {
+            return 0;
+        }
         
         int matchCount = 0;
-        
-        // 检查答案中是否包含问题或文档的关键词
-        for (String answerKeyword : answerKeywords) {
-            for (String questionKeyword : questionKeywords) {
-                if (answerKeyword.length() > 2 && questionKeyword.length() > 2 && 
-                    answerKeyword.contains(questionKeyword)) {
-                    matchCount++;
-                }
-            }
-            for (String contextKeyword : contextKeywords) {
-                if (answerKeyword.length() > 2 && contextKeyword.length() > 2 && 
-                    answerKeyword.contains(contextKeyword)) {
-                    matchCount++;
-                }
+        for (String term : answerTerms) {
+            if (questionTerms.contains(term) || index.contains(term)) {
+                matchCount++;
             }
         }
         
-        // 根据匹配数量计算分数
-        if (matchCount >= 3) return 3;
-        if (matchCount >= 2) return 2;
+        // 根据匹配数量和比例计算分数
+        double ratio = (double) matchCount / answerTerms.size();
+        if (matchCount >= 3 && ratio >= 0.5) return 3;
+        if (matchCount >= 2 && ratio >= 0.3) return 2;
         if (matchCount >= 1) return 1;
         
         return 0;
@@ -800,45 +1204,66 @@ public class QuizGameServiceImpl implements QuizGameService {
      * 获取相关文档内容
      */
     private String getRelevantContext(String pdfFileName) {
+        StringBuilder contextBuilder = new StringBuilder();
+        for (String term : CONTEXT_SEARCH_TERMS) {
+            contextBuilder.append(searchContext(pdfFileName, term));
+        }
+        return toContext(pdfFileName, contextBuilder);
+    }
+    
+    /**
+     * 在评分线程池中并行检索相关文档内容，结果与{@link #getRelevantContext(String)}相同
+     */
+    private CompletableFuture<String> getRelevantContextAsync(String pdfFileName) {
+        List<CompletableFuture<String>> searches = new ArrayList<>(CONTEXT_SEARCH_TERMS.length);
+        for (String term : CONTEXT_SEARCH_TERMS) {
+            searches.add(CompletableFuture.supplyAsync(() -> searchContext(pdfFileName, term), scoringExecutor));
+        }
+        return CompletableFuture.allOf(searches.toArray(CompletableFuture[]::new))
+                .thenApply(v -> {
+                    // 按关键词顺序拼接
+                    StringBuilder contextBuilder = new StringBuilder();
+                    searches.forEach(search -> contextBuilder.append(search.join()));
+                    return toContext(pdfFileName, contextBuilder);
+                });
+    }
+    
+    /**
+     * 按一个关键词检索文档内容，每个片段截取前200字，检索失败时返回空字符串
+     */
+    private String searchContext(String pdfFileName, String term) {
         try {
-            // 使用多个关键词检索文档内容
-            String[] searchTerms = {"知识", "学习", "内容", "教育", "课程"};
+            SearchRequest request = SearchRequest.builder()
+                    .query(term)
+                    .topK(2)
+                    .similarityThreshold(0.3) // 降低阈值以获取更多结果
+                    .filterExpression("file_name == '" + pdfFileName + "'")
+                    .build();
             
             StringBuilder contextBuilder = new StringBuilder();
-            for (String term : searchTerms) {
-                try {
-                    SearchRequest request = SearchRequest.builder()
-                            .query(term)
-                            .topK(2)
-                            .similarityThreshold(0.3) // 降低阈值以获取更多结果
-                            .filterExpression("file_name == '" + pdfFileName + "'")
-                            .build();
-                    
-                    List<Document> docs = vectorStore.similaritySearch(request);
-                    if (docs != null && !docs.isEmpty()) {
-                        for (Document doc : docs) {
-                            String content = doc.getText(); // 使用getText()方法
-                            if (content != null && content.length() > 50) {
-                                contextBuilder.append(content.substring(0, Math.min(200, content.length())))
-                                             .append("\n");
-                            }
-                        }
+            List<Document> docs = vectorStore.similaritySearch(request);
+            if (docs != null && !docs.isEmpty()) {
+                for (Document doc : docs) {
+                    String content = doc.getText(); // 使用getText()方法
+                    if (content != null && content.length() > 50) {
+                        contextBuilder.append(content.substring(0, Math.min(200, content.length())))
+                                     .append("\n");
                     }
-                } catch (Exception e) {
-                    log.warn("检索关键词 '{}'  失败", term, e);
                 }
             }
-            
-            String result = contextBuilder.toString().trim();
-            log.info("检索相关内容: fileName={}, contextLength={}", pdfFileName, result.length());
-            return result.isEmpty() ? null : result;
-            
+            return contextBuilder.toString();
         } catch (Exception e) {
-            log.warn("获取相关文档内容失败", e);
-            return null;
+            log.warn("检索关键词 '{}'  失败", term, e);
+            return "";
         }
     }
     
+    private String toContext(String pdfFileName, StringBuilder contextBuilder) {
+        String result = contextBuilder.toString().trim();
+        log.info("检索相关内容: fileName={}, contextLength={}", pdfFileName, result.length());
+        return result.isEmpty() ? null : result;
+    }
+    
     /**
      * 根据轮次确定难度
      */
@@ -881,4 +1306,138 @@ public class QuizGameServiceImpl implements QuizGameService {
             this.feedback = feedback;
         }
     }
-}
\ No newline at end of file
+    
+    /**
+     * 一局游戏的预生成任务
+     */
+    private static final class Pregeneration {
+        // 第round轮的问题在下标round-1处，未生成时为null
+        final AtomicReferenceArray<String> questions = new AtomicReferenceArray<>(TOTAL_ROUNDS);
+        final Future<?>[] futures = new Future<?>[TOTAL_ROUNDS];
+        // 抽题和批量生成的后台任务，提交失败时为null
+        volatile Future<?> task;
+        // 各轮已生成的问题，用于去重
+        final QuestionSet usedQuestions;
+        volatile boolean cancelled;
+        
+        Pregeneration(QuestionSet usedQuestions) {
+            this.usedQuestions = usedQuestions;
+        }
+        
+        /**
+         * 整局或该轮的预生成是否已取消
+         */
+        boolean isCancelled(int round) {
+            Future<?> future = futures[round - 1];
+            return cancelled || (future != null && future.isCancelled());
+        }
+    }
+    
+    /**
+     * 批量生成的一道问题
+     */
+    record GeneratedQuestion(
+            @JsonPropertyDescription("难度：简单、中等或困难") String difficulty,
+            @JsonPropertyDescription("问题") String question) {
+    }
+    
+    /**
+     * 一局游戏已出的问题，按问题向量的余弦相似度去重
+     * <p>
+     * 新记录的问题先不计算向量，下次查重时与候选问题一起通过一次向量接口调用计算。
+     * 向量接口不可用时改用关键词重叠度比较。
+     */
+    private static final class QuestionSet {
+        private final EmbeddingModel embeddingModel;
+        private final double similarityThreshold;
+        // 问题 -> 归一化的向量
+        private final Map<String, float[]> vectors = new LinkedHashMap<>();
+        // 尚未计算向量的问题
+        private final List<String> pending = new ArrayList<>();
+        
+        QuestionSet(EmbeddingModel embeddingModel, double similarityThreshold) {
+            this.embeddingModel = embeddingModel;
+            this.similarityThreshold = similarityThreshold;
+        }
+        
+        synchronized boolean contains(String question) {
+            return vectors.containsKey(question) || pending.contains(question);
+        }
+        
+        /**
+         * 记录问题，不做查重
+         */
+        synchronized void add(String question) {
+            if (!contains(question)) {
+                pending.add(question);
+            }
+        }
+        
+        /**
+         * 与已出的问题都不相似时记录该问题。
+         * 远程计算向量时不持有锁，计算完成后在锁内重新检查，期间其他线程记录的问题在下一轮补算向量
+         * @return 是否已记录
+         */
+        boolean addIfDistinct(String question) {
+            float[] vector = null;
+            while (true) {
+                List<String> texts;
+                synchronized (this) {
+                    if (contains(question)) {
+                        return false;
+                    }
+                    if (vector == null && vectors.isEmpty() && pending.isEmpty()) {
+                        pending.add(question);
+                        return true;
+                    }
+                    if (vector != null && pending.isEmpty()) {
+                        for (Map.Entry<String, float[]> entry : vectors.entrySet()) {
+                            float similarity = VectorDistanceUtils.dot(entry.getValue(), vector);
+                            if (similarity >= similarityThreshold) {
+                                log.debug("问题与已出的问题相似: question={}, similar={}, similarity={}", question, entry.getKey(), similarity);
+                                return false;
+                            }
+                        }
+                        vectors.put(question, vector);
+                        return true;
+                    }
+                    texts = new ArrayList<>(pending);
+                }
+                int pendingCount = texts.size();
+                if (vector == null) {
+                    texts.add(question);
+                }
+                List<float[]> normalized = new ArrayList<>(texts.size());
+                try {
+                    for (float[] embedding : embeddingModel.embed(texts)) {
+                        normalized.add(VectorDistanceUtils.normalize(embedding));
+                    }
+                } catch (RuntimeException e) {
+                    log.warn("计算问题向量失败，改用关键词查重: question={}", question, e);
+                    synchronized (this) {
+                        if (contains(question)) {
+                            return false;
+                        }
+                        List<String> questions = new ArrayList<>(vectors.keySet());
+                        questions.addAll(pending);
+                        if (isKeywordSimilar(question, questions)) {
+                            return false;
+                        }
+                        pending.add(question);
+                        return true;
+                    }
+                }
+                synchronized (this) {
+                    for (int i = 0; i < pendingCount; i++) {
+                        if (pending.remove(texts.get(i))) {
+                            vectors.put(texts.get(i), normalized.get(i));
+                        }
+                    }
+                }
+                if (vector == null) {
+                    vector = normalized.get(normalized.size() - 1);
+                }
+            }
+        }
+    }
+}
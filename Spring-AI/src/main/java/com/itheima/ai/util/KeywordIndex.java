@@ -0,0 +1,122 @@
+package com.itheima.ai.util;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
+
+/**
+ * 关键词索引：词 -> 出现次数
+ * <p>
+ * 分词规则：连续的英文字母和数字为一个词(小写，至少2个字符)，连续的汉字按相邻两字切分，
+ * 先去掉常见的提问用语和虚词，其他字符视为分隔符。
+ */
+public class KeywordIndex {
+
+    // 不参与匹配的常见词汇
+    private static final String[] STOP_WORDS = {"为什么", "什么", "如何", "怎样", "哪些", "请", "简述", "解释", "说明",
+            "是", "的", "了", "和", "与", "或", "在", "有", "也", "都", "就", "这", "那", "我", "你", "他", "它"};
+
+    private final Map<String, Integer> frequencies;
+
+    public KeywordIndex(Map<String, Integer> frequencies) {
+        this.frequencies = Collections.unmodifiableMap(new HashMap<>(frequencies));
+    }
+
+    /**
+     * 由一段文本构建索引
+     */
+    public static KeywordIndex of(String text) {
+        return new Builder().add(text).build();
+    }
+
+    /**
+     * 文本中的词，去重并保持出现顺序
+     */
+    public static Set<String> terms(String text) {
+        Set<String> terms = new LinkedHashSet<>();
+        forEachTerm(text, terms::add);
+        return terms;
+    }
+
+    public int frequency(String term) {
+        return frequencies.getOrDefault(term, 0);
+    }
+
+    public boolean contains(String term) {
+        return frequencies.containsKey(term);
+    }
+
+    public int size() {
+        return frequencies.size();
+    }
+
+    public Map<String, Integer> getFrequencies() {
+        return frequencies;
+    }
+
+    private static void forEachTerm(String text, Consumer<String> consumer) {
+        if (text == null) {
+            return;
+        }
+        String cleaned = text.toLowerCase(Locale.ROOT);
+        for (String word : STOP_WORDS) {
+            cleaned = cleaned.replace(word, " ");
+        }
+        int i = 0;
+        while (i < cleaned.length()) {
+            int cp = cleaned.codePointAt(i);
+            if (isHan(cp)) {
+                // 连续汉字按相邻两字切分
+                int end = i;
+                while (end < cleaned.length() && isHan(cleaned.codePointAt(end))) {
+                    end += Character.charCount(cleaned.codePointAt(end));
+                }
+                int prev = -1;
+                for (int j = i; j < end; j += Character.charCount(cleaned.codePointAt(j))) {
+                    if (prev >= 0) {
+                        consumer.accept(cleaned.substring(prev, j + Character.charCount(cleaned.codePointAt(j))));
+                    }
+                    prev = j;
+                }
+                i = end;
+            } else if (Character.isLetterOrDigit(cp)) {
+                int end = i;
+                while (end < cleaned.length() && Character.isLetterOrDigit(cleaned.codePointAt(end))
+                        && !isHan(cleaned.codePointAt(end))) {
+                    end += Character.charCount(cleaned.codePointAt(end));
+                }
+                if (end - i >= 2) {
+                    consumer.accept(cleaned.substring(i, end));
+                }
+                i = end;
+            } else {
+                i += Character.charCount(cp);
+            }
+        }
+    }
+
+    private static boolean isHan(int codePoint) {
+        return Character.UnicodeScript.of(codePoint) == Character.UnicodeScript.HAN;
+    }
+
+    /**
+     * 逐段累加文本，用于边读取边构建
+     */
+    public static class Builder {
+
+        private final Map<String, Integer> frequencies = new HashMap<>();
+
+        public Builder add(String text) {
+            forEachTerm(text, term -> frequencies.merge(term, 1, Integer::sum));
+            return this;
+        }
+
+        public KeywordIndex build() {
+            return new KeywordIndex(frequencies);
+        }
+    }
+}
@@ -0,0 +1,168 @@
+package com.itheima.ai.util;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
+
+/**
+ * 线程安全的LRU缓存，按条目数上限和写入后的存活时间淘汰
+ *
+ * @param <K> 键
+ * @param <V> 值
+ */
+public class LruCache<K, V> {
+
+    private final int maxSize;
+    // 为null表示永不过期
+    private final Duration ttl;
+    private final Clock clock;
+
+    private final LinkedHashMap<K, Entry<V>> entries;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    public LruCache(int maxSize, Duration ttl) {
+        this(maxSize, ttl, Clock.systemUTC());
+    }
+
+    public LruCache(int maxSize, Duration ttl, Clock clock) {
+        if (maxSize <= 0) {
+            throw new IllegalArgumentException("maxSize must be positive");
+        }
+        this.maxSize = maxSize;
+        this.ttl = ttl == null || ttl.isZero() || ttl.isNegative() ? null : ttl;
+        this.clock = clock;
+        // accessOrder=true，最近访问的条目排在末尾
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<K, Entry<V>> eldest) {
+                if (size() > LruCache.this.maxSize) {
+                    evictions.incrementAndGet();
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * 读取缓存，未命中或已过期时返回null
+     */
+    public synchronized V get(K key) {
+        Entry<V> entry = entries.get(key);
+        if (entry == null) {
+            misses.incrementAndGet();
+            return null;
+        }
+        if (isExpired(entry)) {
+            entries.remove(key);
+            evictions.incrementAndGet();
+            misses.incrementAndGet();
+            return null;
+        }
+        hits.incrementAndGet();
+        return entry.value();
+    }
+
+    public synchronized void put(K key, V value) {
+        entries.put(key, new Entry<>(value, clock.millis()));
+    }
+
+    /**
+     * 写入并保留原始写入时间，用于从磁盘恢复
+     */
+    public synchronized void put(K key, V value, long createdAt) {
+        Entry<V> entry = new Entry<>(value, createdAt);
+        if (!isExpired(entry)) {
+            entries.put(key, entry);
+        }
+    }
+
+    public synchronized V remove(K key) {
+        Entry<V> entry = entries.remove(key);
+        return entry == null ? null : entry.value();
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * 清理已过期的条目
+     * @return 清理的条目数
+     */
+    public synchronized int evictExpired() {
+        if (ttl == null) {
+            return 0;
+        }
+        int removed = 0;
+        Iterator<Entry<V>> iterator = entries.values().iterator();
+        while (iterator.hasNext()) {
+            if (isExpired(iterator.next())) {
+                iterator.remove();
+                removed++;
+            }
+        }
+        evictions.addAndGet(removed);
+        return removed;
+    }
+
+    /**
+     * 按从旧到新的访问顺序遍历未过期的条目快照
+     * @param consumer 接收键、值和写入时间(毫秒)
+     */
+    public void forEach(EntryConsumer<K, V> consumer) {
+        List<Map.Entry<K, Entry<V>>> snapshot;
+        synchronized (this) {
+            snapshot = new ArrayList<>(entries.entrySet());
+        }
+        for (Map.Entry<K, Entry<V>> e : snapshot) {
+            if (!isExpired(e.getValue())) {
+                consumer.accept(e.getKey(), e.getValue().value(), e.getValue().createdAt());
+            }
+        }
+    }
+
+    /**
+     * 遍历未过期的键值
+     */
+    public void forEach(BiConsumer<K, V> consumer) {
+        forEach((key, value, createdAt) -> consumer.accept(key, value));
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    public long getEvictions() {
+        return evictions.get();
+    }
+
+    private boolean isExpired(Entry<V> entry) {
+        return ttl != null && clock.millis() - entry.createdAt() > ttl.toMillis();
+    }
+
+    private record Entry<V>(V value, long createdAt) {
+    }
+
+    @FunctionalInterface
+    public interface EntryConsumer<K, V> {
+        void accept(K key, V value, long createdAt);
+    }
+}
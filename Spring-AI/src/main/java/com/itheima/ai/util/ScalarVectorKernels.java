@@ -0,0 +1,37 @@
+package com.itheima.ai.util;
+
+import java.nio.ByteBuffer;
+
+/**
+ * 标量实现，未启用jdk.incubator.vector模块时使用
+ */
+final class ScalarVectorKernels implements VectorKernels {
+
+    @Override
+    public float dot(float[] a, int aOffset, float[] b, int bOffset, int length) {
+        float sum = 0f;
+        for (int i = 0; i < length; i++) {
+            sum += a[aOffset + i] * b[bOffset + i];
+        }
+        return sum;
+    }
+
+    @Override
+    public float squaredDistance(float[] a, int aOffset, float[] b, int bOffset, int length) {
+        float sum = 0f;
+        for (int i = 0; i < length; i++) {
+            float diff = a[aOffset + i] - b[bOffset + i];
+            sum += diff * diff;
+        }
+        return sum;
+    }
+
+    @Override
+    public float dot(ByteBuffer buffer, int byteOffset, float[] query) {
+        float sum = 0f;
+        for (int i = 0; i < query.length; i++) {
+            sum += buffer.getFloat(byteOffset + i * Float.BYTES) * query[i];
+        }
+        return sum;
+    }
+}
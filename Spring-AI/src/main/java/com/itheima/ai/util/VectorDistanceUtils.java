@@ -1,5 +1,15 @@
 package com.itheima.ai.util;
 
+import lombok.extern.slf4j.Slf4j;
+
+import java.nio.ByteBuffer;
+
+/**
+ * 向量距离计算
+ * <p>
+ * 启动参数包含--add-modules jdk.incubator.vector时使用SIMD内核，否则使用标量实现。
+ */
+@Slf4j
 public class VectorDistanceUtils {
 
     // 防止实例化
@@ -8,6 +18,8 @@ public class VectorDistanceUtils {
     // 浮点数计算精度阈值
     private static final double EPSILON = 1e-12;
 
+    private static final VectorKernels KERNELS = loadKernels();
+
     /**
      * 计算欧氏距离
      * @param vectorA 向量A(非空且与B等长)
@@ -17,13 +29,7 @@ public class VectorDistanceUtils {
      */
     public static double euclideanDistance(float[] vectorA, float[] vectorB) {
         validateVectors(vectorA, vectorB);
-
-        double sum = 0.0;
-        for (int i = 0; i < vectorA.length; i++) {
-            double diff = vectorA[i] - vectorB[i];
-            sum += diff * diff;
-        }
-        return Math.sqrt(sum);
+        return Math.sqrt(KERNELS.squaredDistance(vectorA, 0, vectorB, 0, vectorA.length));
     }
 
     /**
@@ -36,18 +42,9 @@ public class VectorDistanceUtils {
     public static double cosineDistance(float[] vectorA, float[] vectorB) {
         validateVectors(vectorA, vectorB);
 
-        double dotProduct = 0.0;
-        double normA = 0.0;
-        double normB = 0.0;
-
-        for (int i = 0; i < vectorA.length; i++) {
-            dotProduct += vectorA[i] * vectorB[i];
-            normA += vectorA[i] * vectorA[i];
-            normB += vectorB[i] * vectorB[i];
-        }
-
-        normA = Math.sqrt(normA);
-        normB = Math.sqrt(normB);
+        double dotProduct = KERNELS.dot(vectorA, 0, vectorB, 0, vectorA.length);
+        double normA = norm(vectorA);
+        double normB = norm(vectorB);
 
         // 处理零向量情况
         if (normA < EPSILON || normB < EPSILON) {
@@ -61,6 +58,162 @@ public class VectorDistanceUtils {
         return similarity;
     }
 
+    /**
+     * 计算点积
+     * @param vectorA 向量A(非空且与B等长)
+     * @param vectorB 向量B(非空且与A等长)
+     * @return 点积，向量已归一化时即为余弦相似度
+     */
+    public static float dot(float[] vectorA, float[] vectorB) {
+        validateVectors(vectorA, vectorB);
+        return KERNELS.dot(vectorA, 0, vectorB, 0, vectorA.length);
+    }
+
+    /**
+     * 计算小端float32缓冲区中一行与查询向量的点积，用于内存映射的向量文件
+     * @param buffer 字节序为小端的缓冲区
+     * @param byteOffset 行起始的字节偏移
+     * @param query 查询向量
+     */
+    public static float dot(ByteBuffer buffer, int byteOffset, float[] query) {
+        return KERNELS.dot(buffer, byteOffset, query);
+    }
+
+    /**
+     * 计算向量的L2范数
+     */
+    public static float norm(float[] vector) {
+        return (float) Math.sqrt(KERNELS.dot(vector, 0, vector, 0, vector.length));
+    }
+
+    /**
+     * 归一化为单位向量，归一化后的点积即为余弦相似度
+     * @return 新的向量，不修改参数
+     * @throws IllegalArgumentException 零向量时抛出
+     */
+    public static float[] normalize(float[] vector) {
+        double norm = Math.sqrt(KERNELS.dot(vector, 0, vector, 0, vector.length));
+        if (norm < EPSILON) {
+            throw new IllegalArgumentException("Vectors cannot be zero vectors");
+        }
+        float[] normalized = new float[vector.length];
+        for (int i = 0; i < vector.length; i++) {
+            normalized[i] = (float) (vector[i] / norm);
+        }
+        return normalized;
+    }
+
+    /**
+     * 预先计算矩阵每一行的L2范数
+     * @param matrix 按行连续存放的矩阵
+     * @param dimensions 每行的维度
+     * @return 每一行的范数
+     */
+    public static float[] norms(float[] matrix, int dimensions) {
+        validateMatrix(matrix, dimensions);
+        float[] norms = new float[matrix.length / dimensions];
+        for (int row = 0, offset = 0; row < norms.length; row++, offset += dimensions) {
+            norms[row] = (float) Math.sqrt(KERNELS.dot(matrix, offset, matrix, offset, dimensions));
+        }
+        return norms;
+    }
+
+    /**
+     * 批量计算查询向量与矩阵每一行的点积
+     * @param query 查询向量
+     * @param matrix 按行连续存放的矩阵，每行与query等长
+     * @return 每一行的点积
+     */
+    public static float[] batchDot(float[] query, float[] matrix) {
+        validateMatrix(matrix, query.length);
+        int dimensions = query.length;
+        float[] scores = new float[matrix.length / dimensions];
+        for (int row = 0, offset = 0; row < scores.length; row++, offset += dimensions) {
+            scores[row] = KERNELS.dot(query, 0, matrix, offset, dimensions);
+        }
+        return scores;
+    }
+
+    /**
+     * 批量计算查询向量与矩阵每一行的余弦相似度
+     * @param query 查询向量(非零)
+     * @param matrix 按行连续存放的矩阵，每行与query等长
+     * @param norms 由{@link #norms(float[], int)}预先计算的行范数
+     * @return 每一行的余弦相似度，范围[-1,1]；零向量行为0
+     */
+    public static float[] batchCosineSimilarity(float[] query, float[] matrix, float[] norms) {
+        validateMatrix(matrix, query.length);
+        int dimensions = query.length;
+        if (norms.length != matrix.length / dimensions) {
+            throw new IllegalArgumentException("Norms must match matrix rows");
+        }
+        float queryNorm = norm(query);
+        if (queryNorm < EPSILON) {
+            throw new IllegalArgumentException("Vectors cannot be zero vectors");
+        }
+        float[] scores = new float[norms.length];
+        for (int row = 0, offset = 0; row < scores.length; row++, offset += dimensions) {
+            if (norms[row] < EPSILON) {
+                continue;
+            }
+            float similarity = KERNELS.dot(query, 0, matrix, offset, dimensions) / (queryNorm * norms[row]);
+            scores[row] = Math.max(Math.min(similarity, 1f), -1f);
+        }
+        return scores;
+    }
+
+    /**
+     * 批量计算查询向量与矩阵每一行的欧氏距离
+     * @param query 查询向量
+     * @param matrix 按行连续存放的矩阵，每行与query等长
+     * @return 每一行的欧氏距离
+     */
+    public static float[] batchEuclideanDistance(float[] query, float[] matrix) {
+        validateMatrix(matrix, query.length);
+        int dimensions = query.length;
+        float[] distances = new float[matrix.length / dimensions];
+        for (int row = 0, offset = 0; row < distances.length; row++, offset += dimensions) {
+            distances[row] = (float) Math.sqrt(KERNELS.squaredDistance(query, 0, matrix, offset, dimensions));
+        }
+        return distances;
+    }
+
+    /**
+     * 当前是否使用SIMD内核
+     */
+    public static boolean isSimdEnabled() {
+        return !(KERNELS instanceof ScalarVectorKernels);
+    }
+
+    private static VectorKernels loadKernels() {
+        if (ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent()) {
+            try {
+                VectorKernels kernels = (VectorKernels) Class.forName("com.itheima.ai.util.SimdVectorKernels")
+                        .getDeclaredConstructor()
+                        .newInstance();
+                // 孵化API在不同JDK版本间有变化，先试算一次，失败时回退
+                float[] probe = {1f, 2f, 3f};
+                kernels.dot(probe, 0, probe, 0, probe.length);
+                kernels.squaredDistance(probe, 0, probe, 0, probe.length);
+                kernels.dot(ByteBuffer.allocate(probe.length * Float.BYTES), 0, probe);
+                log.info("向量计算使用SIMD内核");
+                return kernels;
+            } catch (Throwable e) {
+                log.warn("SIMD内核加载失败，使用标量实现: {}", e.toString());
+            }
+        }
+        return new ScalarVectorKernels();
+    }
+
+    private static void validateMatrix(float[] matrix, int dimensions) {
+        if (matrix == null) {
+            throw new IllegalArgumentException("Matrix cannot be null");
+        }
+        if (dimensions <= 0 || matrix.length % dimensions != 0) {
+            throw new IllegalArgumentException("Matrix length must be a multiple of dimensions");
+        }
+    }
+
     // 参数校验统一方法
     private static void validateVectors(float[] a, float[] b) {
         if (a == null || b == null) {
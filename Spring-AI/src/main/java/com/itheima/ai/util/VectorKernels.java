@@ -0,0 +1,24 @@
+package com.itheima.ai.util;
+
+import java.nio.ByteBuffer;
+
+/**
+ * 向量计算内核，由{@link VectorDistanceUtils}按运行环境选择SIMD或标量实现
+ */
+interface VectorKernels {
+
+    /**
+     * 点积 a[aOffset..aOffset+length) · b[bOffset..bOffset+length)
+     */
+    float dot(float[] a, int aOffset, float[] b, int bOffset, int length);
+
+    /**
+     * 欧氏距离的平方
+     */
+    float squaredDistance(float[] a, int aOffset, float[] b, int bOffset, int length);
+
+    /**
+     * 小端float32缓冲区中从byteOffset开始的一行与query的点积
+     */
+    float dot(ByteBuffer buffer, int byteOffset, float[] query);
+}
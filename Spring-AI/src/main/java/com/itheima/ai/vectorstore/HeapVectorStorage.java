@@ -0,0 +1,35 @@
+package com.itheima.ai.vectorstore;
+
+import com.itheima.ai.util.VectorDistanceUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 堆内向量存储，不做持久化
+ */
+public class HeapVectorStorage implements VectorStorage {
+
+    private final List<float[]> rows = new ArrayList<>();
+
+    @Override
+    public int size() {
+        return rows.size();
+    }
+
+    @Override
+    public int append(float[] vector) {
+        rows.add(vector);
+        return rows.size() - 1;
+    }
+
+    @Override
+    public float[] get(int row) {
+        return rows.get(row).clone();
+    }
+
+    @Override
+    public float dot(int row, float[] query) {
+        return VectorDistanceUtils.dot(rows.get(row), query);
+    }
+}
@@ -0,0 +1,389 @@
+package com.itheima.ai.vectorstore;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Random;
+import java.util.function.IntPredicate;
+
+/**
+ * HNSW(Hierarchical Navigable Small World)近似最近邻图索引
+ * <p>
+ * 节点只保存向量在{@link VectorStorage}中的行号，向量须已归一化，节点间相似度即点积(余弦相似度)。
+ * 本类不是线程安全的，并发访问由调用方加锁保证。
+ */
+public class HnswIndex {
+
+    /**
+     * 检索结果：节点编号与相似度
+     */
+    public record Candidate(int node, float similarity) {
+    }
+
+    private static final Comparator<Candidate> NEAREST_FIRST =
+            Comparator.comparingDouble(Candidate::similarity).reversed();
+
+    private static final Comparator<Candidate> FARTHEST_FIRST =
+            Comparator.comparingDouble(Candidate::similarity);
+
+    // 每层最大连接数，第0层为其2倍
+    private final int m;
+    private final int maxM0;
+    private final int efConstruction;
+    // 层数生成因子 1/ln(M)
+    private final double levelMultiplier;
+    private final Random random;
+    private final VectorStorage storage;
+
+    private final List<Node> nodes = new ArrayList<>();
+    private final BitSet deleted = new BitSet();
+
+    private int entryPoint = -1;
+    private int maxLevel = -1;
+
+    public HnswIndex(int m, int efConstruction, VectorStorage storage) {
+        this(m, efConstruction, storage, new Random(42));
+    }
+
+    public HnswIndex(int m, int efConstruction, VectorStorage storage, Random random) {
+        if (m < 2) {
+            throw new IllegalArgumentException("M must be at least 2");
+        }
+        if (efConstruction < 1) {
+            throw new IllegalArgumentException("efConstruction must be positive");
+        }
+        this.m = m;
+        this.maxM0 = m * 2;
+        this.efConstruction = efConstruction;
+        this.levelMultiplier = 1 / Math.log(m);
+        this.random = random;
+        this.storage = storage;
+    }
+
+    /**
+     * 插入存储中的一行向量
+     * @param row 向量在存储中的行号
+     * @return 节点编号
+     */
+    public int add(int row) {
+        float[] vector = storage.get(row);
+        int level = randomLevel();
+        int node = nodes.size();
+        nodes.add(new Node(row, level, m, maxM0));
+
+        if (entryPoint < 0) {
+            entryPoint = node;
+            maxLevel = level;
+            return node;
+        }
+
+        // 1.从顶层贪心下降到新节点所在的最高层
+        int current = entryPoint;
+        float currentSimilarity = similarity(vector, current);
+        for (int l = maxLevel; l > level; l--) {
+            Candidate nearest = greedySearch(vector, current, currentSimilarity, l);
+            current = nearest.node();
+            currentSimilarity = nearest.similarity();
+        }
+
+        // 2.在每一层查找近邻并双向连接
+        List<Candidate> entryPoints = new ArrayList<>();
+        entryPoints.add(new Candidate(current, currentSimilarity));
+        for (int l = Math.min(level, maxLevel); l >= 0; l--) {
+            List<Candidate> found = searchLayer(vector, entryPoints, efConstruction, l);
+            List<Candidate> neighbours = selectNeighbours(found, l == 0 ? maxM0 : m);
+            Node newNode = nodes.get(node);
+            for (Candidate neighbour : neighbours) {
+                newNode.link(l, neighbour.node());
+                connect(neighbour.node(), node, neighbour.similarity(), l);
+            }
+            entryPoints = found;
+        }
+
+        if (level > maxLevel) {
+            maxLevel = level;
+            entryPoint = node;
+        }
+        return node;
+    }
+
+    /**
+     * 标记删除，节点仍参与图的导航，但不会出现在检索结果中
+     */
+    public void markDeleted(int node) {
+        deleted.set(node);
+    }
+
+    public boolean isDeleted(int node) {
+        return deleted.get(node);
+    }
+
+    /**
+     * 节点对应的存储行号
+     */
+    public int row(int node) {
+        return nodes.get(node).row;
+    }
+
+    /**
+     * 节点与查询向量的相似度
+     */
+    public float similarity(float[] query, int node) {
+        return storage.dot(nodes.get(node).row, query);
+    }
+
+    /**
+     * 节点总数(包含已删除节点)
+     */
+    public int size() {
+        return nodes.size();
+    }
+
+    /**
+     * 未删除的节点数
+     */
+    public int liveSize() {
+        return nodes.size() - deleted.cardinality();
+    }
+
+    /**
+     * 近似最近邻检索
+     * @param query 已归一化的查询向量
+     * @param ef 检索时的候选集大小，越大召回越高
+     * @param accept 结果过滤条件，不满足的节点只用于导航
+     * @return 按相似度从高到低排序的结果
+     */
+    public List<Candidate> search(float[] query, int ef, IntPredicate accept) {
+        if (entryPoint < 0) {
+            return List.of();
+        }
+        int current = entryPoint;
+        float currentSimilarity = similarity(query, current);
+        for (int l = maxLevel; l > 0; l--) {
+            Candidate nearest = greedySearch(query, current, currentSimilarity, l);
+            current = nearest.node();
+            currentSimilarity = nearest.similarity();
+        }
+        List<Candidate> found = searchLayer(query, List.of(new Candidate(current, currentSimilarity)), ef, 0);
+        List<Candidate> results = new ArrayList<>(found.size());
+        for (Candidate candidate : found) {
+            if (!deleted.get(candidate.node()) && accept.test(candidate.node())) {
+                results.add(candidate);
+            }
+        }
+        return results;
+    }
+
+    private Candidate greedySearch(float[] query, int start, float startSimilarity, int level) {
+        int current = start;
+        float best = startSimilarity;
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            Node node = nodes.get(current);
+            int[] neighbours = node.neighbours[level];
+            for (int i = 0; i < node.sizes[level]; i++) {
+                float s = similarity(query, neighbours[i]);
+                if (s > best) {
+                    best = s;
+                    current = neighbours[i];
+                    changed = true;
+                }
+            }
+        }
+        return new Candidate(current, best);
+    }
+
+    /**
+     * 在单层内做best-first检索，返回按相似度降序排列的至多ef个节点
+     */
+    private List<Candidate> searchLayer(float[] query, List<Candidate> entryPoints, int ef, int level) {
+        BitSet visited = new BitSet(nodes.size());
+        PriorityQueue<Candidate> candidates = new PriorityQueue<>(NEAREST_FIRST);
+        PriorityQueue<Candidate> results = new PriorityQueue<>(FARTHEST_FIRST);
+        for (Candidate ep : entryPoints) {
+            if (!visited.get(ep.node())) {
+                visited.set(ep.node());
+                candidates.add(ep);
+                results.add(ep);
+                if (results.size() > ef) {
+                    results.poll();
+                }
+            }
+        }
+
+        while (!candidates.isEmpty()) {
+            Candidate closest = candidates.poll();
+            if (results.size() >= ef && closest.similarity() < results.peek().similarity()) {
+                break;
+            }
+            Node node = nodes.get(closest.node());
+            if (node.level < level) {
+                continue;
+            }
+            int[] neighbours = node.neighbours[level];
+            for (int i = 0; i < node.sizes[level]; i++) {
+                int neighbour = neighbours[i];
+                if (visited.get(neighbour)) {
+                    continue;
+                }
+                visited.set(neighbour);
+                float s = similarity(query, neighbour);
+                if (results.size() < ef || s > results.peek().similarity()) {
+                    Candidate candidate = new Candidate(neighbour, s);
+                    candidates.add(candidate);
+                    results.add(candidate);
+                    if (results.size() > ef) {
+                        results.poll();
+                    }
+                }
+            }
+        }
+
+        List<Candidate> sorted = new ArrayList<>(results);
+        sorted.sort(NEAREST_FIRST);
+        return sorted;
+    }
+
+    /**
+     * 启发式选择邻居：候选与已选邻居的距离比与查询点更近时跳过，以保持图的连通性和多样性
+     */
+    private List<Candidate> selectNeighbours(List<Candidate> sortedCandidates, int max) {
+        if (sortedCandidates.size() <= max) {
+            return sortedCandidates;
+        }
+        List<Candidate> selected = new ArrayList<>(max);
+        List<Candidate> discarded = new ArrayList<>();
+        for (Candidate candidate : sortedCandidates) {
+            if (selected.size() >= max) {
+                break;
+            }
+            float[] vector = storage.get(nodes.get(candidate.node()).row);
+            boolean diverse = true;
+            for (Candidate chosen : selected) {
+                if (similarity(vector, chosen.node()) > candidate.similarity()) {
+                    diverse = false;
+                    break;
+                }
+            }
+            if (diverse) {
+                selected.add(candidate);
+            } else {
+                discarded.add(candidate);
+            }
+        }
+        // 保留被裁剪的连接，补足邻居数
+        for (int i = 0; i < discarded.size() && selected.size() < max; i++) {
+            selected.add(discarded.get(i));
+        }
+        return selected;
+    }
+
+    private void connect(int from, int to, float similarity, int level) {
+        Node node = nodes.get(from);
+        int max = level == 0 ? maxM0 : m;
+        if (node.sizes[level] < max) {
+            node.link(level, to);
+            return;
+        }
+        // 邻居已满，重新选择
+        float[] vector = storage.get(node.row);
+        List<Candidate> candidates = new ArrayList<>(max + 1);
+        candidates.add(new Candidate(to, similarity));
+        for (int i = 0; i < node.sizes[level]; i++) {
+            int neighbour = node.neighbours[level][i];
+            candidates.add(new Candidate(neighbour, similarity(vector, neighbour)));
+        }
+        candidates.sort(NEAREST_FIRST);
+        List<Candidate> selected = selectNeighbours(candidates, max);
+        node.sizes[level] = 0;
+        for (Candidate candidate : selected) {
+            node.link(level, candidate.node());
+        }
+    }
+
+    private int randomLevel() {
+        return (int) (-Math.log(1 - random.nextDouble()) * levelMultiplier);
+    }
+
+    public int getM() {
+        return m;
+    }
+
+    public int getEfConstruction() {
+        return efConstruction;
+    }
+
+    /**
+     * 序列化图结构(不含向量)，构建参数一并写入，邻居数组的容量由M决定
+     */
+    public void writeTo(DataOutput out) throws IOException {
+        out.writeInt(m);
+        out.writeInt(efConstruction);
+        out.writeInt(nodes.size());
+        out.writeInt(entryPoint);
+        out.writeInt(maxLevel);
+        for (int i = 0; i < nodes.size(); i++) {
+            Node node = nodes.get(i);
+            out.writeInt(node.row);
+            out.writeInt(node.level);
+            out.writeBoolean(deleted.get(i));
+            for (int l = 0; l <= node.level; l++) {
+                out.writeInt(node.sizes[l]);
+                for (int j = 0; j < node.sizes[l]; j++) {
+                    out.writeInt(node.neighbours[l][j]);
+                }
+            }
+        }
+    }
+
+    /**
+     * 反序列化图结构，按文件中记录的构建参数恢复，向量从storage中按行号读取
+     */
+    public static HnswIndex readFrom(DataInput in, VectorStorage storage) throws IOException {
+        HnswIndex index = new HnswIndex(in.readInt(), in.readInt(), storage);
+        int size = in.readInt();
+        index.entryPoint = in.readInt();
+        index.maxLevel = in.readInt();
+        for (int i = 0; i < size; i++) {
+            Node node = new Node(in.readInt(), in.readInt(), index.m, index.maxM0);
+            if (in.readBoolean()) {
+                index.deleted.set(i);
+            }
+            for (int l = 0; l <= node.level; l++) {
+                int count = in.readInt();
+                for (int j = 0; j < count; j++) {
+                    node.link(l, in.readInt());
+                }
+            }
+            index.nodes.add(node);
+        }
+        return index;
+    }
+
+    private static final class Node {
+        final int row;
+        final int level;
+        final int[][] neighbours;
+        final int[] sizes;
+
+        Node(int row, int level, int m, int maxM0) {
+            this.row = row;
+            this.level = level;
+            this.neighbours = new int[level + 1][];
+            this.sizes = new int[level + 1];
+            for (int l = 0; l <= level; l++) {
+                neighbours[l] = new int[l == 0 ? maxM0 : m];
+            }
+        }
+
+        void link(int level, int neighbour) {
+            neighbours[level][sizes[level]++] = neighbour;
+        }
+    }
+}
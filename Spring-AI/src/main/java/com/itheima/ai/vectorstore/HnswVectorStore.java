@@ -0,0 +1,868 @@
+package com.itheima.ai.vectorstore;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.json.JsonMapper;
+import com.itheima.ai.util.VectorDistanceUtils;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.document.DocumentMetadata;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.ai.observation.conventions.VectorStoreProvider;
+import org.springframework.ai.observation.conventions.VectorStoreSimilarityMetric;
+import org.springframework.ai.util.JacksonUtils;
+import org.springframework.ai.vectorstore.AbstractVectorStoreBuilder;
+import org.springframework.ai.vectorstore.SearchRequest;
+import org.springframework.ai.vectorstore.SimpleVectorStoreContent;
+import org.springframework.ai.vectorstore.filter.Filter;
+import org.springframework.ai.vectorstore.filter.converter.SimpleVectorStoreFilterExpressionConverter;
+import org.springframework.ai.vectorstore.observation.AbstractObservationVectorStore;
+import org.springframework.ai.vectorstore.observation.VectorStoreObservationContext;
+import org.springframework.core.io.Resource;
+import org.springframework.expression.Expression;
+import org.springframework.expression.spel.standard.SpelExpressionParser;
+import org.springframework.expression.spel.support.StandardEvaluationContext;
+import org.springframework.util.Assert;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Predicate;
+
+/**
+ * 基于HNSW图索引的内存向量库，用于替代暴力扫描的SimpleVectorStore
+ * <p>
+ * 文档按分区元数据(默认file_name)划分为互相独立的图索引，过滤条件能确定分区时只检索对应分区。
+ * <p>
+ * 配置了storagePath时，向量保存在内存映射的二进制文件(.vec)中，文本和元数据保存在JSON Lines文件(.meta)中，
+ * 图结构保存在.hnsw文件中，启动时直接映射而无需解析和重建。
+ * 每批写入和删除先追加到.wal日志再生效，{@link #save()}时合并到主文件并清空日志，启动时只需重放日志尾部。
+ * 删除和重新上传只把旧行标记为删除，已删除的行多于存活的行时，{@link #save()}只保留存活的行重写文件并重建图索引。
+ */
+@Slf4j
+public class HnswVectorStore extends AbstractObservationVectorStore {
+
+    private final ObjectMapper objectMapper = JsonMapper.builder()
+            .addModules(JacksonUtils.instantiateAvailableModules())
+            .build();
+
+    private final SpelExpressionParser expressionParser = new SpelExpressionParser();
+
+    private final SimpleVectorStoreFilterExpressionConverter filterExpressionConverter =
+            new SimpleVectorStoreFilterExpressionConverter();
+
+    // 第2版起每个分区记录M和efConstruction
+    private static final int GRAPH_MAGIC = 0x484E5332; // "HNS2"
+
+    // 日志记录类型
+    private static final byte LOG_ADD = 1;
+    private static final byte LOG_DELETE = 2;
+
+    private static final Comparator<Hit> HIT_ORDER = Comparator.comparingDouble(Hit::similarity).reversed();
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private final int m;
+    private final int efConstruction;
+    private final int efSearch;
+    private final int embeddingBatchSize;
+    private final String partitionKey;
+    private final Path storagePath;
+    private final boolean syncWrites;
+    private final long maxPendingBytes;
+
+    private VectorStorage storage;
+    private WriteAheadLog writeAheadLog;
+    // 存储行号 -> 文档，已删除的行在重启后为null
+    private List<StoredDocument> rows = new ArrayList<>();
+    // 分区值 -> 分区，没有分区元数据的文档放在空字符串分区
+    private Map<String, Partition> partitions = new HashMap<>();
+    // 文档ID -> 所在位置
+    private Map<String, Location> locations = new HashMap<>();
+
+    protected HnswVectorStore(Builder builder) {
+        super(builder);
+        this.m = builder.m;
+        this.efConstruction = builder.efConstruction;
+        this.efSearch = builder.efSearch;
+        this.embeddingBatchSize = builder.embeddingBatchSize;
+        this.partitionKey = builder.partitionKey;
+        this.storagePath = builder.storagePath;
+        this.syncWrites = builder.syncWrites;
+        this.maxPendingBytes = builder.maxPendingBytes;
+        if (storagePath == null) {
+            this.storage = new HeapVectorStorage();
+        } else {
+            load();
+        }
+    }
+
+    public static Builder builder(EmbeddingModel embeddingModel) {
+        return new Builder(embeddingModel);
+    }
+
+    @Override
+    public void doAdd(List<Document> documents) {
+        Assert.notNull(documents, "Documents list cannot be null");
+        if (documents.isEmpty()) {
+            return;
+        }
+        // 1.分批向量化，远程调用不占用写锁
+        List<float[]> embeddings = new ArrayList<>(documents.size());
+        for (int from = 0; from < documents.size(); from += embeddingBatchSize) {
+            List<String> texts = documents.subList(from, Math.min(from + embeddingBatchSize, documents.size()))
+                    .stream()
+                    .map(Document::getText)
+                    .toList();
+            embeddings.addAll(embeddingModel.embed(texts));
+        }
+        // 2.写日志后写入图索引
+        lock.writeLock().lock();
+        try {
+            logAdd(documents, embeddings);
+            for (int i = 0; i < documents.size(); i++) {
+                Document document = documents.get(i);
+                insert(document.getId(), document.getText(), document.getMetadata(), embeddings.get(i));
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+        log.debug("HNSW向量库写入文档: count={}", documents.size());
+    }
+
+    @Override
+    public void doDelete(List<String> idList) {
+        lock.writeLock().lock();
+        try {
+            logDelete(idList.stream().filter(locations::containsKey).toList());
+            for (String id : idList) {
+                Location location = locations.remove(id);
+                if (location != null) {
+                    location.partition().index.markDeleted(location.node());
+                }
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    protected void doDelete(Filter.Expression filterExpression) {
+        Predicate<Map<String, Object>> filter = toPredicate(filterExpression);
+        lock.writeLock().lock();
+        try {
+            List<String> ids = locations.values().stream()
+                    .filter(location -> filter.test(location.document().metadata()))
+                    .map(location -> location.document().id())
+                    .toList();
+            logDelete(ids);
+            for (String id : ids) {
+                Location location = locations.remove(id);
+                location.partition().index.markDeleted(location.node());
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public List<Document> doSimilaritySearch(SearchRequest request) {
+        float[] query = VectorDistanceUtils.normalize(embeddingModel.embed(request.getQuery()));
+        int topK = request.getTopK();
+        Set<String> targetPartitions = null;
+        Predicate<Map<String, Object>> filter = null;
+        if (request.hasFilterExpression()) {
+            Filter.Expression expression = request.getFilterExpression();
+            targetPartitions = resolvePartitions(expression);
+            // 过滤条件只包含分区键时，分区内的文档必然满足条件，无需逐个求值
+            if (targetPartitions == null || !isPartitionOnly(expression)) {
+                filter = toPredicate(expression);
+            }
+        }
+
+        lock.readLock().lock();
+        try {
+            Collection<Partition> searched;
+            if (targetPartitions == null) {
+                searched = partitions.values();
+            } else {
+                searched = new ArrayList<>(targetPartitions.size());
+                for (String value : targetPartitions) {
+                    Partition partition = partitions.get(value);
+                    if (partition != null) {
+                        searched.add(partition);
+                    }
+                }
+            }
+            List<Hit> hits = new ArrayList<>();
+            for (Partition partition : searched) {
+                hits.addAll(partition.search(query, topK, Math.max(efSearch, topK), filter));
+            }
+            hits.sort(HIT_ORDER);
+
+            List<Document> results = new ArrayList<>(Math.min(topK, hits.size()));
+            for (Hit hit : hits) {
+                if (results.size() >= topK || hit.similarity() < request.getSimilarityThreshold()) {
+                    break;
+                }
+                results.add(hit.document().toDocument(hit.similarity()));
+            }
+            return results;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * 当前未删除的文档数
+     */
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return locations.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * 分区内是否有未删除的文档
+     * @param value 分区元数据的值，如文件名
+     */
+    public boolean containsPartition(String value) {
+        lock.readLock().lock();
+        try {
+            Partition partition = partitions.get(value);
+            return partition != null && partition.index.liveSize() > 0;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * 日志中是否有尚未合并到主文件的变更
+     */
+    public boolean hasUncompactedChanges() {
+        lock.readLock().lock();
+        try {
+            return writeAheadLog != null && writeAheadLog.size() > 0;
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to read write-ahead log size", e);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * 合并日志：追加新向量到.vec文件，重写.meta和.hnsw文件后清空.wal日志。未配置storagePath时什么也不做。
+     * 已删除的行多于存活的行时改为压缩，见{@link #compact(BitSet)}
+     */
+    public void save() {
+        if (storagePath == null) {
+            return;
+        }
+        lock.writeLock().lock();
+        try {
+            BitSet live = liveRows();
+            if (rows.size() - live.cardinality() > live.cardinality()) {
+                compact(live);
+            } else {
+                ((MappedVectorStorage) storage).flush();
+                writeMetadata(sibling(".meta"), rows, live);
+            }
+            writeGraph();
+            writeAheadLog.truncate();
+            log.info("HNSW向量库已保存: path={}, rows={}, documents={}", storagePath, rows.size(), locations.size());
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to save vector store to " + storagePath, e);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * 导入SimpleVectorStore格式的JSON文件(旧版本的chat-pdf.json)
+     */
+    public void importJson(Resource resource) {
+        Map<String, SimpleVectorStoreContent> contents;
+        try (InputStream in = resource.getInputStream()) {
+            contents = objectMapper.readValue(in, new TypeReference<LinkedHashMap<String, SimpleVectorStoreContent>>() {
+            });
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to load vector store from " + resource, e);
+        }
+        lock.writeLock().lock();
+        try {
+            for (SimpleVectorStoreContent content : contents.values()) {
+                insert(content.getId(), content.getText(), content.getMetadata(), content.getEmbedding());
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+        log.info("已导入JSON向量库: resource={}, count={}", resource, contents.size());
+    }
+
+    @Override
+    public VectorStoreObservationContext.Builder createObservationContextBuilder(String operationName) {
+        return VectorStoreObservationContext.builder(VectorStoreProvider.SIMPLE.value(), operationName)
+                .collectionName("in-memory-hnsw")
+                .similarityMetric(VectorStoreSimilarityMetric.COSINE.value());
+    }
+
+    // 调用方需持有写锁
+    private void insert(String id, String text, Map<String, Object> metadata, float[] embedding) {
+        Location previous = locations.get(id);
+        if (previous != null) {
+            previous.partition().index.markDeleted(previous.node());
+        }
+        StoredDocument document = new StoredDocument(id, text, Collections.unmodifiableMap(new HashMap<>(metadata)));
+        int row = storage.append(VectorDistanceUtils.normalize(embedding));
+        rows.add(document);
+        Partition partition = partitionOf(document);
+        int node = partition.add(row, document);
+        locations.put(id, new Location(partition, node, document));
+    }
+
+    private Partition partitionOf(StoredDocument document) {
+        Object value = document.metadata().get(partitionKey);
+        return partitions.computeIfAbsent(value == null ? "" : value.toString(),
+                k -> new Partition(new HnswIndex(m, efConstruction, storage)));
+    }
+
+    /**
+     * 只保留存活的行重写.vec和.meta文件，并按新的行号重建图索引，调用方需持有写锁。
+     * 新文件先写到.compact临时文件，都写完后创建.compact标记再替换主文件，替换中途崩溃时启动时按标记继续完成
+     */
+    private void compact(BitSet live) throws IOException {
+        List<StoredDocument> compacted = new ArrayList<>(live.cardinality());
+        // 旧的图文件按旧行号记录节点，先删除，崩溃后启动时按元数据重建
+        Files.deleteIfExists(sibling(".hnsw"));
+        if (live.isEmpty()) {
+            // 没有存活的行时直接删除主文件，崩溃后由日志重放恢复
+            Files.deleteIfExists(sibling(".vec"));
+            Files.deleteIfExists(sibling(".meta"));
+        } else {
+            Path vectors = sibling(".vec.compact");
+            Files.deleteIfExists(vectors);
+            MappedVectorStorage target = MappedVectorStorage.open(vectors, maxPendingBytes);
+            for (int row = live.nextSetBit(0); row >= 0; row = live.nextSetBit(row + 1)) {
+                target.append(storage.get(row));
+                compacted.add(rows.get(row));
+            }
+            target.flush();
+            BitSet all = new BitSet(compacted.size());
+            all.set(0, compacted.size());
+            writeMetadata(sibling(".meta.compact"), compacted, all);
+            Files.write(sibling(".compact"), new byte[0]);
+            finishCompaction();
+        }
+        int dropped = rows.size() - compacted.size();
+        storage = MappedVectorStorage.open(sibling(".vec"), maxPendingBytes);
+        rows = compacted;
+        rebuildGraph();
+        log.info("HNSW向量库已压缩: path={}, rows={}, dropped={}", storagePath, rows.size(), dropped);
+    }
+
+    /**
+     * 完成上次中断的压缩：有标记说明临时文件已完整写入，替换主文件；没有标记时丢弃未写完的临时文件
+     */
+    private void finishCompaction() throws IOException {
+        Path marker = sibling(".compact");
+        Path vectors = sibling(".vec.compact");
+        Path metadata = sibling(".meta.compact");
+        if (!Files.exists(marker)) {
+            Files.deleteIfExists(vectors);
+            Files.deleteIfExists(metadata);
+            return;
+        }
+        if (Files.exists(vectors)) {
+            Files.move(vectors, sibling(".vec"), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+        if (Files.exists(metadata)) {
+            Files.move(metadata, sibling(".meta"), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+        Files.delete(marker);
+    }
+
+    private Path sibling(String extension) {
+        return storagePath.resolveSibling(storagePath.getFileName() + extension);
+    }
+
+    /**
+     * 加载持久化文件：向量只做映射，图结构与向量行数一致时直接恢复，否则按元数据重建
+     */
+    private void load() {
+        try {
+            finishCompaction();
+            storage = MappedVectorStorage.open(sibling(".vec"), maxPendingBytes);
+            readMetadata();
+            if (!readGraph()) {
+                rebuildGraph();
+            }
+            writeAheadLog = WriteAheadLog.open(sibling(".wal"), syncWrites);
+            for (byte[] record : writeAheadLog.recovered()) {
+                replay(record);
+            }
+            if (!writeAheadLog.recovered().isEmpty()) {
+                log.info("已重放向量库日志: path={}, records={}", writeAheadLog.getPath(), writeAheadLog.recovered().size());
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to load vector store from " + storagePath, e);
+        }
+        log.info("HNSW向量库已加载: path={}, rows={}, documents={}, partitions={}",
+                storagePath, rows.size(), locations.size(), partitions.size());
+    }
+
+    // 调用方需持有写锁
+    private void logAdd(List<Document> documents, List<float[]> embeddings) {
+        if (writeAheadLog == null) {
+            return;
+        }
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeByte(LOG_ADD);
+            out.writeInt(documents.size());
+            for (int i = 0; i < documents.size(); i++) {
+                Document document = documents.get(i);
+                writeBytes(out, objectMapper.writeValueAsBytes(
+                        new RowMetadata(document.getId(), document.getText(), document.getMetadata(), false)));
+                float[] embedding = embeddings.get(i);
+                out.writeInt(embedding.length);
+                for (float v : embedding) {
+                    out.writeFloat(v);
+                }
+            }
+            writeAheadLog.append(bytes.toByteArray());
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to write vector store log " + writeAheadLog.getPath(), e);
+        }
+    }
+
+    // 调用方需持有写锁
+    private void logDelete(List<String> ids) {
+        if (writeAheadLog == null || ids.isEmpty()) {
+            return;
+        }
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeByte(LOG_DELETE);
+            out.writeInt(ids.size());
+            for (String id : ids) {
+                writeBytes(out, id.getBytes(StandardCharsets.UTF_8));
+            }
+            writeAheadLog.append(bytes.toByteArray());
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to write vector store log " + writeAheadLog.getPath(), e);
+        }
+    }
+
+    private void replay(byte[] record) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(record));
+        byte type = in.readByte();
+        int count = in.readInt();
+        for (int i = 0; i < count; i++) {
+            if (type == LOG_ADD) {
+                RowMetadata metadata = objectMapper.readValue(readBytes(in), RowMetadata.class);
+                float[] embedding = new float[in.readInt()];
+                for (int d = 0; d < embedding.length; d++) {
+                    embedding[d] = in.readFloat();
+                }
+                insert(metadata.id(), metadata.text(), metadata.metadata(), embedding);
+            } else if (type == LOG_DELETE) {
+                Location location = locations.remove(new String(readBytes(in), StandardCharsets.UTF_8));
+                if (location != null) {
+                    location.partition().index.markDeleted(location.node());
+                }
+            } else {
+                throw new IOException("Unknown log record type " + type);
+            }
+        }
+    }
+
+    private static void writeBytes(DataOutputStream out, byte[] bytes) throws IOException {
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static byte[] readBytes(DataInputStream in) throws IOException {
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return bytes;
+    }
+
+    private void readMetadata() throws IOException {
+        Path path = sibling(".meta");
+        if (Files.exists(path)) {
+            try (BufferedReader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+                String line;
+                while ((line = reader.readLine()) != null && rows.size() < storage.size()) {
+                    RowMetadata metadata = objectMapper.readValue(line, RowMetadata.class);
+                    rows.add(metadata.deleted() ? null
+                            : new StoredDocument(metadata.id(), metadata.text(), Collections.unmodifiableMap(metadata.metadata())));
+                }
+            }
+        }
+        // 向量已落盘但元数据未写入的行(保存前崩溃)还在日志中，丢弃后由日志重放重新写入
+        ((MappedVectorStorage) storage).truncate(rows.size());
+    }
+
+    // 仍被文档引用的存储行，调用方需持有锁
+    private BitSet liveRows() {
+        BitSet live = new BitSet(rows.size());
+        for (Location location : locations.values()) {
+            live.set(location.partition().index.row(location.node()));
+        }
+        return live;
+    }
+
+    private void writeMetadata(Path path, List<StoredDocument> documents, BitSet live) throws IOException {
+        Path temp = path.resolveSibling(path.getFileName() + ".tmp");
+        try (BufferedWriter writer = Files.newBufferedWriter(temp, StandardCharsets.UTF_8)) {
+            for (int row = 0; row < documents.size(); row++) {
+                StoredDocument document = documents.get(row);
+                RowMetadata metadata = live.get(row)
+                        ? new RowMetadata(document.id(), document.text(), document.metadata(), false)
+                        : new RowMetadata(null, null, null, true);
+                writer.write(objectMapper.writeValueAsString(metadata));
+                writer.newLine();
+            }
+        }
+        Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private boolean readGraph() throws IOException {
+        Path path = sibling(".hnsw");
+        if (!Files.exists(path)) {
+            return false;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path)))) {
+            if (in.readInt() != GRAPH_MAGIC || in.readInt() != rows.size()) {
+                log.warn("HNSW图文件与向量文件不一致，重建索引: path={}", path);
+                return false;
+            }
+            int partitionCount = in.readInt();
+            for (int p = 0; p < partitionCount; p++) {
+                String key = in.readUTF();
+                Partition partition = new Partition(HnswIndex.readFrom(in, storage));
+                if (partition.index.getM() != m || partition.index.getEfConstruction() != efConstruction) {
+                    log.warn("HNSW图参数与配置不一致，按配置重建索引: path={}, m={}->{}, efConstruction={}->{}",
+                            path, partition.index.getM(), m, partition.index.getEfConstruction(), efConstruction);
+                    return false;
+                }
+                for (int node = 0; node < partition.index.size(); node++) {
+                    StoredDocument document = rows.get(partition.index.row(node));
+                    partition.documents.add(document);
+                    if (document == null) {
+                        partition.index.markDeleted(node);
+                    } else if (!partition.index.isDeleted(node)) {
+                        locations.put(document.id(), new Location(partition, node, document));
+                    }
+                }
+                partitions.put(key, partition);
+            }
+            return true;
+        }
+    }
+
+    private void rebuildGraph() {
+        partitions.clear();
+        locations.clear();
+        for (int row = 0; row < rows.size(); row++) {
+            StoredDocument document = rows.get(row);
+            if (document == null) {
+                continue;
+            }
+            Location previous = locations.get(document.id());
+            if (previous != null) {
+                previous.partition().index.markDeleted(previous.node());
+            }
+            Partition partition = partitionOf(document);
+            locations.put(document.id(), new Location(partition, partition.add(row, document), document));
+        }
+    }
+
+    private void writeGraph() throws IOException {
+        Path path = sibling(".hnsw");
+        Path temp = sibling(".hnsw.tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+            out.writeInt(GRAPH_MAGIC);
+            out.writeInt(rows.size());
+            out.writeInt(partitions.size());
+            for (Map.Entry<String, Partition> entry : partitions.entrySet()) {
+                out.writeUTF(entry.getKey());
+                entry.getValue().index.writeTo(out);
+            }
+        }
+        Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * 从过滤表达式中解析出需要检索的分区
+     * @return 分区值集合，无法确定时返回null表示检索全部分区
+     */
+    private Set<String> resolvePartitions(Filter.Operand operand) {
+        if (operand instanceof Filter.Group group) {
+            return resolvePartitions(group.content());
+        }
+        if (!(operand instanceof Filter.Expression expression)) {
+            return null;
+        }
+        switch (expression.type()) {
+            case EQ, IN -> {
+                if (!isPartitionKey(expression.left()) || !(expression.right() instanceof Filter.Value value)) {
+                    return null;
+                }
+                Set<String> values = new HashSet<>();
+                if (value.value() instanceof Collection<?> list) {
+                    list.forEach(v -> values.add(String.valueOf(v)));
+                } else {
+                    values.add(String.valueOf(value.value()));
+                }
+                return values;
+            }
+            case AND -> {
+                Set<String> left = resolvePartitions(expression.left());
+                Set<String> right = resolvePartitions(expression.right());
+                if (left == null) {
+                    return right;
+                }
+                if (right != null) {
+                    left.retainAll(right);
+                }
+                return left;
+            }
+            case OR -> {
+                Set<String> left = resolvePartitions(expression.left());
+                Set<String> right = resolvePartitions(expression.right());
+                if (left == null || right == null) {
+                    return null;
+                }
+                left.addAll(right);
+                return left;
+            }
+            default -> {
+                return null;
+            }
+        }
+    }
+
+    private boolean isPartitionOnly(Filter.Expression expression) {
+        return (expression.type() == Filter.ExpressionType.EQ || expression.type() == Filter.ExpressionType.IN)
+                && isPartitionKey(expression.left());
+    }
+
+    private boolean isPartitionKey(Filter.Operand operand) {
+        if (!(operand instanceof Filter.Key key)) {
+            return false;
+        }
+        String name = key.key();
+        if (name.length() > 1 && (name.startsWith("'") || name.startsWith("\""))) {
+            name = name.substring(1, name.length() - 1);
+        }
+        return partitionKey.equals(name);
+    }
+
+    /**
+     * 将过滤表达式转换为SpEL并只解析一次，避免SimpleVectorStore对每个文档重复解析
+     */
+    private Predicate<Map<String, Object>> toPredicate(Filter.Expression filterExpression) {
+        Expression expression = expressionParser.parseExpression(
+                filterExpressionConverter.convertExpression(filterExpression));
+        return metadata -> {
+            StandardEvaluationContext context = new StandardEvaluationContext();
+            context.setVariable("metadata", metadata);
+            return Boolean.TRUE.equals(expression.getValue(context, Boolean.class));
+        };
+    }
+
+    /**
+     * 单个分区：一张独立的图索引及其文档
+     */
+    private static final class Partition {
+        final HnswIndex index;
+        // 节点编号 -> 文档
+        final List<StoredDocument> documents = new ArrayList<>();
+
+        Partition(HnswIndex index) {
+            this.index = index;
+        }
+
+        int add(int row, StoredDocument document) {
+            int node = index.add(row);
+            documents.add(document);
+            return node;
+        }
+
+        /**
+         * 检索本分区
+         * @param filter 额外的元数据过滤条件，为null表示不过滤
+         * @return 按相似度降序排列的至多topK个结果
+         */
+        List<Hit> search(float[] query, int topK, int ef, Predicate<Map<String, Object>> filter) {
+            // 分区规模不超过候选集时，精确扫描比走图更快且无召回损失
+            if (index.liveSize() <= ef) {
+                return exactSearch(query, topK, filter);
+            }
+            List<HnswIndex.Candidate> candidates = index.search(query, ef,
+                    node -> filter == null || filter.test(documents.get(node).metadata()));
+            // 过滤条件命中的文档太少时，图检索可能漏召回，退化为精确扫描
+            if (candidates.size() < topK && filter != null) {
+                return exactSearch(query, topK, filter);
+            }
+            List<Hit> hits = new ArrayList<>(Math.min(topK, candidates.size()));
+            for (int i = 0; i < candidates.size() && i < topK; i++) {
+                HnswIndex.Candidate candidate = candidates.get(i);
+                hits.add(new Hit(documents.get(candidate.node()), candidate.similarity()));
+            }
+            return hits;
+        }
+
+        private List<Hit> exactSearch(float[] query, int topK, Predicate<Map<String, Object>> filter) {
+            List<Hit> hits = new ArrayList<>();
+            for (int node = 0; node < index.size(); node++) {
+                StoredDocument document = documents.get(node);
+                if (index.isDeleted(node) || (filter != null && !filter.test(document.metadata()))) {
+                    continue;
+                }
+                hits.add(new Hit(document, index.similarity(query, node)));
+            }
+            hits.sort(HIT_ORDER);
+            return hits.size() > topK ? hits.subList(0, topK) : hits;
+        }
+    }
+
+    private record Location(Partition partition, int node, StoredDocument document) {
+    }
+
+    private record Hit(StoredDocument document, float similarity) {
+    }
+
+    /**
+     * .meta文件中的一行
+     */
+    record RowMetadata(String id, String text, Map<String, Object> metadata, boolean deleted) {
+    }
+
+    private record StoredDocument(String id, String text, Map<String, Object> metadata) {
+
+        Document toDocument(float score) {
+            Map<String, Object> metadata = new HashMap<>(this.metadata);
+            metadata.put(DocumentMetadata.DISTANCE.value(), 1.0 - score);
+            return Document.builder().id(id).text(text).metadata(metadata).score((double) score).build();
+        }
+    }
+
+    public static final class Builder extends AbstractVectorStoreBuilder<Builder> {
+
+        private int m = 16;
+        private int efConstruction = 200;
+        private int efSearch = 64;
+        private int embeddingBatchSize = 10;
+        private String partitionKey = "file_name";
+        private Path storagePath;
+        private boolean syncWrites = true;
+        private long maxPendingBytes = 16L << 20;
+
+        private Builder(EmbeddingModel embeddingModel) {
+            super(embeddingModel);
+        }
+
+        /**
+         * 每个节点每层的最大连接数，越大召回越高、内存占用越大
+         */
+        public Builder m(int m) {
+            this.m = m;
+            return this;
+        }
+
+        /**
+         * 构建索引时的候选集大小，越大图质量越高、写入越慢
+         */
+        public Builder efConstruction(int efConstruction) {
+            this.efConstruction = efConstruction;
+            return this;
+        }
+
+        /**
+         * 检索时的候选集大小，越大召回越高、检索越慢
+         */
+        public Builder efSearch(int efSearch) {
+            this.efSearch = efSearch;
+            return this;
+        }
+
+        /**
+         * 单次向量化请求的文本数，DashScope的text-embedding-v3每批最多10条
+         */
+        public Builder embeddingBatchSize(int embeddingBatchSize) {
+            Assert.isTrue(embeddingBatchSize > 0, "embeddingBatchSize must be positive");
+            this.embeddingBatchSize = embeddingBatchSize;
+            return this;
+        }
+
+        /**
+         * 用于划分图索引的元数据键
+         */
+        public Builder partitionKey(String partitionKey) {
+            Assert.hasText(partitionKey, "partitionKey must not be empty");
+            this.partitionKey = partitionKey;
+            return this;
+        }
+
+        /**
+         * 持久化文件的路径前缀，如chat-pdf对应chat-pdf.vec、chat-pdf.meta、chat-pdf.hnsw；
+         * 不设置时只保存在堆内存中
+         */
+        public Builder storagePath(Path storagePath) {
+            this.storagePath = storagePath;
+            return this;
+        }
+
+        /**
+         * 每条日志写入后是否立即刷盘，关闭后只能保证进程崩溃不丢数据
+         */
+        public Builder syncWrites(boolean syncWrites) {
+            this.syncWrites = syncWrites;
+            return this;
+        }
+
+        /**
+         * 堆内未落盘的向量超过该字节数时追加到.vec文件，元数据和图结构仍在{@link HnswVectorStore#save()}时写入
+         */
+        public Builder maxPendingBytes(long maxPendingBytes) {
+            Assert.isTrue(maxPendingBytes > 0, "maxPendingBytes must be positive");
+            this.maxPendingBytes = maxPendingBytes;
+            return this;
+        }
+
+        @Override
+        public HnswVectorStore build() {
+            return new HnswVectorStore(this);
+        }
+    }
+}
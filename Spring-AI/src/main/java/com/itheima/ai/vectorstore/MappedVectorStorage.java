@@ -0,0 +1,219 @@
+package com.itheima.ai.vectorstore;
+
+import com.itheima.ai.util.VectorDistanceUtils;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.util.Assert;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 基于内存映射文件的向量存储
+ * <p>
+ * 文件格式：16字节文件头(魔数、版本、维度、保留位)，之后为连续的float32(小端)行。
+ * 已落盘的行以只读方式映射，直接在页缓存上计算，不进入Java堆；
+ * 启动后新增的行先保存在堆内，{@link #flush()}时追加到文件末尾并重新映射；
+ * 堆内的行超过maxPendingBytes时自动flush，大批量写入时堆内存占用不随写入量增长。
+ */
+@Slf4j
+public class MappedVectorStorage implements VectorStorage {
+
+    private static final int MAGIC = 0x56454331; // "VEC1"
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 16;
+    // 单个映射段的上限，MappedByteBuffer最大只能映射2GB
+    private static final long SEGMENT_BYTES = 1L << 30;
+    // 默认堆内最多保留16MB未落盘的行
+    private static final long DEFAULT_MAX_PENDING_BYTES = 16L << 20;
+
+    private final Path path;
+    private final long maxPendingBytes;
+    private int dimensions;
+    private int rowsPerSegment;
+
+    // 已映射的行
+    private final List<ByteBuffer> segments = new ArrayList<>();
+    private int mappedRows;
+    // 尚未落盘的行
+    private final List<float[]> pending = new ArrayList<>();
+
+    private MappedVectorStorage(Path path, long maxPendingBytes) {
+        this.path = path;
+        this.maxPendingBytes = maxPendingBytes;
+    }
+
+    public static MappedVectorStorage open(Path path) throws IOException {
+        return open(path, DEFAULT_MAX_PENDING_BYTES);
+    }
+
+    /**
+     * 打开向量文件，文件不存在时在第一次flush时创建
+     * @param maxPendingBytes 堆内未落盘的行超过该字节数时自动flush
+     */
+    public static MappedVectorStorage open(Path path, long maxPendingBytes) throws IOException {
+        MappedVectorStorage storage = new MappedVectorStorage(path, maxPendingBytes);
+        if (Files.exists(path)) {
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+                ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+                channel.read(header, 0);
+                header.flip();
+                if (header.remaining() < HEADER_BYTES || header.getInt() != MAGIC) {
+                    throw new IOException("Not a vector file: " + path);
+                }
+                int version = header.getInt();
+                if (version != VERSION) {
+                    throw new IOException("Unsupported vector file version " + version + ": " + path);
+                }
+                storage.initDimensions(header.getInt());
+                // 末尾不完整的行(写入中途崩溃)直接忽略，下次flush时覆盖
+                int rows = (int) ((channel.size() - HEADER_BYTES) / storage.rowBytes());
+                storage.map(channel, 0, rows);
+            }
+        }
+        return storage;
+    }
+
+    @Override
+    public int size() {
+        return mappedRows + pending.size();
+    }
+
+    @Override
+    public int append(float[] vector) {
+        if (dimensions == 0) {
+            initDimensions(vector.length);
+        } else if (vector.length != dimensions) {
+            throw new IllegalArgumentException("Vector dimension " + vector.length + " does not match " + dimensions);
+        }
+        pending.add(vector);
+        int row = size() - 1;
+        if ((long) pending.size() * rowBytes() >= maxPendingBytes) {
+            try {
+                flush();
+            } catch (IOException e) {
+                throw new RuntimeException("Failed to flush vectors to " + path, e);
+            }
+        }
+        return row;
+    }
+
+    @Override
+    public float[] get(int row) {
+        if (row >= mappedRows) {
+            return pending.get(row - mappedRows).clone();
+        }
+        float[] vector = new float[dimensions];
+        segment(row).asFloatBuffer().get(offset(row) / Float.BYTES, vector);
+        return vector;
+    }
+
+    @Override
+    public float dot(int row, float[] query) {
+        if (row >= mappedRows) {
+            return VectorDistanceUtils.dot(pending.get(row - mappedRows), query);
+        }
+        return VectorDistanceUtils.dot(segment(row), offset(row), query);
+    }
+
+    /**
+     * 把堆内的新行追加写入文件，并映射新写入的区域
+     */
+    public void flush() throws IOException {
+        if (pending.isEmpty()) {
+            return;
+        }
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            if (channel.size() < HEADER_BYTES) {
+                ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+                header.putInt(MAGIC).putInt(VERSION).putInt(dimensions).putInt(0).flip();
+                channel.write(header, 0);
+            }
+            ByteBuffer buffer = ByteBuffer.allocate(rowBytes()).order(ByteOrder.LITTLE_ENDIAN);
+            long position = HEADER_BYTES + (long) mappedRows * rowBytes();
+            for (float[] vector : pending) {
+                buffer.clear();
+                buffer.asFloatBuffer().put(vector);
+                buffer.limit(rowBytes());
+                while (buffer.hasRemaining()) {
+                    position += channel.write(buffer, position);
+                }
+            }
+            // 截断之后残留的旧行
+            channel.truncate(position);
+            channel.force(false);
+
+            int rows = mappedRows + pending.size();
+            // 最后一个映射段可能不满，从它开始重新映射
+            int firstSegment = mappedRows / rowsPerSegment;
+            while (segments.size() > firstSegment) {
+                segments.remove(segments.size() - 1);
+            }
+            map(channel, firstSegment, rows);
+        }
+        log.debug("向量文件已追加: path={}, rows={}", path, mappedRows);
+        pending.clear();
+    }
+
+    /**
+     * 丢弃rows之后已落盘的行，下次flush时覆盖。
+     * 用于启动时去掉元数据尚未写入的行，这些行会从日志中重新写入
+     */
+    public void truncate(int rows) {
+        if (rows >= mappedRows) {
+            return;
+        }
+        Assert.state(pending.isEmpty(), "truncate must be called before appending");
+        int lastSegment = rows == 0 ? 0 : (rows - 1) / rowsPerSegment + 1;
+        while (segments.size() > lastSegment) {
+            segments.remove(segments.size() - 1);
+        }
+        if (rows % rowsPerSegment != 0) {
+            // 最后一个映射段只保留前面的行
+            ByteBuffer last = segments.get(segments.size() - 1);
+            segments.set(segments.size() - 1, last.slice(0, (rows % rowsPerSegment) * rowBytes()).order(ByteOrder.LITTLE_ENDIAN));
+        }
+        log.info("向量文件末尾的行已丢弃: path={}, rows={}, dropped={}", path, rows, mappedRows - rows);
+        mappedRows = rows;
+    }
+
+    public Path getPath() {
+        return path;
+    }
+
+    private void initDimensions(int dimensions) {
+        this.dimensions = dimensions;
+        this.rowsPerSegment = (int) Math.max(1, SEGMENT_BYTES / rowBytes());
+    }
+
+    private int rowBytes() {
+        return dimensions * Float.BYTES;
+    }
+
+    private void map(FileChannel channel, int firstSegment, int rows) throws IOException {
+        for (int s = firstSegment; (long) s * rowsPerSegment < rows; s++) {
+            int segmentRows = Math.min(rowsPerSegment, rows - s * rowsPerSegment);
+            long position = HEADER_BYTES + (long) s * rowsPerSegment * rowBytes();
+            ByteBuffer segment = channel.map(FileChannel.MapMode.READ_ONLY, position, (long) segmentRows * rowBytes())
+                    .order(ByteOrder.LITTLE_ENDIAN);
+            segments.add(segment);
+        }
+        mappedRows = rows;
+    }
+
+    private ByteBuffer segment(int row) {
+        return segments.get(row / rowsPerSegment);
+    }
+
+    // 行在映射段内的字节偏移
+    private int offset(int row) {
+        return (row % rowsPerSegment) * rowBytes();
+    }
+}
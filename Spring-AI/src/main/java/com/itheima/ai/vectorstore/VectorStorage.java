@@ -0,0 +1,30 @@
+package com.itheima.ai.vectorstore;
+
+/**
+ * 定长向量的行式存储，行号从0开始连续分配
+ * <p>
+ * 实现类不保证线程安全，并发访问由调用方加锁保证。
+ */
+public interface VectorStorage {
+
+    /**
+     * 已存储的行数
+     */
+    int size();
+
+    /**
+     * 追加一行向量
+     * @return 行号
+     */
+    int append(float[] vector);
+
+    /**
+     * 读取一行向量的副本
+     */
+    float[] get(int row);
+
+    /**
+     * 计算指定行与查询向量的点积
+     */
+    float dot(int row, float[] query);
+}
@@ -0,0 +1,135 @@
+package com.itheima.ai.vectorstore;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * 追加写日志
+ * <p>
+ * 每条记录为：4字节长度、4字节CRC32、记录内容。打开时校验全部记录，
+ * 末尾不完整或校验失败的记录(写入中途崩溃)会被截掉。
+ * 本类不是线程安全的，并发访问由调用方加锁保证。
+ */
+@Slf4j
+public class WriteAheadLog implements Closeable {
+
+    private static final int RECORD_HEADER_BYTES = 8;
+
+    private final Path path;
+    private final FileChannel channel;
+    private final boolean sync;
+    private final List<byte[]> recovered;
+
+    private WriteAheadLog(Path path, FileChannel channel, boolean sync, List<byte[]> recovered) {
+        this.path = path;
+        this.channel = channel;
+        this.sync = sync;
+        this.recovered = recovered;
+    }
+
+    /**
+     * 打开日志文件，不存在时创建
+     * @param sync 每条记录写入后是否立即刷盘
+     */
+    public static WriteAheadLog open(Path path, boolean sync) throws IOException {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        List<byte[]> records = new ArrayList<>();
+        long position = 0;
+        long size = channel.size();
+        ByteBuffer header = ByteBuffer.allocate(RECORD_HEADER_BYTES);
+        while (position + RECORD_HEADER_BYTES <= size) {
+            header.clear();
+            readFully(channel, header, position);
+            header.flip();
+            int length = header.getInt();
+            int checksum = header.getInt();
+            if (length < 0 || position + RECORD_HEADER_BYTES + length > size) {
+                break;
+            }
+            ByteBuffer payload = ByteBuffer.allocate(length);
+            readFully(channel, payload, position + RECORD_HEADER_BYTES);
+            if (crc(payload.array()) != checksum) {
+                break;
+            }
+            records.add(payload.array());
+            position += RECORD_HEADER_BYTES + length;
+        }
+        if (position < size) {
+            log.warn("日志文件末尾存在不完整的记录，已截断: path={}, valid={}, size={}", path, position, size);
+            channel.truncate(position);
+        }
+        channel.position(position);
+        return new WriteAheadLog(path, channel, sync, records);
+    }
+
+    /**
+     * 打开时恢复出的记录，按写入顺序排列
+     */
+    public List<byte[]> recovered() {
+        return recovered;
+    }
+
+    /**
+     * 追加一条记录
+     */
+    public void append(byte[] record) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(RECORD_HEADER_BYTES + record.length);
+        buffer.putInt(record.length).putInt(crc(record)).put(record).flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        if (sync) {
+            channel.force(false);
+        }
+    }
+
+    /**
+     * 当前日志大小(字节)
+     */
+    public long size() throws IOException {
+        return channel.size();
+    }
+
+    /**
+     * 清空日志，在数据已合并到主文件后调用
+     */
+    public void truncate() throws IOException {
+        channel.truncate(0);
+        channel.position(0);
+        channel.force(true);
+        recovered.clear();
+    }
+
+    public Path getPath() {
+        return path;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    private static int crc(byte[] bytes) {
+        CRC32 crc = new CRC32();
+        crc.update(bytes);
+        return (int) crc.getValue();
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException("Unexpected end of file");
+            }
+        }
+    }
+}
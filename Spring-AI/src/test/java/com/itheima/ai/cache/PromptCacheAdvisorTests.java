@@ -0,0 +1,55 @@
+package com.itheima.ai.cache;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.chat.client.ChatClient;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.model.ChatModel;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.ai.chat.model.Generation;
+import org.springframework.ai.chat.prompt.ChatOptions;
+import org.springframework.ai.chat.prompt.Prompt;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class PromptCacheAdvisorTests {
+
+    @Test
+    void reusesResponseOfIdenticalPrompt() {
+        List<Prompt> prompts = new ArrayList<>();
+        ChatModel chatModel = new ChatModel() {
+            @Override
+            public ChatResponse call(Prompt prompt) {
+                prompts.add(prompt);
+                return new ChatResponse(List.of(new Generation(new AssistantMessage("回答" + prompts.size()))));
+            }
+        };
+        PromptCacheAdvisor advisor = new PromptCacheAdvisor(10, Duration.ofMinutes(10));
+        ChatClient chatClient = ChatClient.builder(chatModel)
+                .defaultSystem("你是考官")
+                .defaultAdvisors(advisor)
+                .build();
+
+        assertThat(chatClient.prompt().user("问题：什么是AOP？").call().content()).isEqualTo("回答1");
+        // 空白不同的相同提示词命中缓存
+        assertThat(chatClient.prompt().user("  问题：什么是AOP？\n").call().content()).isEqualTo("回答1");
+        // 模型参数、拦截器参数不同时不命中
+        assertThat(chatClient.prompt().user("问题：什么是AOP？")
+                .options(ChatOptions.builder().temperature(0.2).build())
+                .call().content()).isEqualTo("回答2");
+        assertThat(chatClient.prompt().user("问题：什么是AOP？")
+                .advisors(a -> a.param("filter_expression", "file_name == 'b.pdf'"))
+                .call().content()).isEqualTo("回答3");
+        // 跳过缓存时总是请求模型
+        assertThat(chatClient.prompt().user("问题：什么是AOP？")
+                .advisors(a -> a.param(PromptCacheAdvisor.BYPASS_CACHE, true))
+                .call().content()).isEqualTo("回答4");
+
+        assertThat(prompts).hasSize(4);
+        assertThat(advisor.getCache().getHits()).isEqualTo(1);
+        assertThat(advisor.getCache().size()).isEqualTo(3);
+    }
+}
@@ -0,0 +1,102 @@
+package com.itheima.ai.cache;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.embedding.Embedding;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.ai.embedding.EmbeddingRequest;
+import org.springframework.ai.embedding.EmbeddingResponse;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class SemanticResponseCacheTests {
+
+    // 问题 -> 固定的向量，前两个问题语义相近
+    private static final Map<String, float[]> VECTORS = Map.of(
+            "这份文档讲了什么？", new float[]{1f, 0f, 0f},
+            "这个文档讲的是什么", new float[]{0.99f, 0.1f, 0f},
+            "作者是谁？", new float[]{0f, 1f, 0f},
+            "", new float[]{0f, 0f, 1f});
+
+    @Test
+    void returnsAnswerOfSimilarQuestionInSameFile() {
+        SemanticResponseCache cache = new SemanticResponseCache(new FixedEmbeddingModel(), 0.95, 10, 10, Duration.ofHours(1));
+
+        SemanticResponseCache.Lookup first = cache.lookup("a.pdf", "这份文档讲了什么？");
+        assertThat(first.hit()).isFalse();
+        cache.put(first, "讲的是Spring AI");
+
+        assertThat(cache.lookup("a.pdf", " 这份文档讲了什么？ ").answer()).isEqualTo("讲的是Spring AI");
+        assertThat(cache.lookup("a.pdf", "这个文档讲的是什么").answer()).isEqualTo("讲的是Spring AI");
+        assertThat(cache.lookup("a.pdf", "作者是谁？").hit()).isFalse();
+        // 不同文件的回答互不影响
+        assertThat(cache.lookup("b.pdf", "这份文档讲了什么？").hit()).isFalse();
+        assertThat(cache.getHits()).isEqualTo(2);
+        assertThat(cache.getMisses()).isEqualTo(3);
+        assertThat(cache.size()).isEqualTo(1);
+    }
+
+    @Test
+    void expiresAnswersAndBoundsEntriesPerFile() {
+        MutableClock clock = new MutableClock();
+        SemanticResponseCache cache = new SemanticResponseCache(new FixedEmbeddingModel(), 0.95, 10, 1, Duration.ofMinutes(10), clock);
+
+        cache.put(cache.lookup("a.pdf", "这份文档讲了什么？"), "回答1");
+        cache.put(cache.lookup("a.pdf", "作者是谁？"), "回答2");
+        // 每个文件只保留最近的一条
+        assertThat(cache.lookup("a.pdf", "这份文档讲了什么？").hit()).isFalse();
+        assertThat(cache.lookup("a.pdf", "作者是谁？").answer()).isEqualTo("回答2");
+
+        clock.advance(Duration.ofMinutes(11));
+        assertThat(cache.lookup("a.pdf", "作者是谁？").hit()).isFalse();
+    }
+
+    static class FixedEmbeddingModel implements EmbeddingModel {
+
+        @Override
+        public EmbeddingResponse call(EmbeddingRequest request) {
+            List<Embedding> embeddings = new ArrayList<>();
+            for (int i = 0; i < request.getInstructions().size(); i++) {
+                embeddings.add(new Embedding(VECTORS.getOrDefault(request.getInstructions().get(i), VECTORS.get("")), i));
+            }
+            return new EmbeddingResponse(embeddings);
+        }
+
+        @Override
+        public float[] embed(Document document) {
+            return embed(document.getText());
+        }
+    }
+
+    private static class MutableClock extends Clock {
+        private Instant now = Instant.EPOCH;
+
+        void advance(Duration duration) {
+            now = now.plus(duration);
+        }
+
+        @Override
+        public ZoneOffset getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            return this;
+        }
+
+        @Override
+        public Instant instant() {
+            return now;
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package com.itheima.ai.memory;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.UserMessage;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class BoundedChatMemoryTests {
+
+    @Test
+    void keepsOnlyLatestMessagesPerConversation() {
+        BoundedChatMemory memory = new BoundedChatMemory(3, Long.MAX_VALUE, null);
+        for (int i = 0; i < 5; i++) {
+            memory.add("c1", new UserMessage("m" + i));
+        }
+
+        assertThat(memory.get("c1", Integer.MAX_VALUE)).extracting(Message::getText).containsExactly("m2", "m3", "m4");
+        assertThat(memory.get("c1", 2)).extracting(Message::getText).containsExactly("m3", "m4");
+        assertThat(memory.getTotalMessages()).isEqualTo(3);
+        assertThat(memory.count("c1")).isEqualTo(3);
+        assertThat(memory.get("c1", 0, 2)).extracting(Message::getText).containsExactly("m2", "m3");
+    }
+
+    @Test
+    void evictsLeastRecentlyUsedConversationOverBudget() {
+        long messageBytes = BoundedChatMemory.estimateBytes(new UserMessage("hello"));
+        BoundedChatMemory memory = new BoundedChatMemory(10, messageBytes * 2, null);
+        memory.add("c1", new UserMessage("hello"));
+        memory.add("c2", new UserMessage("hello"));
+        // 访问c1后，c2成为最近最少使用的会话
+        memory.get("c1", 1);
+        memory.add("c3", new UserMessage("hello"));
+
+        assertThat(memory.get("c2", 10)).isEmpty();
+        assertThat(memory.get("c1", 10)).hasSize(1);
+        assertThat(memory.get("c3", 10)).hasSize(1);
+        assertThat(memory.getTotalBytes()).isEqualTo(messageBytes * 2);
+        assertThat(memory.getLruEvictions()).isEqualTo(1);
+    }
+
+    @Test
+    void evictsIdleConversationsAndPublishesMetrics() {
+        MutableClock clock = new MutableClock();
+        BoundedChatMemory memory = new BoundedChatMemory(10, Long.MAX_VALUE, Duration.ofMinutes(30), clock);
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        memory.bindTo(registry);
+
+        memory.add("c1", List.of(new UserMessage("hi"), new AssistantMessage("hello")));
+        clock.advance(Duration.ofMinutes(20));
+        memory.add("c2", new UserMessage("hi"));
+        assertThat(registry.get("ai.chat.memory.conversations").gauge().value()).isEqualTo(2);
+
+        clock.advance(Duration.ofMinutes(20));
+        assertThat(memory.evictIdle()).isEqualTo(1);
+        assertThat(memory.get("c1", 10)).isEmpty();
+        assertThat(registry.get("ai.chat.memory.messages").gauge().value()).isEqualTo(1);
+        assertThat(registry.get("ai.chat.memory.evictions").tag("reason", "idle").functionCounter().count()).isEqualTo(1);
+    }
+
+    private static class MutableClock extends Clock {
+        private Instant now = Instant.EPOCH;
+
+        void advance(Duration duration) {
+            now = now.plus(duration);
+        }
+
+        @Override
+        public ZoneOffset getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            return this;
+        }
+
+        @Override
+        public Instant instant() {
+            return now;
+        }
+    }
+}
@@ -0,0 +1,101 @@
+package com.itheima.ai.memory;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.messages.UserMessage;
+import org.springframework.ai.chat.model.ChatModel;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.ai.chat.model.Generation;
+import org.springframework.ai.chat.prompt.Prompt;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ConversationSummarizerTests {
+
+    @Test
+    void summarizesOlderTurnsOnceOverThreshold(@TempDir Path dir) throws IOException {
+        List<Prompt> prompts = new ArrayList<>();
+        ChatModel chatModel = new ChatModel() {
+            @Override
+            public ChatResponse call(Prompt prompt) {
+                prompts.add(prompt);
+                return new ChatResponse(List.of(new Generation(new AssistantMessage("摘要" + prompts.size()))));
+            }
+        };
+        try (TieredChatMemory memory = new TieredChatMemory(new BoundedChatMemory(100, Long.MAX_VALUE, null),
+                new ChatMessageStore(dir, 1 << 20, false))) {
+            // 阈值取一轮长对话加一轮短对话的token数
+            int threshold = List.of(new UserMessage("问题2 " + "内容".repeat(20)), new AssistantMessage("回答2"),
+                    new UserMessage("好"), new AssistantMessage("嗯")).stream()
+                    .mapToInt(TokenBudgetChatMemoryAdvisor::countTokens).sum();
+            ConversationSummarizer summarizer = new ConversationSummarizer(memory, chatModel, threshold, 2, 100, 1);
+            try {
+                for (int i = 0; i < 3; i++) {
+                    memory.add("c1", List.of(new UserMessage("问题" + i + " " + "内容".repeat(20)), new AssistantMessage("回答" + i)));
+                }
+                // 较早的两轮超过阈值，最近一轮保留原文
+                assertThat(summarizer.summarize("c1")).isTrue();
+                assertThat(summarizer.getSummary("c1").text()).isEqualTo("摘要1");
+                assertThat(summarizer.getSummary("c1").coveredMessages()).isEqualTo(4);
+                assertThat(prompts.get(0).getContents()).contains("问题0", "回答1").doesNotContain("问题2");
+
+                // 新增内容不足阈值时不再摘要
+                memory.add("c1", List.of(new UserMessage("好"), new AssistantMessage("嗯")));
+                assertThat(summarizer.summarize("c1")).isFalse();
+
+                // 再次摘要时合并之前的摘要
+                memory.add("c1", List.of(new UserMessage("问题3 " + "内容".repeat(20)), new AssistantMessage("回答3")));
+                assertThat(summarizer.summarize("c1")).isTrue();
+                assertThat(summarizer.getSummary("c1").coveredMessages()).isEqualTo(8);
+                assertThat(prompts.get(1).getContents()).contains("之前的摘要", "摘要1", "问题2").doesNotContain("问题0");
+            } finally {
+                summarizer.shutdown();
+            }
+        }
+    }
+
+    @Test
+    void summarySurvivesRestartAndIsClearedWithConversation(@TempDir Path dir) throws IOException {
+        ChatModel chatModel = new ChatModel() {
+            @Override
+            public ChatResponse call(Prompt prompt) {
+                return new ChatResponse(List.of(new Generation(new AssistantMessage("摘要"))));
+            }
+        };
+        try (TieredChatMemory memory = new TieredChatMemory(new BoundedChatMemory(100, Long.MAX_VALUE, null),
+                new ChatMessageStore(dir, 1 << 20, false))) {
+            ConversationSummarizer summarizer = new ConversationSummarizer(memory, chatModel, 1, 2, 100, 1);
+            try {
+                for (int i = 0; i < 3; i++) {
+                    memory.add("c1", List.of(new UserMessage("问题" + i), new AssistantMessage("回答" + i)));
+                }
+                assertThat(summarizer.summarize("c1")).isTrue();
+            } finally {
+                summarizer.shutdown();
+            }
+        }
+
+        try (TieredChatMemory memory = new TieredChatMemory(new BoundedChatMemory(100, Long.MAX_VALUE, null),
+                new ChatMessageStore(dir, 1 << 20, false))) {
+            ConversationSummarizer summarizer = new ConversationSummarizer(memory, chatModel, 1, 2, 100, 1);
+            try {
+                assertThat(summarizer.getSummary("c1")).isEqualTo(new ConversationSummarizer.ConversationSummary("摘要", 4));
+
+                memory.clear("c1");
+                assertThat(summarizer.getSummary("c1")).isNull();
+            } finally {
+                summarizer.shutdown();
+            }
+        }
+
+        try (ChatMessageStore store = new ChatMessageStore(dir, 1 << 20, false)) {
+            assertThat(store.loadSummary("c1")).isNull();
+        }
+    }
+}
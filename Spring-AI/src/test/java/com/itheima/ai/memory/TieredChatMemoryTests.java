@@ -0,0 +1,112 @@
+package com.itheima.ai.memory;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.UserMessage;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class TieredChatMemoryTests {
+
+    @Test
+    void historySurvivesRestartAndIsLoadedLazily(@TempDir Path dir) throws IOException {
+        try (TieredChatMemory memory = new TieredChatMemory(new BoundedChatMemory(2, Long.MAX_VALUE, null),
+                new ChatMessageStore(dir, 1024, false))) {
+            memory.add("c1", List.of(new UserMessage("你好"), new AssistantMessage("你好，我是小团团")));
+            memory.add("c1", new UserMessage("第二个问题"));
+            memory.add("c2", new UserMessage("other"));
+            memory.clear("c2");
+        }
+
+        BoundedChatMemory hot = new BoundedChatMemory(2, Long.MAX_VALUE, null);
+        try (TieredChatMemory memory = new TieredChatMemory(hot, new ChatMessageStore(dir, 1024, false))) {
+            assertThat(hot.contains("c1")).isFalse();
+            // 请求的数量超出内存上限时从磁盘读取全部历史
+            assertThat(memory.get("c1", Integer.MAX_VALUE)).extracting(Message::getText)
+                    .containsExactly("你好", "你好，我是小团团", "第二个问题");
+            assertThat(hot.get("c1", 10)).extracting(Message::getText).containsExactly("你好，我是小团团", "第二个问题");
+            assertThat(memory.get("c2", 10)).isEmpty();
+
+            memory.add("c1", new AssistantMessage("回答"));
+            assertThat(memory.get("c1", 2)).extracting(Message::getText).containsExactly("第二个问题", "回答");
+            assertThat(memory.getStore().count("c1")).isEqualTo(4);
+
+            // 按序号分页读取
+            assertThat(memory.count("c1")).isEqualTo(4);
+            assertThat(memory.get("c1", 1, 3)).extracting(Message::getText).containsExactly("你好，我是小团团", "第二个问题");
+            assertThat(memory.get("c1", 3, 10)).extracting(Message::getText).containsExactly("回答");
+            assertThat(memory.get("c1", 5, 10)).isEmpty();
+        }
+    }
+
+    @Test
+    void rollsSegmentsAndDeletesClearedOnes(@TempDir Path dir) throws IOException {
+        try (ChatMessageStore store = new ChatMessageStore(dir, 200, false)) {
+            for (int i = 0; i < 10; i++) {
+                store.append("old", List.of(new UserMessage("message " + i + " padding padding padding")));
+            }
+            store.append("new", List.of(new UserMessage("kept")));
+            assertThat(store.getSegmentCount()).isGreaterThan(2);
+
+            store.delete("old");
+            assertThat(store.getSegmentCount()).isLessThanOrEqualTo(2);
+            assertThat(store.read("new", 10)).extracting(Message::getText).containsExactly("kept");
+        }
+    }
+
+    @Test
+    void boundsLongConversationsAndCompactsOldSegments(@TempDir Path dir) throws IOException {
+        try (ChatMessageStore store = new ChatMessageStore(dir, 200, false, 5)) {
+            // 最早的段中一直有一条有效消息，只删除整段的话任何段都删不掉
+            store.append("pinned", List.of(new UserMessage("kept")));
+            for (int i = 0; i < 200; i++) {
+                store.append("long", List.of(new UserMessage("message " + i + " padding padding padding")));
+            }
+            assertThat(store.getSegmentCount()).isLessThan(10);
+            assertThat(store.count("long")).isEqualTo(200);
+            assertThat(store.first("long")).isEqualTo(195);
+            assertThat(store.read("long", 0, 195)).isEmpty();
+        }
+
+        try (ChatMessageStore store = new ChatMessageStore(dir, 200, false, 5)) {
+            assertThat(store.read("pinned", 10)).extracting(Message::getText).containsExactly("kept");
+            assertThat(store.count("long")).isEqualTo(200);
+            assertThat(store.read("long", 10)).extracting(Message::getText)
+                    .containsExactly("message 195 padding padding padding", "message 196 padding padding padding",
+                            "message 197 padding padding padding", "message 198 padding padding padding",
+                            "message 199 padding padding padding");
+            store.append("long", List.of(new UserMessage("next")));
+            assertThat(store.first("long")).isEqualTo(196);
+            assertThat(store.read("long", 199, 201)).extracting(Message::getText)
+                    .containsExactly("message 199 padding padding padding", "next");
+        }
+    }
+
+    @Test
+    void truncatesTornTail(@TempDir Path dir) throws IOException {
+        try (ChatMessageStore store = new ChatMessageStore(dir, 1024, false)) {
+            store.append("c1", List.of(new UserMessage("a"), new UserMessage("b")));
+        }
+        Path segment;
+        try (Stream<Path> files = Files.list(dir)) {
+            segment = files.findFirst().orElseThrow();
+        }
+        // 模拟写入中途崩溃
+        Files.write(segment, new byte[]{0, 0, 0, 42, 1, 2}, StandardOpenOption.APPEND);
+
+        try (ChatMessageStore store = new ChatMessageStore(dir, 1024, false)) {
+            assertThat(store.read("c1", 10)).extracting(Message::getText).containsExactly("a", "b");
+            store.append("c1", List.of(new UserMessage("c")));
+            assertThat(store.read("c1", 10)).extracting(Message::getText).containsExactly("a", "b", "c");
+        }
+    }
+}
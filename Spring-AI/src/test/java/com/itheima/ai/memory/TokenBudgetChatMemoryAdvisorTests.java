@@ -0,0 +1,40 @@
+package com.itheima.ai.memory;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.UserMessage;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class TokenBudgetChatMemoryAdvisorTests {
+
+    private final List<Message> history = List.of(
+            new UserMessage("first question " + "padding ".repeat(50)),
+            new AssistantMessage("first answer"),
+            new UserMessage("second question"),
+            new AssistantMessage("second answer " + "padding ".repeat(20)),
+            new UserMessage("third question"),
+            new AssistantMessage("third answer"));
+
+    @Test
+    void keepsWholeHistoryWithinBudget() {
+        assertThat(TokenBudgetChatMemoryAdvisor.fit(history, 10_000)).isEqualTo(history);
+        assertThat(TokenBudgetChatMemoryAdvisor.fit(List.of(), 100)).isEmpty();
+    }
+
+    @Test
+    void dropsOldestTurnsAndStartsWithUserMessage() {
+        int lastTwoTurns = history.subList(2, 6).stream().mapToInt(TokenBudgetChatMemoryAdvisor::countTokens).sum();
+
+        List<Message> fitted = TokenBudgetChatMemoryAdvisor.fit(history, lastTwoTurns + 5);
+        assertThat(fitted).extracting(Message::getText).first().isEqualTo("second question");
+        assertThat(fitted).hasSize(4);
+
+        // 预算只够半轮时，不保留开头的回答
+        int lastAnswer = TokenBudgetChatMemoryAdvisor.countTokens(history.get(5));
+        assertThat(TokenBudgetChatMemoryAdvisor.fit(history, lastAnswer)).isEmpty();
+    }
+}
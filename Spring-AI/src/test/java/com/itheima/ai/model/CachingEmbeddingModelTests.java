@@ -0,0 +1,79 @@
+package com.itheima.ai.model;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.embedding.Embedding;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.ai.embedding.EmbeddingRequest;
+import org.springframework.ai.embedding.EmbeddingResponse;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class CachingEmbeddingModelTests {
+
+    @Test
+    void onlyMissingTextsReachTheDelegate() {
+        CountingEmbeddingModel delegate = new CountingEmbeddingModel();
+        CachingEmbeddingModel model = new CachingEmbeddingModel(delegate, "text-embedding-v3", 4, 100, Duration.ofHours(1), null);
+
+        float[] first = model.embed("知识");
+        assertThat(model.embed("知识")).isEqualTo(first);
+        assertThat(delegate.requests).containsExactly(List.of("知识"));
+
+        List<float[]> vectors = model.embed(List.of("学习", "知识", "课程"));
+        assertThat(vectors.get(1)).isEqualTo(first);
+        assertThat(vectors.get(0)).isEqualTo(delegate.vector("学习"));
+        assertThat(vectors.get(2)).isEqualTo(delegate.vector("课程"));
+        assertThat(delegate.requests).containsExactly(List.of("知识"), List.of("学习", "课程"));
+    }
+
+    @Test
+    void cacheSurvivesRestartWhenPersisted(@TempDir Path dir) {
+        Path file = dir.resolve("embedding-cache.bin");
+        CountingEmbeddingModel delegate = new CountingEmbeddingModel();
+        CachingEmbeddingModel model = new CachingEmbeddingModel(delegate, "text-embedding-v3", 4, 100, Duration.ofHours(1), file);
+        model.embed(List.of("内容", "教育"));
+        model.save();
+
+        CountingEmbeddingModel restartedDelegate = new CountingEmbeddingModel();
+        CachingEmbeddingModel restarted = new CachingEmbeddingModel(restartedDelegate, "text-embedding-v3", 4, 100, Duration.ofHours(1), file);
+        assertThat(restarted.embed("教育")).isEqualTo(delegate.vector("教育"));
+        assertThat(restartedDelegate.requests).isEmpty();
+
+        // 换了模型的缓存不能复用
+        CachingEmbeddingModel otherModel = new CachingEmbeddingModel(restartedDelegate, "text-embedding-v2", 4, 100, Duration.ofHours(1), file);
+        otherModel.embed("教育");
+        assertThat(restartedDelegate.requests).containsExactly(List.of("教育"));
+    }
+
+    static class CountingEmbeddingModel implements EmbeddingModel {
+
+        final List<List<String>> requests = new ArrayList<>();
+
+        @Override
+        public EmbeddingResponse call(EmbeddingRequest request) {
+            requests.add(List.copyOf(request.getInstructions()));
+            List<Embedding> embeddings = new ArrayList<>();
+            for (int i = 0; i < request.getInstructions().size(); i++) {
+                embeddings.add(new Embedding(vector(request.getInstructions().get(i)), i));
+            }
+            return new EmbeddingResponse(embeddings);
+        }
+
+        @Override
+        public float[] embed(Document document) {
+            return embed(document.getText());
+        }
+
+        float[] vector(String text) {
+            int hash = text.hashCode();
+            return new float[]{hash & 0xff, (hash >> 8) & 0xff, (hash >> 16) & 0xff, 1f};
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package com.itheima.ai.reader;
+
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.PDPageContentStream;
+import org.apache.pdfbox.pdmodel.font.PDType1Font;
+import org.apache.pdfbox.pdmodel.font.Standard14Fonts;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.reader.ExtractedTextFormatter;
+import org.springframework.ai.reader.pdf.PagePdfDocumentReader;
+import org.springframework.ai.reader.pdf.config.PdfDocumentReaderConfig;
+import org.springframework.core.io.ByteArrayResource;
+import org.springframework.core.io.Resource;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class PdfPageReaderTests {
+
+    @Test
+    void pagesMatchPagePdfDocumentReader() throws IOException {
+        Resource resource = samplePdf();
+        List<Document> expected = new PagePdfDocumentReader(resource, PdfDocumentReaderConfig.builder()
+                .withPageExtractedTextFormatter(ExtractedTextFormatter.defaults())
+                .withPagesPerDocument(1)
+                .build()).read();
+
+        List<Document> actual = new ArrayList<>();
+        try (PdfPageReader reader = new PdfPageReader(resource, ExtractedTextFormatter.defaults())) {
+            assertThat(reader.getPageCount()).isEqualTo(3);
+            for (int page = 1; page <= reader.getPageCount(); page++) {
+                Document document = reader.readPage(page);
+                if (document != null) {
+                    actual.add(document);
+                }
+            }
+        }
+
+        // 空白页被跳过
+        assertThat(actual).hasSize(2);
+        assertThat(actual).extracting(Document::getText).isEqualTo(expected.stream().map(Document::getText).toList());
+        assertThat(actual).extracting(d -> d.getMetadata().get("page_number")).containsExactly(1, 3);
+        assertThat(actual.get(0).getMetadata()).containsEntry("file_name", "sample.pdf");
+    }
+
+    private static Resource samplePdf() throws IOException {
+        try (PDDocument document = new PDDocument()) {
+            addPage(document, "Spring AI supports retrieval augmented generation.");
+            document.addPage(new PDPage());
+            addPage(document, "HNSW builds a layered proximity graph.");
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            document.save(out);
+            return new ByteArrayResource(out.toByteArray()) {
+                @Override
+                public String getFilename() {
+                    return "sample.pdf";
+                }
+            };
+        }
+    }
+
+    private static void addPage(PDDocument document, String text) throws IOException {
+        PDPage page = new PDPage();
+        document.addPage(page);
+        try (PDPageContentStream content = new PDPageContentStream(document, page)) {
+            content.beginText();
+            content.setFont(new PDType1Font(Standard14Fonts.FontName.HELVETICA), 12);
+            content.newLineAtOffset(72, 700);
+            content.showText(text);
+            content.endText();
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package com.itheima.ai.reader;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.document.Document;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class TokenChunkerTests {
+
+    @Test
+    void chunksRespectTokenLimitAndOverlap() {
+        TokenChunker chunker = new TokenChunker(40, 12);
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 20; i++) {
+            text.append("Paragraph ").append(i).append(" talks about vector search.\n\n");
+        }
+
+        List<Document> chunks = chunker.split("a.pdf", List.of(page(1, text.toString())));
+
+        assertThat(chunks).hasSizeGreaterThan(1);
+        for (int i = 0; i < chunks.size(); i++) {
+            Document chunk = chunks.get(i);
+            assertThat(TokenChunker.countTokens(chunk.getText())).isLessThanOrEqualTo(40 + 4);
+            assertThat(chunk.getMetadata()).containsEntry("file_name", "a.pdf").containsEntry("chunk_index", i);
+            if (i > 0) {
+                // 上一片段的最后一段出现在下一片段开头
+                String[] previous = chunks.get(i - 1).getText().split("\n\n");
+                assertThat(chunk.getText()).startsWith(previous[previous.length - 1]);
+            }
+        }
+        assertThat(chunks.get(chunks.size() - 1).getText()).endsWith("Paragraph 19 talks about vector search.");
+    }
+
+    @Test
+    void smallPagesAreMergedAndLongParagraphsAreSplit() {
+        TokenChunker chunker = new TokenChunker(50, 0);
+        String longParagraph = "word ".repeat(120);
+
+        List<Document> chunks = chunker.split("b.pdf", List.of(
+                page(1, "Title"),
+                page(2, "Short note."),
+                page(3, longParagraph)));
+
+        assertThat(chunks.get(0).getText()).startsWith("Title\n\nShort note.");
+        assertThat(chunks.get(0).getMetadata()).containsEntry("page_number", 1).containsKey("end_page_number");
+        assertThat(chunks).allSatisfy(chunk -> assertThat(TokenChunker.countTokens(chunk.getText())).isLessThanOrEqualTo(50));
+        assertThat(chunks.stream().mapToInt(chunk -> (int) Arrays.stream(chunk.getText().split("\\s+")).filter("word"::equals).count()).sum()).isEqualTo(120);
+
+        // 同一文件重复切分得到相同的ID
+        assertThat(chunker.split("b.pdf", List.of(page(1, "Title"), page(2, "Short note."), page(3, longParagraph))))
+                .extracting(Document::getId)
+                .isEqualTo(chunks.stream().map(Document::getId).toList());
+    }
+
+    @Test
+    void longChineseRunIsCutOnCharacterBoundaries() {
+        TokenChunker chunker = new TokenChunker(30, 0);
+        // 没有标点的长段落只能按token硬切，生僻字在cl100k中会被拆成多个token
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 600; i++) {
+            text.appendCodePoint(0x4E00 + (i * 37) % 20000);
+        }
+
+        List<Document> chunks = chunker.split("c.pdf", List.of(page(1, text.toString())));
+
+        assertThat(chunks).hasSizeGreaterThan(1);
+        assertThat(chunks).allSatisfy(chunk -> assertThat(chunk.getText()).doesNotContain("\uFFFD"));
+        assertThat(String.join("", chunks.stream().map(chunk -> chunk.getText().replace("\n\n", "")).toList()))
+                .isEqualTo(text.toString());
+    }
+
+    private static Document page(int pageNumber, String text) {
+        return new Document(text, Map.of("page_number", pageNumber, "file_name", "a.pdf"));
+    }
+}
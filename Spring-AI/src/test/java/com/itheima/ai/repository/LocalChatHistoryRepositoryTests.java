@@ -0,0 +1,58 @@
+package com.itheima.ai.repository;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class LocalChatHistoryRepositoryTests {
+
+    @Test
+    void keepsCreationAndRecencyOrderAcrossRestart(@TempDir Path dir) throws InterruptedException {
+        Path file = dir.resolve("chat-history.tsv");
+        LocalChatHistoryRepository repository = new LocalChatHistoryRepository(file);
+        repository.init();
+        repository.save("chat", "1");
+        repository.save("chat", "2");
+        repository.save("chat", "3");
+        Thread.sleep(2);
+        repository.save("chat", "1");
+        repository.save("pdf", "1");
+
+        assertThat(repository.getChatIds("chat")).containsExactly("1", "2", "3");
+        assertThat(repository.getRecentChatIds("chat", 2)).containsExactly("1", "3");
+        assertThat(repository.count("chat")).isEqualTo(3);
+        assertThat(repository.count("service")).isZero();
+        repository.compact();
+
+        LocalChatHistoryRepository restarted = new LocalChatHistoryRepository(file);
+        restarted.init();
+        assertThat(restarted.getChatIds("chat")).containsExactly("1", "2", "3");
+        assertThat(restarted.getRecentChatIds("chat", 10)).containsExactly("1", "3", "2");
+        assertThat(restarted.getChatIds("pdf")).containsExactly("1");
+    }
+
+    @Test
+    void concurrentSavesAreDeduplicated(@TempDir Path dir) {
+        LocalChatHistoryRepository repository = new LocalChatHistoryRepository(dir.resolve("chat-history.tsv"));
+        List<CompletableFuture<Void>> futures = new ArrayList<>();
+        for (int t = 0; t < 8; t++) {
+            futures.add(CompletableFuture.runAsync(() ->
+                    IntStream.range(0, 500).forEach(i -> repository.save("service", String.valueOf(i)))));
+        }
+        futures.forEach(CompletableFuture::join);
+
+        assertThat(repository.count("service")).isEqualTo(500);
+        assertThat(repository.getChatIds("service")).doesNotHaveDuplicates().hasSize(500);
+
+        LocalChatHistoryRepository restarted = new LocalChatHistoryRepository(dir.resolve("chat-history.tsv"));
+        restarted.init();
+        assertThat(restarted.count("service")).isEqualTo(500);
+    }
+}
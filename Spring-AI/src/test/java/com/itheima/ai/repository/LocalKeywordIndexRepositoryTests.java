@@ -0,0 +1,36 @@
+package com.itheima.ai.repository;
+
+import com.itheima.ai.util.KeywordIndex;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class LocalKeywordIndexRepositoryTests {
+
+    @Test
+    void splitsChineseIntoBigramsAndDropsStopWords() {
+        assertThat(KeywordIndex.terms("什么是Spring AOP的代理？")).containsExactly("spring", "aop", "代理");
+        assertThat(KeywordIndex.terms("动态代理动态")).containsExactly("动态", "态代", "代理", "理动");
+
+        KeywordIndex index = new KeywordIndex.Builder().add("动态代理").add("JDK动态代理和CGLIB").build();
+        assertThat(index.frequency("动态")).isEqualTo(2);
+        assertThat(index.frequency("jdk")).isEqualTo(1);
+        assertThat(index.contains("和c")).isFalse();
+    }
+
+    @Test
+    void savesAndReloadsIndexPerFile(@TempDir Path dir) {
+        LocalKeywordIndexRepository repository = new LocalKeywordIndexRepository(dir);
+        assertThat(repository.contains("笔记/第一章.pdf")).isFalse();
+        repository.save("笔记/第一章.pdf", KeywordIndex.of("Spring AOP 动态代理"));
+
+        LocalKeywordIndexRepository restarted = new LocalKeywordIndexRepository(dir);
+        assertThat(restarted.contains("笔记/第一章.pdf")).isTrue();
+        assertThat(restarted.get("笔记/第一章.pdf").getFrequencies())
+                .containsOnlyKeys("spring", "aop", "动态", "态代", "代理");
+        assertThat(restarted.get("other.pdf")).isNull();
+    }
+}
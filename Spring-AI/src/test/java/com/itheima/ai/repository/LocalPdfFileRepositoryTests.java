@@ -0,0 +1,87 @@
+package com.itheima.ai.repository;
+
+import com.itheima.ai.vectorstore.HnswVectorStore;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.embedding.Embedding;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.ai.embedding.EmbeddingRequest;
+import org.springframework.ai.embedding.EmbeddingResponse;
+import org.springframework.core.io.ByteArrayResource;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Properties;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class LocalPdfFileRepositoryTests {
+
+    @Test
+    void compactKeepsNonAsciiFileNames(@TempDir Path dir) throws IOException {
+        Files.writeString(dir.resolve("chat-pdf.properties"), "c1=Java第一章.pdf\n", StandardCharsets.UTF_8);
+        LocalPdfFileRepository repository = new LocalPdfFileRepository(
+                HnswVectorStore.builder(new ConstantEmbeddingModel()).build(), dir);
+        repository.init();
+        assertThat(repository.save("c2", new NamedResource("a.pdf", "pdf"))).isTrue();
+
+        repository.compact();
+
+        Properties reloaded = new Properties();
+        try (Reader reader = Files.newBufferedReader(dir.resolve("chat-pdf.properties"), StandardCharsets.UTF_8)) {
+            reloaded.load(reader);
+        }
+        assertThat(reloaded).containsEntry("c1", "Java第一章.pdf").containsEntry("c2", "a.pdf");
+        assertThat(dir.resolve("chat-pdf.properties.tmp")).doesNotExist();
+    }
+
+    @Test
+    void savesFileNamesTheFileSystemCannotEncode(@TempDir Path dir) {
+        LocalPdfFileRepository repository = new LocalPdfFileRepository(
+                HnswVectorStore.builder(new ConstantEmbeddingModel()).build(), dir);
+        repository.init();
+        assertThat(repository.save("c1", new NamedResource("Java第一章.pdf", "pdf1"))).isTrue();
+        assertThat(repository.save("c2", new NamedResource("Java第二章.pdf", "pdf2"))).isTrue();
+        // 相同内容共用一个文件
+        assertThat(repository.save("c3", new NamedResource("副本.pdf", "pdf1"))).isTrue();
+
+        assertThat(repository.getFile("c1").exists()).isTrue();
+        assertThat(repository.getFile("c2").exists()).isTrue();
+        assertThat(repository.getFile("c1").getFilename()).isNotEqualTo(repository.getFile("c2").getFilename());
+        assertThat(repository.getFile("c3").getFilename()).isEqualTo(repository.getFile("c1").getFilename());
+    }
+
+    static class NamedResource extends ByteArrayResource {
+
+        private final String filename;
+
+        NamedResource(String filename, String content) {
+            super(content.getBytes(StandardCharsets.UTF_8));
+            this.filename = filename;
+        }
+
+        @Override
+        public String getFilename() {
+            return filename;
+        }
+    }
+
+    static class ConstantEmbeddingModel implements EmbeddingModel {
+
+        @Override
+        public EmbeddingResponse call(EmbeddingRequest request) {
+            return new EmbeddingResponse(request.getInstructions().stream()
+                    .map(text -> new Embedding(new float[]{1f, 0f}, 0))
+                    .toList());
+        }
+
+        @Override
+        public float[] embed(Document document) {
+            return embed(document.getText());
+        }
+    }
+}
@@ -0,0 +1,27 @@
+package com.itheima.ai.repository;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class LocalQuestionBankRepositoryTests {
+
+    @Test
+    void appendsQuestionsPerDifficultyAndReloads(@TempDir Path dir) {
+        LocalQuestionBankRepository repository = new LocalQuestionBankRepository(dir);
+        assertThat(repository.get("笔记/第一章.pdf", "简单")).isEmpty();
+        assertThat(repository.add("笔记/第一章.pdf", "简单", "什么是Spring AOP？")).isTrue();
+        assertThat(repository.add("笔记/第一章.pdf", "简单", " 什么是Spring\nAOP？ ")).isFalse();
+        assertThat(repository.add("笔记/第一章.pdf", "困难", "为什么\tCGLIB能代理没有接口的类？")).isTrue();
+        assertThat(repository.add("笔记/第一章.pdf", "中等", " ")).isFalse();
+
+        LocalQuestionBankRepository restarted = new LocalQuestionBankRepository(dir);
+        assertThat(restarted.get("笔记/第一章.pdf", "简单")).containsExactly("什么是Spring AOP？");
+        assertThat(restarted.get("笔记/第一章.pdf", "困难")).containsExactly("为什么 CGLIB能代理没有接口的类？");
+        assertThat(restarted.get("笔记/第一章.pdf", "中等")).isEmpty();
+        assertThat(restarted.get("other.pdf", "简单")).isEmpty();
+    }
+}
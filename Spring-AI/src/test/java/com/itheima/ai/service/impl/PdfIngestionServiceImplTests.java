@@ -0,0 +1,157 @@
+package com.itheima.ai.service.impl;
+
+import com.itheima.ai.config.PdfIngestionProperties;
+import com.itheima.ai.entity.vo.PdfIngestionJob;
+import com.itheima.ai.repository.KeywordIndexRepository;
+import com.itheima.ai.util.KeywordIndex;
+import com.itheima.ai.vectorstore.HnswVectorStore;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.PDPageContentStream;
+import org.apache.pdfbox.pdmodel.font.PDType1Font;
+import org.apache.pdfbox.pdmodel.font.Standard14Fonts;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.embedding.Embedding;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.ai.embedding.EmbeddingRequest;
+import org.springframework.ai.embedding.EmbeddingResponse;
+import org.springframework.core.io.ByteArrayResource;
+import org.springframework.core.io.Resource;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class PdfIngestionServiceImplTests {
+
+    @Test
+    void failedIngestionIsDiscardedAndReingested() throws Exception {
+        FailingEmbeddingModel embeddingModel = new FailingEmbeddingModel();
+        HnswVectorStore vectorStore = HnswVectorStore.builder(embeddingModel).build();
+        PdfIngestionProperties properties = new PdfIngestionProperties();
+        properties.setBatchSize(1);
+        properties.setConcurrency(1);
+        properties.setChunkTokens(20);
+        properties.setChunkOverlapTokens(0);
+        PdfIngestionServiceImpl service = new PdfIngestionServiceImpl(vectorStore, properties, new MemoryKeywordIndexRepository());
+        service.init();
+        try {
+            Resource resource = samplePdf();
+            // 第二批向量化失败
+            embeddingModel.failOnCall = 2;
+            PdfIngestionJob failed = await(service, service.submit("c1", resource).getJobId());
+            assertThat(failed.getStatus()).isEqualTo("FAILED");
+            assertThat(vectorStore.containsPartition("sample.pdf")).isFalse();
+
+            // 重新上传时重新向量化，而不是当作已完成
+            embeddingModel.failOnCall = -1;
+            PdfIngestionJob retried = await(service, service.submit("c2", resource).getJobId());
+            assertThat(retried.getStatus()).isEqualTo("COMPLETED");
+            assertThat(retried.getStoredDocuments()).isGreaterThan(1);
+            assertThat(vectorStore.containsPartition("sample.pdf")).isTrue();
+        } finally {
+            service.shutdown();
+        }
+    }
+
+    @Test
+    void sharedJobDoesNotExposeOtherChatIds() throws Exception {
+        HnswVectorStore vectorStore = HnswVectorStore.builder(new FailingEmbeddingModel()).build();
+        PdfIngestionServiceImpl service = new PdfIngestionServiceImpl(vectorStore, new PdfIngestionProperties(), new MemoryKeywordIndexRepository());
+        service.init();
+        try {
+            Resource resource = samplePdf();
+            PdfIngestionJob first = service.submit("c1", resource);
+            PdfIngestionJob second = service.submit("c2", resource);
+
+            // 同一文件共用任务，但各自只看到自己的会话ID
+            assertThat(second.getJobId()).isEqualTo(first.getJobId());
+            assertThat(first.getChatId()).isEqualTo("c1");
+            assertThat(second.getChatId()).isEqualTo("c2");
+            assertThat(await(service, first.getJobId()).getChatId()).isNull();
+        } finally {
+            service.shutdown();
+        }
+    }
+
+    private static PdfIngestionJob await(PdfIngestionServiceImpl service, String jobId) throws InterruptedException {
+        for (int i = 0; i < 500; i++) {
+            PdfIngestionJob job = service.getJob(jobId);
+            if (job.getFinishTime() != null) {
+                return job;
+            }
+            Thread.sleep(10);
+        }
+        throw new AssertionError("任务未结束: " + jobId);
+    }
+
+    private static Resource samplePdf() throws IOException {
+        try (PDDocument document = new PDDocument()) {
+            for (int page = 1; page <= 4; page++) {
+                PDPage pdPage = new PDPage();
+                document.addPage(pdPage);
+                try (PDPageContentStream content = new PDPageContentStream(document, pdPage)) {
+                    content.beginText();
+                    content.setFont(new PDType1Font(Standard14Fonts.FontName.HELVETICA), 12);
+                    content.newLineAtOffset(50, 700);
+                    content.showText("Page " + page + " explains retrieval augmented generation with vector stores.");
+                    content.endText();
+                }
+            }
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            document.save(out);
+            return new ByteArrayResource(out.toByteArray()) {
+                @Override
+                public String getFilename() {
+                    return "sample.pdf";
+                }
+            };
+        }
+    }
+
+    static class FailingEmbeddingModel implements EmbeddingModel {
+
+        private final AtomicInteger calls = new AtomicInteger();
+        volatile int failOnCall = -1;
+
+        @Override
+        public EmbeddingResponse call(EmbeddingRequest request) {
+            if (calls.incrementAndGet() == failOnCall) {
+                throw new IllegalStateException("embedding unavailable");
+            }
+            return new EmbeddingResponse(request.getInstructions().stream()
+                    .map(text -> new Embedding(new float[]{1f, text.length()}, 0))
+                    .toList());
+        }
+
+        @Override
+        public float[] embed(Document document) {
+            return embed(document.getText());
+        }
+    }
+
+    static class MemoryKeywordIndexRepository implements KeywordIndexRepository {
+
+        private final Map<String, KeywordIndex> indexes = new ConcurrentHashMap<>();
+
+        @Override
+        public void save(String fileName, KeywordIndex index) {
+            indexes.put(fileName, index);
+        }
+
+        @Override
+        public KeywordIndex get(String fileName) {
+            return indexes.get(fileName);
+        }
+
+        @Override
+        public boolean contains(String fileName) {
+            return indexes.containsKey(fileName);
+        }
+    }
+}
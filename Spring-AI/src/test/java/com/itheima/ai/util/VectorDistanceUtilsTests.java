@@ -0,0 +1,66 @@
+package com.itheima.ai.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+class VectorDistanceUtilsTests {
+
+    private final ScalarVectorKernels scalar = new ScalarVectorKernels();
+
+    @Test
+    void simdKernelIsLoadedWithIncubatorModule() {
+        assertThat(VectorDistanceUtils.isSimdEnabled()).isTrue();
+    }
+
+    @Test
+    void kernelsMatchScalarImplementation() {
+        Random random = new Random(3);
+        // 1024维与text-embedding-v3一致，1027维覆盖非整数倍的尾部
+        for (int dimensions : new int[]{1024, 1027, 5}) {
+            float[] a = randomVector(random, dimensions);
+            float[] b = randomVector(random, dimensions);
+            assertThat(VectorDistanceUtils.dot(a, b)).isCloseTo(scalar.dot(a, 0, b, 0, dimensions), within(1e-3f));
+            assertThat(VectorDistanceUtils.euclideanDistance(a, b))
+                    .isCloseTo(Math.sqrt(scalar.squaredDistance(a, 0, b, 0, dimensions)), within(1e-3));
+
+            ByteBuffer buffer = ByteBuffer.allocate((dimensions + 2) * Float.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            buffer.putFloat(0f).putFloat(0f).asFloatBuffer().put(a);
+            assertThat(VectorDistanceUtils.dot(buffer, 2 * Float.BYTES, b)).isCloseTo(scalar.dot(a, 0, b, 0, dimensions), within(1e-3f));
+        }
+    }
+
+    @Test
+    void batchCosineSimilarityMatchesPairwise() {
+        Random random = new Random(5);
+        int dimensions = 1024;
+        int rows = 20;
+        float[] query = randomVector(random, dimensions);
+        float[] matrix = new float[rows * dimensions];
+        for (int row = 0; row < rows; row++) {
+            System.arraycopy(randomVector(random, dimensions), 0, matrix, row * dimensions, dimensions);
+        }
+        float[] norms = VectorDistanceUtils.norms(matrix, dimensions);
+        float[] similarities = VectorDistanceUtils.batchCosineSimilarity(query, matrix, norms);
+        float[] distances = VectorDistanceUtils.batchEuclideanDistance(query, matrix);
+        for (int row = 0; row < rows; row++) {
+            float[] vector = new float[dimensions];
+            System.arraycopy(matrix, row * dimensions, vector, 0, dimensions);
+            assertThat((double) similarities[row]).isCloseTo(VectorDistanceUtils.cosineDistance(query, vector), within(1e-4));
+            assertThat((double) distances[row]).isCloseTo(VectorDistanceUtils.euclideanDistance(query, vector), within(1e-3));
+        }
+    }
+
+    private static float[] randomVector(Random random, int dimensions) {
+        float[] vector = new float[dimensions];
+        for (int i = 0; i < dimensions; i++) {
+            vector[i] = (float) random.nextGaussian();
+        }
+        return vector;
+    }
+}
@@ -0,0 +1,336 @@
+package com.itheima.ai.vectorstore;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.embedding.Embedding;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.ai.embedding.EmbeddingRequest;
+import org.springframework.ai.embedding.EmbeddingResponse;
+import org.springframework.ai.vectorstore.SearchRequest;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class HnswVectorStoreTests {
+
+    private static final int DIMENSIONS = 64;
+
+    @Test
+    void recallAgainstBruteForce() {
+        Random random = new Random(7);
+        VectorStorage storage = new HeapVectorStorage();
+        HnswIndex index = new HnswIndex(16, 200, storage);
+        List<float[]> vectors = new ArrayList<>();
+        for (int i = 0; i < 2000; i++) {
+            float[] vector = randomUnitVector(random);
+            vectors.add(vector);
+            index.add(storage.append(vector));
+        }
+
+        int hits = 0;
+        int queries = 50;
+        for (int q = 0; q < queries; q++) {
+            float[] query = randomUnitVector(random);
+            Set<Integer> expected = new HashSet<>(IntStream.range(0, vectors.size()).boxed()
+                    .sorted(Comparator.comparingDouble(i -> -dot(query, vectors.get(i))))
+                    .limit(10)
+                    .toList());
+            for (HnswIndex.Candidate candidate : index.search(query, 64, node -> true).subList(0, 10)) {
+                if (expected.contains(candidate.node())) {
+                    hits++;
+                }
+            }
+        }
+        assertThat(hits / (double) (queries * 10)).isGreaterThan(0.9);
+    }
+
+    @Test
+    void searchHonoursFilterAndDeletes() {
+        HnswVectorStore vectorStore = HnswVectorStore.builder(new FakeEmbeddingModel()).build();
+        List<Document> documents = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            documents.add(new Document("doc-" + i, "page " + i, Map.of("file_name", i % 2 == 0 ? "a.pdf" : "b.pdf")));
+        }
+        vectorStore.add(documents);
+
+        List<Document> results = vectorStore.similaritySearch(SearchRequest.builder()
+                .query("page 42")
+                .topK(3)
+                .filterExpression("file_name == 'a.pdf'")
+                .build());
+        assertThat(results).hasSize(3);
+        assertThat(results.get(0).getId()).isEqualTo("doc-42");
+        assertThat(results).allMatch(doc -> "a.pdf".equals(doc.getMetadata().get("file_name")));
+
+        vectorStore.delete(List.of("doc-42"));
+        results = vectorStore.similaritySearch(SearchRequest.builder().query("page 42").topK(1).build());
+        assertThat(results).extracting(Document::getId).doesNotContain("doc-42");
+        assertThat(vectorStore.size()).isEqualTo(99);
+    }
+
+    @Test
+    void partitionFilterOnlySearchesMatchingFiles() {
+        HnswVectorStore vectorStore = HnswVectorStore.builder(new FakeEmbeddingModel()).efSearch(16).build();
+        List<Document> documents = new ArrayList<>();
+        for (int i = 0; i < 300; i++) {
+            documents.add(new Document("doc-" + i, "page " + i,
+                    Map.of("file_name", "file-" + (i % 3) + ".pdf", "page_number", i)));
+        }
+        vectorStore.add(documents);
+
+        List<Document> results = vectorStore.similaritySearch(SearchRequest.builder()
+                .query("page 7")
+                .topK(5)
+                .filterExpression("file_name in ['file-0.pdf', 'file-1.pdf'] && page_number < 100")
+                .build());
+        assertThat(results).hasSize(5);
+        assertThat(results.get(0).getId()).isEqualTo("doc-7");
+        assertThat(results).allMatch(doc -> !"file-2.pdf".equals(doc.getMetadata().get("file_name"))
+                && (Integer) doc.getMetadata().get("page_number") < 100);
+
+        results = vectorStore.similaritySearch(SearchRequest.builder().query("page 8").topK(1).build());
+        assertThat(results).extracting(Document::getId).containsExactly("doc-8");
+    }
+
+    @Test
+    void savedStoreIsMappedBackOnRestart(@TempDir Path dir) throws Exception {
+        Path storagePath = dir.resolve("chat-pdf");
+        HnswVectorStore vectorStore = HnswVectorStore.builder(new FakeEmbeddingModel()).storagePath(storagePath).build();
+        List<Document> documents = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            documents.add(new Document("doc-" + i, "page " + i, Map.of("file_name", "file-" + (i % 2) + ".pdf")));
+        }
+        vectorStore.add(documents);
+        vectorStore.delete(List.of("doc-4"));
+        vectorStore.save();
+        // 保存后继续写入，再次保存时只追加新行
+        vectorStore.add(List.of(new Document("doc-200", "page 200", Map.of("file_name", "file-0.pdf"))));
+        vectorStore.save();
+        assertThat(Files.size(dir.resolve("chat-pdf.vec"))).isEqualTo(16 + 201L * DIMENSIONS * Float.BYTES);
+
+        HnswVectorStore restored = HnswVectorStore.builder(new FakeEmbeddingModel()).storagePath(storagePath).build();
+        assertThat(restored.size()).isEqualTo(200);
+        List<Document> results = restored.similaritySearch(SearchRequest.builder()
+                .query("page 6")
+                .topK(2)
+                .filterExpression("file_name == 'file-0.pdf'")
+                .build());
+        assertThat(results.get(0).getId()).isEqualTo("doc-6");
+        assertThat(results.get(0).getText()).isEqualTo("page 6");
+        assertThat(restored.similaritySearch(SearchRequest.builder().query("page 4").topK(1).build()))
+                .extracting(Document::getId).doesNotContain("doc-4");
+        assertThat(restored.similaritySearch(SearchRequest.builder().query("page 200").topK(1).build()))
+                .extracting(Document::getId).containsExactly("doc-200");
+
+        // 图文件丢失时按元数据重建
+        Files.delete(dir.resolve("chat-pdf.hnsw"));
+        HnswVectorStore rebuilt = HnswVectorStore.builder(new FakeEmbeddingModel()).storagePath(storagePath).build();
+        assertThat(rebuilt.size()).isEqualTo(200);
+        assertThat(rebuilt.similaritySearch(SearchRequest.builder().query("page 9").topK(1).build()))
+                .extracting(Document::getId).containsExactly("doc-9");
+    }
+
+    @Test
+    void saveWithoutStoragePathIsNoOp() {
+        HnswVectorStore vectorStore = HnswVectorStore.builder(new FakeEmbeddingModel()).build();
+        vectorStore.add(List.of(new Document("doc-0", "page 0", Map.of("file_name", "a.pdf"))));
+
+        vectorStore.save();
+        assertThat(vectorStore.size()).isEqualTo(1);
+        assertThat(vectorStore.hasUncompactedChanges()).isFalse();
+    }
+
+    @Test
+    void unsavedChangesAreReplayedFromLog(@TempDir Path dir) throws Exception {
+        Path storagePath = dir.resolve("chat-pdf");
+        HnswVectorStore vectorStore = HnswVectorStore.builder(new FakeEmbeddingModel()).storagePath(storagePath).build();
+        vectorStore.add(List.of(new Document("doc-0", "page 0", Map.of("file_name", "a.pdf"))));
+        vectorStore.save();
+        assertThat(vectorStore.hasUncompactedChanges()).isFalse();
+
+        // 未保存就"崩溃"：新增和删除只存在于日志中
+        vectorStore.add(List.of(new Document("doc-1", "page 1", Map.of("file_name", "a.pdf")),
+                new Document("doc-2", "page 2", Map.of("file_name", "b.pdf"))));
+        vectorStore.delete(List.of("doc-0"));
+        assertThat(vectorStore.hasUncompactedChanges()).isTrue();
+        // 模拟写入中途崩溃留下的半条记录
+        Files.write(dir.resolve("chat-pdf.wal"), new byte[]{0, 0, 1, 0, 7}, StandardOpenOption.APPEND);
+
+        HnswVectorStore restored = HnswVectorStore.builder(new FakeEmbeddingModel()).storagePath(storagePath).build();
+        assertThat(restored.size()).isEqualTo(2);
+        assertThat(restored.similaritySearch(SearchRequest.builder().query("page 2").topK(1).build()))
+                .extracting(Document::getId).containsExactly("doc-2");
+        assertThat(restored.similaritySearch(SearchRequest.builder().query("page 0").topK(3).build()))
+                .extracting(Document::getId).doesNotContain("doc-0");
+
+        restored.save();
+        assertThat(Files.size(dir.resolve("chat-pdf.wal"))).isZero();
+        assertThat(HnswVectorStore.builder(new FakeEmbeddingModel()).storagePath(storagePath).build().size()).isEqualTo(2);
+    }
+
+    @Test
+    void pendingVectorsAreFlushedBeforeSave(@TempDir Path dir) throws Exception {
+        Path storagePath = dir.resolve("chat-pdf");
+        long rowBytes = DIMENSIONS * Float.BYTES;
+        HnswVectorStore vectorStore = HnswVectorStore.builder(new FakeEmbeddingModel())
+                .storagePath(storagePath)
+                .maxPendingBytes(10 * rowBytes)
+                .build();
+        List<Document> documents = new ArrayList<>();
+        for (int i = 0; i < 25; i++) {
+            documents.add(new Document("doc-" + i, "page " + i, Map.of("file_name", "a.pdf")));
+        }
+        vectorStore.add(documents);
+        // 未保存时堆内最多保留10行，其余已追加到向量文件
+        assertThat(Files.size(dir.resolve("chat-pdf.vec"))).isEqualTo(16 + 20 * rowBytes);
+
+        // 元数据还没写入，重启时丢弃这些行并从日志重放
+        HnswVectorStore restored = HnswVectorStore.builder(new FakeEmbeddingModel())
+                .storagePath(storagePath)
+                .maxPendingBytes(10 * rowBytes)
+                .build();
+        assertThat(restored.size()).isEqualTo(25);
+        assertThat(restored.similaritySearch(SearchRequest.builder().query("page 7").topK(1).build()))
+                .extracting(Document::getId).containsExactly("doc-7");
+        restored.save();
+        assertThat(Files.size(dir.resolve("chat-pdf.vec"))).isEqualTo(16 + 25 * rowBytes);
+        assertThat(HnswVectorStore.builder(new FakeEmbeddingModel()).storagePath(storagePath).build().size()).isEqualTo(25);
+    }
+
+    @Test
+    void deletedRowsAreCompactedOnSave(@TempDir Path dir) throws Exception {
+        Path storagePath = dir.resolve("chat-pdf");
+        long rowBytes = DIMENSIONS * Float.BYTES;
+        HnswVectorStore vectorStore = HnswVectorStore.builder(new FakeEmbeddingModel()).storagePath(storagePath).build();
+        List<Document> documents = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            documents.add(new Document("doc-" + i, "page " + i, Map.of("file_name", "file-" + (i % 2) + ".pdf")));
+        }
+        // 重复上传三次，前两次的行都已删除
+        for (int upload = 0; upload < 3; upload++) {
+            vectorStore.add(documents);
+        }
+        vectorStore.delete(List.of("doc-0"));
+        vectorStore.save();
+        assertThat(Files.size(dir.resolve("chat-pdf.vec"))).isEqualTo(16 + 19 * rowBytes);
+        assertThat(Files.exists(dir.resolve("chat-pdf.compact"))).isFalse();
+        assertThat(vectorStore.similaritySearch(SearchRequest.builder().query("page 7").topK(1).build()))
+                .extracting(Document::getId).containsExactly("doc-7");
+
+        // 压缩后继续写入，新行追加在压缩后的行之后
+        vectorStore.add(List.of(new Document("doc-20", "page 20", Map.of("file_name", "file-0.pdf"))));
+        vectorStore.save();
+        HnswVectorStore restored = HnswVectorStore.builder(new FakeEmbeddingModel()).storagePath(storagePath).build();
+        assertThat(restored.size()).isEqualTo(20);
+        assertThat(restored.similaritySearch(SearchRequest.builder()
+                .query("page 20")
+                .topK(1)
+                .filterExpression("file_name == 'file-0.pdf'")
+                .build()))
+                .extracting(Document::getId).containsExactly("doc-20");
+        assertThat(restored.similaritySearch(SearchRequest.builder().query("page 0").topK(3).build()))
+                .extracting(Document::getId).doesNotContain("doc-0");
+
+        // 全部删除后压缩为空
+        restored.delete(IntStream.rangeClosed(1, 20).mapToObj(i -> "doc-" + i).toList());
+        restored.save();
+        assertThat(Files.exists(dir.resolve("chat-pdf.vec"))).isFalse();
+        assertThat(HnswVectorStore.builder(new FakeEmbeddingModel()).storagePath(storagePath).build().size()).isZero();
+    }
+
+    @Test
+    void interruptedCompactionIsFinishedOnRestart(@TempDir Path dir) throws Exception {
+        Path storagePath = dir.resolve("chat-pdf");
+        HnswVectorStore vectorStore = HnswVectorStore.builder(new FakeEmbeddingModel()).storagePath(storagePath).build();
+        vectorStore.add(List.of(new Document("doc-0", "page 0", Map.of("file_name", "a.pdf"))));
+        vectorStore.save();
+        // 模拟压缩写完临时文件和标记、替换主文件前崩溃：临时文件只含新文档
+        Path other = dir.resolve("other");
+        HnswVectorStore compacted = HnswVectorStore.builder(new FakeEmbeddingModel()).storagePath(other).build();
+        compacted.add(List.of(new Document("doc-1", "page 1", Map.of("file_name", "a.pdf"))));
+        compacted.save();
+        Files.copy(dir.resolve("other.vec"), dir.resolve("chat-pdf.vec.compact"));
+        Files.copy(dir.resolve("other.meta"), dir.resolve("chat-pdf.meta.compact"));
+        Files.write(dir.resolve("chat-pdf.compact"), new byte[0]);
+
+        HnswVectorStore restored = HnswVectorStore.builder(new FakeEmbeddingModel()).storagePath(storagePath).build();
+        assertThat(restored.size()).isEqualTo(1);
+        assertThat(restored.similaritySearch(SearchRequest.builder().query("page 1").topK(1).build()))
+                .extracting(Document::getId).containsExactly("doc-1");
+        assertThat(Files.exists(dir.resolve("chat-pdf.compact"))).isFalse();
+    }
+
+    @Test
+    void graphIsRebuiltWhenParametersChange(@TempDir Path dir) throws Exception {
+        Path storagePath = dir.resolve("chat-pdf");
+        HnswVectorStore vectorStore = HnswVectorStore.builder(new FakeEmbeddingModel()).storagePath(storagePath).m(16).build();
+        List<Document> documents = new ArrayList<>();
+        for (int i = 0; i < 300; i++) {
+            documents.add(new Document("doc-" + i, "page " + i, Map.of("file_name", "a.pdf")));
+        }
+        vectorStore.add(documents);
+        vectorStore.save();
+
+        // 调小M后，按旧M保存的邻居数组放不下，须按新配置重建
+        HnswVectorStore restored = HnswVectorStore.builder(new FakeEmbeddingModel()).storagePath(storagePath).m(4).build();
+        assertThat(restored.size()).isEqualTo(300);
+        for (int i = 0; i < 300; i += 37) {
+            assertThat(restored.similaritySearch(SearchRequest.builder().query("page " + i).topK(1).build()))
+                    .extracting(Document::getId).containsExactly("doc-" + i);
+        }
+    }
+
+    private static float[] randomUnitVector(Random random) {
+        float[] vector = new float[DIMENSIONS];
+        double norm = 0;
+        for (int i = 0; i < DIMENSIONS; i++) {
+            vector[i] = (float) random.nextGaussian();
+            norm += vector[i] * vector[i];
+        }
+        for (int i = 0; i < DIMENSIONS; i++) {
+            vector[i] /= (float) Math.sqrt(norm);
+        }
+        return vector;
+    }
+
+    private static double dot(float[] a, float[] b) {
+        double sum = 0;
+        for (int i = 0; i < a.length; i++) {
+            sum += a[i] * b[i];
+        }
+        return sum;
+    }
+
+    /**
+     * 按文本哈希生成确定性向量，相同文本得到相同向量
+     */
+    static class FakeEmbeddingModel implements EmbeddingModel {
+
+        @Override
+        public EmbeddingResponse call(EmbeddingRequest request) {
+            List<Embedding> embeddings = new ArrayList<>();
+            for (int i = 0; i < request.getInstructions().size(); i++) {
+                String text = request.getInstructions().get(i);
+                embeddings.add(new Embedding(randomUnitVector(new Random(text.hashCode())), i));
+            }
+            return new EmbeddingResponse(embeddings);
+        }
+
+        @Override
+        public float[] embed(Document document) {
+            return embed(document.getText());
+        }
+    }
+}